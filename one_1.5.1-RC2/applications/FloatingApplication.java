@@ -364,10 +364,10 @@ public class FloatingApplication extends Application {
 
 		while (i.hasNext()) {
 		    m          = (Message) i.next ();
-		    anchor     = (Coord) m.getProperty ("anchor");
-		    anchor_r2  = (Double) m.getProperty ("r");
+		    anchor     = (Coord) m.getProperty (FloatingContentRouter.FC_ANCHOR);
+		    anchor_r2  = (Double) m.getProperty (FloatingContentRouter.FC_R);
 		    anchor_r2 *= anchor_r2;
-		    ttl        = (Double) m.getProperty ("ttl");
+		    ttl        = (Double) m.getProperty (FloatingContentRouter.FC_TTL);
 
 		    location = host.getLocation();
 		    if (curTime < ttl) {
@@ -398,11 +398,11 @@ public class FloatingApplication extends Application {
 					    SimClock.getIntTime() + "-" + host.getAddress(),
 					    getMessageSize());
 		    m.addProperty("type", "floating");
-		    m.addProperty("anchor", anchor.clone());
-		    m.addProperty("r", getR());
-		    m.addProperty("a", getA());
-		    m.addProperty("ttl", SimClock.getTime() + ttl);
-		    m.addProperty("ttlval", ttl);
+		    m.addProperty(FloatingContentRouter.FC_ANCHOR, anchor.clone());
+		    m.addProperty(FloatingContentRouter.FC_R, getR());
+		    m.addProperty(FloatingContentRouter.FC_A, getA());
+		    m.addProperty(FloatingContentRouter.FC_TTL, SimClock.getTime() + ttl);
+		    m.addProperty(FloatingContentRouter.FC_TTL_VAL, ttl);
 		    m.setAppID(APP_ID);
 		    host.createNewMessage(m);
 		    
@@ -461,17 +461,17 @@ public class FloatingApplication extends Application {
 					    SimClock.getIntTime() + "-" + host.getAddress(),
 					    msgsize);
 		    m.addProperty("type", "floating");
-		    m.addProperty("r", r);
-		    m.addProperty("a", a);
-		    m.addProperty("ttl", SimClock.getTime() + msgttl);
-		    m.addProperty("ttlval", msgttl);
+		    m.addProperty(FloatingContentRouter.FC_R, r);
+		    m.addProperty(FloatingContentRouter.FC_A, a);
+		    m.addProperty(FloatingContentRouter.FC_TTL, SimClock.getTime() + msgttl);
+		    m.addProperty(FloatingContentRouter.FC_TTL_VAL, msgttl);
 		    m.setTtl ((int) (msgttl));  /* need to redo this after host.createNewMessage () */
 		    m.setAppID(APP_ID);
 
 		    if (fcr.getLocationSource() == FloatingContentRouter.LOC_SRC_GPS)
-			m.addProperty("anchor", fcr.getLocation().clone());
+			m.addProperty(FloatingContentRouter.FC_ANCHOR, fcr.getLocation().clone());
 		    else
-			m.addProperty("anchor", fcr.getLastKnownLocation().clone());
+			m.addProperty(FloatingContentRouter.FC_ANCHOR, fcr.getLastKnownLocation().clone());
 		    host.createNewMessage(m);
 		    /* ttl needs to be set after message creation */
 		    m.setTtl ((int) (msgttl));
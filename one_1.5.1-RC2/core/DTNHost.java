@@ -34,6 +34,8 @@ public class DTNHost implements Comparable<DTNHost> {
 	private List<MovementListener> movListeners;
 	private List<NetworkInterface> net;
 	private ModuleCommunicationBus comBus;
+	/** path segments of the latest move (null if they are not recorded) */
+	private SweptPath sweptPath;
 
 	static {
 		DTNSim.registerForReset(DTNHost.class.getCanonicalName());
@@ -368,11 +370,43 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @param timeIncrement How long time the node moves
 	 */
 	public void move(double timeIncrement) {		
+		if (!isMovementActive()) {
+			return; 
+		}
+		moveActive(timeIncrement);
+	}
+	
+	/**
+	 * Moves the node like {@link #move(double)} but without checking if the
+	 * node's movement is active. The caller must check 
+	 * {@link #isMovementActive()} before calling this.
+	 * @param timeIncrement How long time the node moves
+	 */
+	public void moveActive(double timeIncrement) {
+		if (this.sweptPath != null) {
+			this.sweptPath.start(SimClock.getTime(), this.location);
+			moveOnPath(timeIncrement);
+			this.sweptPath.add(timeIncrement, this.location);
+		}
+		else {
+			moveOnPath(timeIncrement);
+		}
+	}
+	
+	/**
+	 * Moves the node towards the next waypoint (and further on the path
+	 * if there's enough time) or waits if it is not time to move yet. If the
+	 * path segments are recorded, every waypoint reached is added to the 
+	 * swept path.
+	 * @param timeIncrement How long time the node moves
+	 */
+	private void moveOnPath(double timeIncrement) {
 		double possibleMovement;
 		double distance;
 		double dx, dy;
+		double elapsed = 0;
 
-		if (!isMovementActive() || SimClock.getTime() < this.nextTimeToMove) {
+		if (SimClock.getTime() < this.nextTimeToMove) {
 			return; 
 		}
 		if (this.destination == null) {
@@ -388,6 +422,10 @@ public class DTNHost implements Comparable<DTNHost> {
 			// node can move past its next destination
 			this.location.setLocation(this.destination); // snap to destination
 			possibleMovement -= distance;
+			if (this.sweptPath != null && speed > 0) {
+				elapsed = Math.min(elapsed + distance / speed, timeIncrement);
+				this.sweptPath.add(elapsed, this.location);
+			}
 			if (!setNextWaypoint()) { // get a new waypoint
 				return; // no more waypoints left
 			}
@@ -402,6 +440,170 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.location.translate(dx, dy);
 	}	
 
+	/**
+	 * Sets whether the path segments the node moves along are recorded. 
+	 * If they are, the segments of the latest move are available from 
+	 * {@link #getSweptPath()}.
+	 * @param record True if the path segments should be recorded
+	 */
+	public void setSweptPathRecording(boolean record) {
+		if (!record) {
+			this.sweptPath = null;
+		}
+		else if (this.sweptPath == null) {
+			this.sweptPath = new SweptPath();
+		}
+	}
+	
+	/**
+	 * Returns the path segments of the latest move of this node. The 
+	 * segments are available only if their recording is on (see 
+	 * {@link #setSweptPathRecording(boolean)}). If the node didn't move in
+	 * its latest update, the path's start time is older than that update's.
+	 * @return The swept path of the latest move or null if the segments 
+	 * are not recorded
+	 */
+	public SweptPath getSweptPath() {
+		return this.sweptPath;
+	}
+
+	/**
+	 * Returns the path this node would move along during the given time if
+	 * it kept moving towards its current destination with its current
+	 * speed (or stayed still if it is not moving at the moment)
+	 * @param duration The duration of the path (seconds)
+	 * @param path The path object where the predicted path is stored
+	 * @return The given path object, containing the predicted path
+	 */
+	public SweptPath getPredictedPath(double duration, SweptPath path) {
+		path.start(SimClock.getTime(), this.location);
+		if (!isMovementActive() || SimClock.getTime() < this.nextTimeToMove ||
+				this.destination == null) {
+			path.add(duration, this.location);
+			return path;
+		}
+
+		double distance = this.location.distance(this.destination);
+		double movement = Math.min(duration * this.speed, distance);
+		Coord end = this.location.clone();
+		if (distance > 0) {
+			end.translate((movement/distance) * (this.destination.getX() - 
+					this.location.getX()), (movement/distance) * 
+					(this.destination.getY() - this.location.getY()));
+		}
+		path.add(duration, end);
+		return path;
+	}
+
+	/**
+	 * Returns the earliest simulation time when this node needs an update
+	 * (or its movement may change otherwise than by moving linearly towards
+	 * the current destination) even if no other nodes come within its
+	 * range before that. The returned time considers the movement's 
+	 * waypoint arrivals and pauses, the activeness changes, and the 
+	 * next event times of the network interfaces and the router.
+	 * @return The time of the next (possible) event of this node
+	 */
+	public double getNextEventTime() {
+		double now = SimClock.getTime();
+		double next = this.movement.nextActivenessChange();
+
+		if (isMovementActive()) {
+			if (now < this.nextTimeToMove) {
+				next = Math.min(next, this.nextTimeToMove);
+			}
+			else if (this.destination == null) {
+				return now;
+			}
+			else {
+				double distance = this.location.distance(this.destination);
+				if (distance == 0) {
+					return now;
+				}
+				if (this.speed > 0) {
+					next = Math.min(next, now + distance / this.speed);
+				}
+			}
+		}
+
+		for (NetworkInterface ni : net) {
+			next = Math.min(next, ni.getNextEventTime());
+		}
+		return Math.min(next, this.router.getNextEventTime());
+	}
+
+	/**
+	 * Returns true if {@link #moveActive(double)} can be called for this node
+	 * concurrently with other nodes' moves. This is the case if the node's 
+	 * movement model can be used concurrently (see 
+	 * {@link MovementModel#isConcurrent()}) and there are no movement 
+	 * listeners to inform.
+	 * @return true if the node can be moved concurrently
+	 */
+	public boolean isMovementConcurrent() {
+		return this.movement.isConcurrent() && 
+			(this.movListeners == null || this.movListeners.isEmpty());
+	}
+
+	/**
+	 * Returns true if checking the radio activeness of this node (see
+	 * {@link #isRadioActive()}) can't change the state of the node, i.e., the
+	 * check can be skipped without affecting the simulation.
+	 * @return true if the radio activeness check has no side effects
+	 */
+	public boolean isRadioActivenessFixed() {
+		return this.getInterface(1).isActivenessFixed();
+	}
+
+	/**
+	 * Moves the node towards the current waypoint if it doesn't reach the
+	 * waypoint during the given time. Unlike {@link #move(double)}, this
+	 * method never asks the movement model for new paths nor informs the
+	 * movement listeners, so it can be called concurrently for different 
+	 * hosts. The caller must check {@link #isMovementActive()} before calling
+	 * this. 
+	 * @param timeIncrement How long time the node moves
+	 * @return True if the node was moved (or it didn't have to move), false if
+	 * the movement requires a new waypoint and {@link #move(double)} should 
+	 * be called instead
+	 */
+	public boolean moveOnSegment(double timeIncrement) {
+		double possibleMovement;
+		double distance;
+		double dx, dy;
+		
+		if (SimClock.getTime() < this.nextTimeToMove) {
+			if (this.sweptPath != null) {
+				this.sweptPath.start(SimClock.getTime(), this.location);
+				this.sweptPath.add(timeIncrement, this.location);
+			}
+			return true; 
+		}
+		if (this.destination == null) {
+			return false;
+		}
+
+		possibleMovement = timeIncrement * speed;
+		distance = this.location.distance(this.destination);
+
+		if (possibleMovement >= distance) {
+			return false; // would reach the waypoint
+		}
+
+		if (this.sweptPath != null) {
+			this.sweptPath.start(SimClock.getTime(), this.location);
+		}
+		dx = (possibleMovement/distance) * (this.destination.getX() -
+				this.location.getX());
+		dy = (possibleMovement/distance) * (this.destination.getY() -
+				this.location.getY());
+		this.location.translate(dx, dy);
+		if (this.sweptPath != null) {
+			this.sweptPath.add(timeIncrement, this.location);
+		}
+		return true;
+	}
+
 	/**
 	 * Sets the next destination and speed to correspond the next waypoint
 	 * on the path.
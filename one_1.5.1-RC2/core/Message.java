@@ -8,7 +8,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+
+import routing.util.MessageExpiryIndex;
 
 /**
  * A message that is created at a node or passed between nodes.
@@ -40,6 +41,11 @@ public class Message implements Comparable<Message> {
      * List of nodes this message has passed
      */
     private List<DTNHost> path;
+    /**
+     * Is the path list shared with other replicas of the message (and must
+     * be copied before modifying it)
+     */
+    private boolean pathShared;
     /**
      * Next unique identifier to be given
      */
@@ -48,6 +54,15 @@ public class Message implements Comparable<Message> {
      * Unique ID of this message
      */
     private int uniqueId;
+    /**
+     * Interned numbers of all message identifiers
+     */
+    private static Map<String, Integer> internedIds =
+            new HashMap<String, Integer>();
+    /**
+     * Interned number of this message's identifier
+     */
+    private int internedId;
     /**
      * The time this message was received
      */
@@ -75,10 +90,42 @@ public class Message implements Comparable<Message> {
      * properties is made when replicating messages
      */
     private Map<String, Object> properties;
+    /**
+     * Is the properties map shared with other replicas of the message (and
+     * must be copied before modifying it)
+     */
+    private boolean propertiesShared;
+    /**
+     * Values of the typed double properties (or null if none)
+     */
+    private double[] doubleSlots;
+    /**
+     * Values of the typed int properties (or null if none)
+     */
+    private int[] intSlots;
+    /**
+     * Values of the typed object properties (or null if none)
+     */
+    private Object[] objectSlots;
+    /**
+     * Bit mask of the typed properties that have a value (bit index is the
+     * key's index)
+     */
+    private long typedMask;
+    /**
+     * Are the slot arrays shared with other replicas of the message (and
+     * must be copied before modifying them)
+     */
+    private boolean slotsShared;
     /**
      * Application ID of the application that created the message
      */
     private String appID;
+    /**
+     * The expiry index this message was last added to (or null). The index
+     * is informed when the TTL of the message changes.
+     */
+    private MessageExpiryIndex expiryIndex;
 
     static {
         reset();
@@ -100,7 +147,9 @@ public class Message implements Comparable<Message> {
         this.id = id;
         this.size = size;
         this.path = new ArrayList<DTNHost>();
+        this.pathShared = false;
         this.uniqueId = nextUniqueId;
+        this.internedId = internId(id);
 
         this.timeCreated = SimClock.getTime();
         this.timeReceived = this.timeCreated;
@@ -108,12 +157,32 @@ public class Message implements Comparable<Message> {
         this.responseSize = 0;
         this.requestMsg = null;
         this.properties = null;
+        this.propertiesShared = false;
         this.appID = null;
 
         Message.nextUniqueId++;
         addNodeOnPath(from);
     }
 
+    /**
+     * Creates a replicate of a message. The replicate shares the path and
+     * properties of the original message until either of them is modified.
+     *
+     * @param m The message to replicate
+     */
+    private Message(Message m) {
+        this.from = m.from;
+        this.to = m.to;
+        this.id = m.id;
+        this.size = m.size;
+        this.uniqueId = nextUniqueId;
+        this.internedId = m.internedId;
+        this.timeReceived = SimClock.getTime();
+
+        Message.nextUniqueId++;
+        copyFrom(m);
+    }
+
     /**
      * Returns the node this message is originally from
      *
@@ -151,6 +220,48 @@ public class Message implements Comparable<Message> {
         return this.uniqueId;
     }
 
+    /**
+     * Returns a number that is unique per message identifier, i.e., all
+     * the messages (and replicates) with the same ID have the same number
+     * (see {@link #getInternedId(String)}). The numbers are small 
+     * non-negative integers, so they can be used as keys of primitive maps
+     * instead of the ID strings.
+     *
+     * @return The interned number of the message's ID
+     */
+    public int getInternedId() {
+        return this.internedId;
+    }
+
+    /**
+     * Returns the interned number of a message identifier (see
+     * {@link #getInternedId()}).
+     *
+     * @param id The message identifier
+     * @return The number of the identifier or -1 if no message with the
+     * identifier has been created
+     */
+    public static int getInternedId(String id) {
+        Integer number = internedIds.get(id);
+        return (number == null ? -1 : number);
+    }
+
+    /**
+     * Returns the interned number of a message identifier, giving a new
+     * number for new identifiers
+     *
+     * @param id The message identifier
+     * @return The number of the identifier
+     */
+    private static int internId(String id) {
+        Integer number = internedIds.get(id);
+        if (number == null) {
+            number = internedIds.size();
+            internedIds.put(id, number);
+        }
+        return number;
+    }
+
     /**
      * Returns the size of the message (in bytes)
      *
@@ -166,11 +277,21 @@ public class Message implements Comparable<Message> {
      * @param node The node to add
      */
     public void addNodeOnPath(DTNHost node) {
+        if (this.pathShared) {
+            /* copy-on-write: other replicas still use the old list */
+            List<DTNHost> newPath =
+                    new ArrayList<DTNHost>(this.path.size() + 1);
+            newPath.addAll(this.path);
+            this.path = newPath;
+            this.pathShared = false;
+        }
         this.path.add(node);
     }
 
     /**
-     * Returns a list of nodes this message has passed so far
+     * Returns a list of nodes this message has passed so far. The list may
+     * be shared with other replicas of the message so it must not be
+     * modified (use {@link #addNodeOnPath(DTNHost)} instead).
      *
      * @return The list as vector
      */
@@ -208,6 +329,19 @@ public class Message implements Comparable<Message> {
         }
     }
 
+    /**
+     * Returns the simulation time when the TTL of the message expires or
+     * Double.MAX_VALUE if the TTL is infinite.
+     *
+     * @return The expiry time
+     */
+    public double getExpiryTime() {
+        if (this.initTtl == INFINITE_TTL) {
+            return Double.MAX_VALUE;
+        }
+        return this.timeCreated + this.initTtl * (ttlAsSeconds ? 1 : 60);
+    }
+
     /**
      * Sets the initial TTL (time-to-live) for this message. The initial TTL is
      * the TTL when the original message was created. The current TTL is
@@ -216,7 +350,24 @@ public class Message implements Comparable<Message> {
      * @param ttl The time-to-live to set
      */
     public void setTtl(int ttl) {
+        if (ttl == this.initTtl) {
+            return;
+        }
         this.initTtl = ttl;
+        if (this.expiryIndex != null) {
+            this.expiryIndex.ttlChanged(this);
+        }
+    }
+
+    /**
+     * Sets the expiry index this message was added to. The index is informed
+     * (see {@link MessageExpiryIndex#ttlChanged(Message)}) when the TTL of
+     * this message is changed.
+     *
+     * @param index The index
+     */
+    public void setExpiryIndex(MessageExpiryIndex index) {
+        this.expiryIndex = index;
     }
 
     /**
@@ -304,25 +455,48 @@ public class Message implements Comparable<Message> {
     }
 
     /**
-     * Deep copies message data from other message. If new fields are introduced
-     * to this class, most likely they should be copied here too (unless done in
-     * constructor).
+     * Copies message data from other message. The path and properties are 
+     * shared (copy-on-write) with the other message, i.e., they are copied 
+     * only when either of the messages modifies them. If new fields are 
+     * introduced to this class, most likely they should be copied here too 
+     * (unless done in constructor).
      *
      * @param m The message where the data is copied
      */
     protected void copyFrom(Message m) {
-        this.path = new ArrayList<DTNHost>(m.path);
+        this.path = m.path;
+        this.pathShared = true;
+        m.pathShared = true;
         this.timeCreated = m.timeCreated;
         this.responseSize = m.responseSize;
         this.requestMsg = m.requestMsg;
         this.initTtl = m.initTtl;
         this.appID = m.appID;
 
+        this.properties = m.properties;
         if (m.properties != null) {
-            Set<String> keys = m.properties.keySet();
-            for (String key : keys) {
-                updateProperty(key, m.getProperty(key));
-            }
+            this.propertiesShared = true;
+            m.propertiesShared = true;
+        }
+
+        this.doubleSlots = m.doubleSlots;
+        this.intSlots = m.intSlots;
+        this.objectSlots = m.objectSlots;
+        this.typedMask = m.typedMask;
+        if (m.typedMask != 0) {
+            this.slotsShared = true;
+            m.slotsShared = true;
+        }
+    }
+
+    /**
+     * Makes sure that the properties map is not shared with other replicas
+     * so that it can be modified.
+     */
+    private void unshareProperties() {
+        if (this.propertiesShared) {
+            this.properties = new HashMap<String, Object>(this.properties);
+            this.propertiesShared = false;
         }
     }
 
@@ -338,6 +512,16 @@ public class Message implements Comparable<Message> {
      * @throws SimError if the message already has a value for the given key
      */
     public void addProperty(String key, Object value) throws SimError {
+        MessagePropertyKey typedKey = MessagePropertyKey.get(key);
+        if (typedKey != null) {
+            if (hasProperty(typedKey)) {
+                throw new SimError("Message " + this + " already contains " +
+                        "value for a key " + key);
+            }
+            setTypedValue(typedKey, value);
+            return;
+        }
+
         if (this.properties != null && this.properties.containsKey(key)) {
             /* check to prevent accidental name space collisions */
             throw new SimError("Message " + this + " already contains value "
@@ -355,6 +539,11 @@ public class Message implements Comparable<Message> {
      * @return The stored object or null if it isn't found
      */
     public Object getProperty(String key) {
+        MessagePropertyKey typedKey = MessagePropertyKey.get(key);
+        if (typedKey != null) {
+            return getTypedValue(typedKey);
+        }
+
         if (this.properties == null) {
             return null;
         }
@@ -370,24 +559,273 @@ public class Message implements Comparable<Message> {
      * @param value The new value to store
      */
     public void updateProperty(String key, Object value) throws SimError {
+        MessagePropertyKey typedKey = MessagePropertyKey.get(key);
+        if (typedKey != null) {
+            setTypedValue(typedKey, value);
+            return;
+        }
+
         if (this.properties == null) {
             /* lazy creation to prevent performance overhead for classes
              that don't use the property feature  */
             this.properties = new HashMap<String, Object>();
         }
+        else {
+            unshareProperties();
+        }
 
         this.properties.put(key, value);
     }
 
+    /**
+     * Returns true if this message has a value for the typed property
+     *
+     * @param key The property key
+     * @return True if the message has a value for the property
+     */
+    public boolean hasProperty(MessagePropertyKey key) {
+        return (this.typedMask & (1L << key.getIndex())) != 0;
+    }
+
+    /**
+     * Returns the value of a typed double property
+     *
+     * @param key The property key
+     * @return The value of the property
+     * @throws SimError if the key isn't a double property key or if the
+     * message doesn't have a value for the property
+     */
+    public double getDouble(MessagePropertyKey key) throws SimError {
+        checkValue(key, MessagePropertyKey.Type.DOUBLE);
+        return this.doubleSlots[key.getSlot()];
+    }
+
+    /**
+     * Sets the value of a typed double property
+     *
+     * @param key The property key
+     * @param value The new value
+     * @throws SimError if the key isn't a double property key
+     */
+    public void setDouble(MessagePropertyKey key, double value)
+            throws SimError {
+        prepareSlot(key, MessagePropertyKey.Type.DOUBLE);
+        this.doubleSlots[key.getSlot()] = value;
+    }
+
+    /**
+     * Returns the value of a typed int property
+     *
+     * @param key The property key
+     * @return The value of the property
+     * @throws SimError if the key isn't an int property key or if the
+     * message doesn't have a value for the property
+     */
+    public int getInt(MessagePropertyKey key) throws SimError {
+        checkValue(key, MessagePropertyKey.Type.INT);
+        return this.intSlots[key.getSlot()];
+    }
+
+    /**
+     * Sets the value of a typed int property
+     *
+     * @param key The property key
+     * @param value The new value
+     * @throws SimError if the key isn't an int property key
+     */
+    public void setInt(MessagePropertyKey key, int value) throws SimError {
+        prepareSlot(key, MessagePropertyKey.Type.INT);
+        this.intSlots[key.getSlot()] = value;
+    }
+
+    /**
+     * Returns the value of a typed object property
+     *
+     * @param key The property key
+     * @return The value of the property or null if the message doesn't have
+     * a value for it
+     * @throws SimError if the key isn't an object property key
+     */
+    public Object getObject(MessagePropertyKey key) throws SimError {
+        checkType(key, MessagePropertyKey.Type.OBJECT);
+        if (!hasProperty(key)) {
+            return null;
+        }
+        return this.objectSlots[key.getSlot()];
+    }
+
+    /**
+     * Sets the value of a typed object property. As with the other
+     * properties, the value should be immutable.
+     *
+     * @param key The property key
+     * @param value The new value
+     * @throws SimError if the key isn't an object property key
+     */
+    public void setObject(MessagePropertyKey key, Object value)
+            throws SimError {
+        prepareSlot(key, MessagePropertyKey.Type.OBJECT);
+        this.objectSlots[key.getSlot()] = value;
+    }
+
+    /**
+     * Removes the value of a typed property (if the message has one)
+     *
+     * @param key The property key
+     */
+    public void removeProperty(MessagePropertyKey key) {
+        if (!hasProperty(key)) {
+            return;
+        }
+        unshareSlots();
+        this.typedMask &= ~(1L << key.getIndex());
+        if (key.getType() == MessagePropertyKey.Type.OBJECT) {
+            this.objectSlots[key.getSlot()] = null;
+        }
+    }
+
+    /**
+     * Checks that the key is of the given type
+     */
+    private void checkType(MessagePropertyKey key,
+            MessagePropertyKey.Type type) throws SimError {
+        if (key.getType() != type) {
+            throw new SimError("Message property " + key + " is not of type "
+                    + type);
+        }
+    }
+
+    /**
+     * Checks that the key is of the given type and that this message has
+     * a value for it
+     */
+    private void checkValue(MessagePropertyKey key,
+            MessagePropertyKey.Type type) throws SimError {
+        checkType(key, type);
+        if (!hasProperty(key)) {
+            throw new SimError("Message " + this + " has no value for " +
+                    "property " + key);
+        }
+    }
+
+    /**
+     * Makes sure that the slot arrays are not shared with other replicas
+     */
+    private void unshareSlots() {
+        if (this.slotsShared) {
+            if (this.doubleSlots != null) {
+                this.doubleSlots = this.doubleSlots.clone();
+            }
+            if (this.intSlots != null) {
+                this.intSlots = this.intSlots.clone();
+            }
+            if (this.objectSlots != null) {
+                this.objectSlots = this.objectSlots.clone();
+            }
+            this.slotsShared = false;
+        }
+    }
+
+    /**
+     * Prepares the slot of the key for writing a new value: checks the type,
+     * unshares and (re)allocates the slot arrays as needed and marks the
+     * property as having a value.
+     */
+    private void prepareSlot(MessagePropertyKey key,
+            MessagePropertyKey.Type type) throws SimError {
+        checkType(key, type);
+        unshareSlots();
+        int slot = key.getSlot();
+
+        switch (type) {
+        case DOUBLE:
+            if (this.doubleSlots == null || slot >= this.doubleSlots.length) {
+                double[] slots =
+                    new double[MessagePropertyKey.getNrofSlots(type)];
+                if (this.doubleSlots != null) {
+                    System.arraycopy(this.doubleSlots, 0, slots, 0,
+                            this.doubleSlots.length);
+                }
+                this.doubleSlots = slots;
+            }
+            break;
+        case INT:
+            if (this.intSlots == null || slot >= this.intSlots.length) {
+                int[] slots =
+                    new int[MessagePropertyKey.getNrofSlots(type)];
+                if (this.intSlots != null) {
+                    System.arraycopy(this.intSlots, 0, slots, 0,
+                            this.intSlots.length);
+                }
+                this.intSlots = slots;
+            }
+            break;
+        default:
+            if (this.objectSlots == null || slot >= this.objectSlots.length) {
+                Object[] slots =
+                    new Object[MessagePropertyKey.getNrofSlots(type)];
+                if (this.objectSlots != null) {
+                    System.arraycopy(this.objectSlots, 0, slots, 0,
+                            this.objectSlots.length);
+                }
+                this.objectSlots = slots;
+            }
+        }
+
+        this.typedMask |= (1L << key.getIndex());
+    }
+
+    /**
+     * Sets the value of a typed property using a (boxed) value given to the
+     * String-keyed property methods
+     */
+    private void setTypedValue(MessagePropertyKey key, Object value)
+            throws SimError {
+        switch (key.getType()) {
+        case DOUBLE:
+            if (!(value instanceof Double)) {
+                throw new SimError("Value of message property " + key +
+                        " must be a Double");
+            }
+            setDouble(key, (Double)value);
+            break;
+        case INT:
+            if (!(value instanceof Integer)) {
+                throw new SimError("Value of message property " + key +
+                        " must be an Integer");
+            }
+            setInt(key, (Integer)value);
+            break;
+        default:
+            setObject(key, value);
+        }
+    }
+
+    /**
+     * Returns the (boxed) value of a typed property for the String-keyed
+     * property methods
+     */
+    private Object getTypedValue(MessagePropertyKey key) {
+        if (!hasProperty(key)) {
+            return null;
+        }
+        switch (key.getType()) {
+        case DOUBLE:
+            return this.doubleSlots[key.getSlot()];
+        case INT:
+            return this.intSlots[key.getSlot()];
+        default:
+            return this.objectSlots[key.getSlot()];
+        }
+    }
+
     /**
      * Returns a replicate of this message (identical except for the unique id)
      *
      * @return A replicate of the message
      */
     public Message replicate() {
-        Message m = new Message(from, to, id, size);
-        m.copyFrom(this);
-        return m;
+        return new Message(this);
     }
 
     /**
@@ -404,6 +842,7 @@ public class Message implements Comparable<Message> {
      */
     public static void reset() {
         nextUniqueId = 0;
+        internedIds = new HashMap<String, Integer>();
         Settings s = new Settings();
         ttlAsSeconds = s.getBoolean(TTL_SECONDS_S, false);
     }
@@ -423,8 +862,15 @@ public class Message implements Comparable<Message> {
     }
 
     public void removeProperty(String key) {
+        MessagePropertyKey typedKey = MessagePropertyKey.get(key);
+        if (typedKey != null) {
+            removeProperty(typedKey);
+            return;
+        }
+
         if (this.properties != null) {
             if (this.properties.containsKey(key)) {
+                unshareProperties();
                 this.properties.remove(key);
             }
         }
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Typed key for a message property. Values of registered keys are stored
+ * in primitive slots of the message so they can be read without hashing
+ * the key or unboxing the value (see e.g.
+ * {@link Message#getDouble(MessagePropertyKey)}). Values of registered
+ * keys are also available through the String-keyed property methods of
+ * {@link Message}, using the name of the key.
+ * <P>Keys should be registered (e.g., in a static initializer) before any
+ * message gets a value for the same name using the String-keyed
+ * methods.</P>
+ */
+public class MessagePropertyKey {
+	/** Maximum number of keys that can be registered */
+	public static final int MAX_NROF_KEYS = 64;
+
+	/** Type of the property value */
+	public enum Type { DOUBLE, INT, OBJECT }
+
+	/** registered keys by their names (replaced, not modified, when a new
+	 * key is registered so that it can be read without locking) */
+	private static volatile Map<String, MessagePropertyKey> keys =
+		new HashMap<String, MessagePropertyKey>();
+	/** number of slots reserved for each value type */
+	private static int[] nrofSlots = new int[Type.values().length];
+
+	private final String name;
+	private final Type type;
+	/** index of the value in the message's slots of the same type */
+	private final int slot;
+	/** unique index of the key among all keys */
+	private final int index;
+
+	private MessagePropertyKey(String name, Type type, int slot, int index) {
+		this.name = name;
+		this.type = type;
+		this.slot = slot;
+		this.index = index;
+	}
+
+	/**
+	 * Registers a new typed property key. If a key with the same name and
+	 * type is already registered, that key is returned.
+	 * @param name Name of the property
+	 * @param type Type of the property's value
+	 * @return The key
+	 * @throws SimError if a key with the same name but different type is
+	 * already registered or if too many keys are registered
+	 */
+	public static synchronized MessagePropertyKey register(String name,
+			Type type) throws SimError {
+		MessagePropertyKey key = keys.get(name);
+		if (key != null) {
+			if (key.type != type) {
+				throw new SimError("Message property " + name + " is " +
+						"already registered with type " + key.type);
+			}
+			return key;
+		}
+
+		if (keys.size() == MAX_NROF_KEYS) {
+			throw new SimError("Can't register message property " + name +
+					"; only " + MAX_NROF_KEYS + " typed properties are " +
+					"supported");
+		}
+
+		key = new MessagePropertyKey(name, type, nrofSlots[type.ordinal()]++,
+				keys.size());
+		Map<String, MessagePropertyKey> newKeys =
+			new HashMap<String, MessagePropertyKey>(keys);
+		newKeys.put(name, key);
+		keys = newKeys;
+		return key;
+	}
+
+	/**
+	 * Returns the registered key with the given name
+	 * @param name Name of the property
+	 * @return The key or null if no key has been registered with the name
+	 */
+	public static MessagePropertyKey get(String name) {
+		return keys.get(name);
+	}
+
+	/**
+	 * Returns the number of slots reserved for a value type
+	 * @param type The type
+	 * @return The number of registered keys of the type
+	 */
+	static synchronized int getNrofSlots(Type type) {
+		return nrofSlots[type.ordinal()];
+	}
+
+	/**
+	 * Returns the name of the property
+	 * @return the name of the property
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the type of the property's value
+	 * @return the type of the property's value
+	 */
+	public Type getType() {
+		return this.type;
+	}
+
+	/**
+	 * Returns the index of the value in the slots of the same type
+	 * @return the slot index
+	 */
+	int getSlot() {
+		return this.slot;
+	}
+
+	/**
+	 * Returns the index of the key among all registered keys
+	 * @return the index
+	 */
+	int getIndex() {
+		return this.index;
+	}
+
+	@Override
+	public String toString() {
+		return this.name + "(" + this.type + ")";
+	}
+}
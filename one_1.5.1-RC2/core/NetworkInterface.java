@@ -4,10 +4,10 @@
  */
 package core;
 
-import interfaces.ConnectivityGrid;
 import interfaces.ConnectivityOptimizer;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
@@ -70,6 +70,15 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	private int activenessJitterMax;
 	/** this interface's activeness jitter value */
 	private int activenessJitterValue;
+	
+	/** connection candidates that were looked up in advance */
+	private ArrayList<NetworkInterface> connectionCandidates;
+	/** reused buffer for the near interfaces asked from the optimizer */
+	private ArrayList<NetworkInterface> nearInterfaces;
+	/** was the next update announced to the optimizer in advance */
+	private boolean updateAnnounced;
+	/** are the {@link #connectionCandidates} found for the next update */
+	private boolean candidatesFound;
 
 	static {
 		DTNSim.registerForReset(NetworkInterface.class.getCanonicalName());
@@ -154,7 +163,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		}
 		
 		if (transmitRange > 0) {
-			optimizer = ConnectivityGrid.ConnectivityGridFactory(
+			optimizer = ConnectivityOptimizer.ConnectivityOptimizerFactory(
 					this.interfacetype.hashCode(), transmitRange);
 			optimizer.addInterface(this);
 		} else {
@@ -275,14 +284,39 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return true;
 	}
 	
+	/**
+	 * Returns the earliest simulation time when this interface needs an
+	 * update call even if no other interface comes within its range before
+	 * that, i.e., the time of the next activeness change or scan round (or
+	 * the current time if the interface has any connections).
+	 * @return The time of the next (possible) event of the interface
+	 */
+	public double getNextEventTime() {
+		double now = SimClock.getTime();
+		if (this.connections.size() > 0) {
+			return now;
+		}
+		
+		double next = ah.getNextChangeTime(this.activenessJitterValue);
+		if (this.scanInterval > 0.0) {
+			if (now < lastScanTime) {
+				next = Math.min(next, lastScanTime);
+			}
+			else {
+				next = Math.min(next, lastScanTime + scanInterval);
+			}
+		}
+		return next;
+	}
+	
 	/**
 	 * Returns true if one of the connections of this interface is transferring
 	 * data
 	 * @return true if the interface transferring
 	 */
 	public boolean isTransferring() {
-		for (Connection c : this.connections) {
-			if (c.isTransferring()) {
+		for (int i=0, n=this.connections.size(); i<n; i++) {
+			if (this.connections.get(i).isTransferring()) {
 				return true;
 			}
 		}
@@ -333,6 +367,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			throw new SimError("No connection " + con + " found in " +
 					anotherInterface);	
 		}
+		connectivityChanged();
+		anotherInterface.connectivityChanged();
 
 		this.host.connectionDown(con);
 		anotherInterface.getHost().connectionDown(con);
@@ -370,6 +406,136 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return false;
 	}
 	
+	/**
+	 * Updates the location of this interface to the connectivity optimizer
+	 * (if any). Optimizers are not thread safe so this must not be called
+	 * concurrently for interfaces of the same type.
+	 */
+	protected void updateOptimizerLocation() {
+		if (optimizer != null) {
+			optimizer.updateLocation(this);
+		}
+	}
+	
+	/**
+	 * Tells the connectivity optimizer (if any) that the location of this 
+	 * interface is going to be updated next in the current update round, so
+	 * the connection candidates can be looked up in advance (see 
+	 * {@link #findConnectionCandidates()}). This must be called 
+	 * sequentially, in the update order, for all interfaces of the round 
+	 * before any of them is updated.
+	 */
+	public void announceUpdate() {
+		this.candidatesFound = false;
+		this.updateAnnounced = optimizer != null && 
+			optimizer.announceUpdate(this);
+	}
+	
+	/**
+	 * Looks up the connection candidates of this interface for the next call
+	 * of {@link #update()}, i.e., the near interfaces the optimizer will
+	 * return in the update if the interfaces are updated in the announced
+	 * order (see {@link #announceUpdate()}). Near interfaces that are out of
+	 * this interface's range are left out, unless checking their 
+	 * activeness on a connection attempt might change their state (see 
+	 * {@link DTNHost#isRadioActivenessFixed()}), so trying to connect to the
+	 * candidates has the same results as trying to connect to all the near
+	 * interfaces. Nothing is changed, so this can be called concurrently for
+	 * different interfaces once all of them are announced.
+	 */
+	public void findConnectionCandidates() {
+		if (!this.updateAnnounced) {
+			return;
+		}
+		
+		if (this.connectionCandidates == null) {
+			this.connectionCandidates = new ArrayList<NetworkInterface>();
+		}
+		else {
+			this.connectionCandidates.clear();
+		}
+		
+		/* range is restored from oldTransmitRange if the interface becomes
+		 * active again before its update */
+		double range = Math.max(this.transmitRange, this.oldTransmitRange);
+		Coord loc = getLocation();
+		List<NetworkInterface> near = getNearInterfacesBuffer();
+		optimizer.getNearInterfacesAhead(this, near);
+		for (int i=0, n=near.size(); i<n; i++) {
+			NetworkInterface ni = near.get(i);
+			if (loc.distance(ni.getLocation()) <= range || 
+					!ni.getHost().isRadioActivenessFixed()) {
+				this.connectionCandidates.add(ni);
+			}
+		}
+		this.candidatesFound = true;
+	}
+	
+	/**
+	 * Returns the (reused) buffer for the near interface look ups
+	 * @return the buffer for the near interfaces
+	 */
+	private List<NetworkInterface> getNearInterfacesBuffer() {
+		if (this.nearInterfaces == null) {
+			this.nearInterfaces = new ArrayList<NetworkInterface>();
+		}
+		return this.nearInterfaces;
+	}
+	
+	/**
+	 * Returns the interfaces this interface should try to connect to in an
+	 * update. If the interface is scanning, the near interfaces whose
+	 * connectivity with this interface may have changed are asked from the
+	 * optimizer, unless the candidates were looked up in advance (using 
+	 * {@link #findConnectionCandidates()}) and the optimizer confirms that
+	 * the locations were updated in the announced order. The returned list
+	 * is reused in the next update, so it must not be stored.
+	 * @return The interfaces to try to connect to
+	 */
+	protected List<NetworkInterface> getConnectionCandidates() {
+		boolean found = this.candidatesFound;
+		this.candidatesFound = false;
+		/* checking the scanning may change the range (activeness), which the
+		 * optimizer must know before the look up */
+		if (!isScanning()) {
+			return Collections.emptyList(); /* no connections possible */
+		}
+		if (found && optimizer.isLookAheadValid(this)) {
+			return this.connectionCandidates;
+		}
+		
+		List<NetworkInterface> near = getNearInterfacesBuffer();
+		if (this.scanInterval > 0.0) {
+			/* a new scan round may connect to any of the near interfaces */
+			optimizer.getNearInterfaces(this, near);
+		}
+		else {
+			optimizer.getChangedNearInterfaces(this, near);
+		}
+		return near;
+	}
+	
+	/**
+	 * Returns true if checking the activeness of this interface (see 
+	 * {@link #isActive()}) can't change its state, i.e., the interface is
+	 * always active, its range is not zero and it has no energy model.
+	 * @return true if the activeness check has no side effects
+	 */
+	public boolean isActivenessFixed() {
+		return this.ah.isAlwaysActive() && this.transmitRange > 0 && 
+			!host.getComBus().containsProperty(EnergyModel.ENERGY_VALUE_ID);
+	}
+	
+	/**
+	 * Informs the connectivity optimizer (if any) that the connectivity of
+	 * this interface has changed in some other way than by moving
+	 */
+	private void connectivityChanged() {
+		if (optimizer != null) {
+			optimizer.stateChanged(this);
+		}
+	}
+	
 	/**
 	 * Makes sure that a value is positive
 	 * @param value Value to check
@@ -427,6 +593,11 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		}
 		else if (key.equals(RANGE_ID)) {
 			this.transmitRange = (Double)newValue;	
+			/* the range tells the radio's activeness for the host's other 
+			 * interfaces too (see DTNHost.isRadioActive()) */
+			for (NetworkInterface ni : this.host.getInterfaces()) {
+				ni.connectivityChanged();
+			}
 		}
 		else {
 			throw new SimError("Unexpected combus ID " + key);
@@ -474,6 +645,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			throw new SimError("No connection " + con + " found in " +
 					anotherNode);   
 		}
+		connectivityChanged();
+		anotherInterface.connectivityChanged();
 
 		this.host.connectionDown(con);
 		anotherNode.connectionDown(con);
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+/**
+ * The linear path segments a host moved along during one move. The path
+ * is stored as points (time, x, y) where the time is relative to the start
+ * of the move and the host moved linearly between each two consecutive
+ * points.
+ */
+public class SweptPath {
+	/** initial capacity (points) of the path */
+	private static final int INITIAL_CAPACITY = 4;
+
+	/** sim time when the move started */
+	private double startTime;
+	/** the points as (time, x, y) triples */
+	private double[] points;
+	/** number of points in the path */
+	private int size;
+
+	/**
+	 * Creates a new, empty, path
+	 */
+	public SweptPath() {
+		this.points = new double[3 * INITIAL_CAPACITY];
+		this.size = 0;
+		this.startTime = -Double.MAX_VALUE;
+	}
+
+	/**
+	 * Clears the path and starts it from the given location
+	 * @param startTime Sim time when the move starts
+	 * @param location The location where the move starts
+	 */
+	public void start(double startTime, Coord location) {
+		this.startTime = startTime;
+		this.size = 0;
+		add(0, location);
+	}
+
+	/**
+	 * Adds a new point to the end of the path
+	 * @param time Time (relative to the start of the move) when the host was
+	 * at the location
+	 * @param location The location
+	 */
+	public void add(double time, Coord location) {
+		if (3 * (size + 1) > points.length) {
+			double[] newPoints = new double[points.length * 2];
+			System.arraycopy(points, 0, newPoints, 0, 3 * size);
+			points = newPoints;
+		}
+		points[3 * size] = time;
+		points[3 * size + 1] = location.getX();
+		points[3 * size + 2] = location.getY();
+		size++;
+	}
+
+	/**
+	 * Returns the sim time when the move started
+	 * @return the sim time when the move started
+	 */
+	public double getStartTime() {
+		return this.startTime;
+	}
+
+	/**
+	 * Returns the number of points in the path
+	 * @return the number of points in the path
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the (relative) time of a point
+	 * @param index Index of the point
+	 * @return the time of the point
+	 */
+	public double getTime(int index) {
+		return points[3 * index];
+	}
+
+	/**
+	 * Returns the x coordinate of a point
+	 * @param index Index of the point
+	 * @return the x coordinate of the point
+	 */
+	public double getX(int index) {
+		return points[3 * index + 1];
+	}
+
+	/**
+	 * Returns the y coordinate of a point
+	 * @param index Index of the point
+	 * @return the y coordinate of the point
+	 */
+	public double getY(int index) {
+		return points[3 * index + 2];
+	}
+}
@@ -6,12 +6,18 @@ package core;
 
 import input.EventQueue;
 import input.ExternalEvent;
+import input.MergedEventQueue;
 import input.ScheduledUpdatesQueue;
+import interfaces.SweptContactDetector;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 
 /**
  * World contains all the nodes and is responsible for updating their
@@ -37,19 +43,91 @@ public class World {
 	 */
 	public static final String SIMULATE_CON_ONCE_S = "simulateConnectionsOnce";
 
+	/**
+	 * Should the movement and connectivity phases of the host updates be
+	 * run in parallel -setting id ({@value}). Boolean (true/false) variable.
+	 * Only side effect free parts of the updates (moving along the current
+	 * path segment and looking up the interfaces within range) are run
+	 * concurrently; everything that changes the state of other hosts is
+	 * committed sequentially in the normal update order so the results do not
+	 * depend on the number of threads. Default is false.
+	 */
+	public static final String PARALLEL_UPDATES_S = "parallelUpdates";
+
+	/**
+	 * Number of worker threads for parallel updates -setting id ({@value}).
+	 * Integer value. Default is the number of available processors.
+	 */
+	public static final String NROF_THREADS_S = "nrofThreads";
+
+	/**
+	 * Should the exact link up and down times during the update intervals 
+	 * be detected from the path segments the hosts move along -setting id 
+	 * ({@value}). Boolean (true/false) variable. If true, contacts of hosts 
+	 * that pass each other during an update interval are not missed and the
+	 * contacts start and end at their exact times also with long update 
+	 * intervals (see {@link SweptContactDetector}). Default is false.
+	 */
+	public static final String SWEPT_CONTACTS_S = "sweptContacts";
+
+	/**
+	 * Should the update intervals when nothing happens be skipped -setting 
+	 * id ({@value}). Boolean (true/false) variable. If true, the world 
+	 * finds the next time when anything can happen (the next external 
+	 * event, waypoint arrival, activeness change, scan round, TTL check, 
+	 * or a new contact predicted from the hosts' current movement, see
+	 * {@link DTNHost#getNextEventTime()}) and moves the hosts directly to 
+	 * the last update interval before that. Intervals are skipped only when
+	 * no host has any connections and there are no update listeners. The 
+	 * update order is still shuffled for every skipped interval (if 
+	 * {@link #RANDOMIZE_UPDATES_S} is on) and the sim time advances in the
+	 * same steps, so the results are the same as without skipping (only 
+	 * the host locations may differ by floating point rounding since the
+	 * hosts are moved over the skipped intervals in one step). Default is 
+	 * false.
+	 */
+	public static final String EVENT_DRIVEN_S = "eventDriven";
+
+	/**
+	 * Should only the hosts an external event affects be updated after the
+	 * event -setting id ({@value}). Boolean (true/false) variable. If true,
+	 * only the hosts returned by the event's 
+	 * {@link ExternalEvent#getAffectedHosts(World)} method and the hosts 
+	 * connected to them are updated after the event (and their interfaces 
+	 * aren't updated since the hosts haven't moved since the last update).
+	 * All hosts are still updated after events that may affect any host
+	 * and in the end of every update interval. Other hosts' finished 
+	 * transfers and activeness changes are hence handled only in the end of
+	 * the update interval. Default is false (update all hosts after every 
+	 * event).
+	 */
+	public static final String TARGETED_UPDATES_S = "targetedUpdates";
+
+	/** how many hosts are handled by a single parallel task at minimum */
+	private static final int PARALLEL_CHUNK_SIZE = 64;
+	/** how long idle update threads are kept alive (days) */
+	private static final long KEEP_ALIVE_DAYS = 365;
+	/** Phase id of parallel movement along the current path segments */
+	private static final int MOVE_PHASE = 1;
+	/** Phase id of parallel look up of connection candidates */
+	private static final int CANDIDATES_PHASE = 2;
+
 	private int sizeX;
 	private int sizeY;
-	private List<EventQueue> eventQueues;
 	private double updateInterval;
 	private SimClock simClock;
 	private double nextQueueEventTime;
-	private EventQueue nextEventQueue;
+	/** all event queues (the scheduled updates first) merged to one */
+	private MergedEventQueue eventQueue;
 	/** list of nodes; nodes are indexed by their network address */
 	private List<DTNHost> hosts;
 	private boolean simulateConnections;
 	/** nodes in the order they should be updated (if the order should be 
 	 * randomized; null value means that the order should not be randomized) */
 	private ArrayList<DTNHost> updateOrder;
+	/** random number generator for shuffling the update order (reseeded
+	 * with the sim time before every shuffle) */
+	private Random updateOrderRng;
 	/** is cancellation of simulation requested from UI */
 	private boolean isCancelled;
 	private List<UpdateListener> updateListeners;
@@ -57,6 +135,29 @@ public class World {
 	private ScheduledUpdatesQueue scheduledUpdates;
 	private boolean simulateConOnce;
 	private boolean isConSimulated;
+	/** worker pool for the parallel update phases or null if updates are
+	 * done only sequentially */
+	private ForkJoinPool updatePool;
+	/** hosts whose movement didn't fit on the current path segment in the
+	 * parallel movement phase (indexed like the hosts list) */
+	private boolean[] deferredMoves;
+	/** hosts whose movement models can be used concurrently (indexed like
+	 * the hosts list) */
+	private boolean[] concurrentMoves;
+	/** detector for the link changes during the moves (or null) */
+	private SweptContactDetector sweptDetector;
+	/** are idle update intervals skipped */
+	private boolean eventDriven;
+	/** detector for predicting the next contacts when skipping intervals */
+	private SweptContactDetector contactPredictor;
+	/** end time of the simulation */
+	private double endTime;
+	/** are only the affected hosts updated after external events */
+	private boolean targetedUpdates;
+	/** hosts marked for a targeted update (indexed by address) */
+	private boolean[] markedHosts;
+	/** the hosts to update in a targeted update */
+	private List<DTNHost> targetHosts;
 
 	/**
 	 * Constructor.
@@ -70,10 +171,13 @@ public class World {
 		this.updateInterval = updateInterval;
 		this.updateListeners = updateListeners;
 		this.simulateConnections = simulateConnections;
-		this.eventQueues = eventQueues;
 		
 		this.simClock = SimClock.getInstance();
 		this.scheduledUpdates = new ScheduledUpdatesQueue();
+		List<EventQueue> queues = new ArrayList<EventQueue>();
+		queues.add(this.scheduledUpdates);
+		queues.addAll(eventQueues);
+		this.eventQueue = new MergedEventQueue(queues);
 		this.isCancelled = false;
 		this.isConSimulated = false;
 
@@ -96,9 +200,109 @@ public class World {
 		if(randomizeUpdates) {
 			// creates the update order array that can be shuffled
 			this.updateOrder = new ArrayList<DTNHost>(this.hosts);
+			this.updateOrderRng = new Random();
 		}
 		else { // null pointer means "don't randomize"
 			this.updateOrder = null;
+		}
+
+		if (s.getBoolean(PARALLEL_UPDATES_S, false)) {
+			int nrofThreads = s.getInt(NROF_THREADS_S, 
+					Runtime.getRuntime().availableProcessors());
+			if (nrofThreads < 1) {
+				throw new SettingsError("Invalid value for " + 
+						s.getFullPropertyName(NROF_THREADS_S) + ": " + 
+						nrofThreads);
+			}
+			this.updatePool = createUpdatePool(nrofThreads);
+			this.deferredMoves = new boolean[this.hosts.size()];
+			this.concurrentMoves = new boolean[this.hosts.size()];
+			for (int i=0, n=this.hosts.size(); i<n; i++) {
+				this.concurrentMoves[i] = hosts.get(i).isMovementConcurrent();
+			}
+		}
+		else {
+			this.updatePool = null;
+		}
+		
+		if (s.getBoolean(SWEPT_CONTACTS_S, false)) {
+			this.sweptDetector = new SweptContactDetector(this.hosts);
+		}
+		else {
+			this.sweptDetector = null;
+		}
+		
+		this.targetedUpdates = s.getBoolean(TARGETED_UPDATES_S, false);
+		if (this.targetedUpdates) {
+			this.markedHosts = new boolean[this.hosts.size()];
+			this.targetHosts = new ArrayList<DTNHost>();
+		}
+		
+		this.eventDriven = s.getBoolean(EVENT_DRIVEN_S, false);
+		if (this.eventDriven) {
+			this.endTime = new Settings(SimScenario.SCENARIO_NS).getDouble(
+					SimScenario.END_TIME_S);
+			this.contactPredictor = (this.sweptDetector != null ? 
+					this.sweptDetector : 
+					new SweptContactDetector(this.hosts, false));
+		}
+		else {
+			this.contactPredictor = null;
+		}
+	}
+
+	/**
+	 * Creates the worker pool for parallel updates and starts all its 
+	 * threads. The threads are started from a helper thread and kept alive
+	 * for the whole simulation because creating threads from the simulation 
+	 * thread would change the identity hash codes of the objects it creates 
+	 * after that (and e.g. the random queue mode relies on those). This way
+	 * the results are the same with any number of threads. The pool is shut
+	 * down in {@link #simulationDone()}.
+	 * @param nrofThreads Number of worker threads
+	 * @return The pool with all the worker threads running
+	 */
+	private ForkJoinPool createUpdatePool(final int nrofThreads) {
+		final ForkJoinPool[] pool = new ForkJoinPool[1];
+		
+		Thread starter = new Thread() {
+			public void run() {
+				pool[0] = new ForkJoinPool(nrofThreads, 
+						ForkJoinPool.defaultForkJoinWorkerThreadFactory, null,
+						false, nrofThreads, nrofThreads, 1, null, 
+						KEEP_ALIVE_DAYS, TimeUnit.DAYS);
+				/* block all workers until every one of them is running */
+				final CountDownLatch started = new CountDownLatch(nrofThreads);
+				for (int i=0; i<nrofThreads; i++) {
+					pool[0].execute(new Runnable() {
+						public void run() {
+							started.countDown();
+							awaitLatch(started);
+						}
+					});
+				}
+				awaitLatch(started);
+			}
+		};
+		starter.start();
+		try {
+			starter.join();
+		} catch (InterruptedException e) {
+			throw new SimError("Interrupted while starting update threads");
+		}
+		
+		return pool[0];
+	}
+	
+	/**
+	 * Waits until the latch has counted down to zero
+	 * @param latch The latch to wait for
+	 */
+	private static void awaitLatch(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			throw new SimError("Interrupted while starting update threads");
 		}
 	}
 
@@ -125,23 +329,13 @@ public class World {
 	}
 
 	/**
-	 * Goes through all event Queues and sets the 
-	 * event queue that has the next event.
+	 * Sets the time of the next event in any of the event queues. If 
+	 * multiple queues have events at the same time, the scheduled updates 
+	 * come first and the other queues in the order they were given to the
+	 * constructor.
 	 */
 	public void setNextEventQueue() {
-		EventQueue nextQueue = scheduledUpdates;
-		double earliest = nextQueue.nextEventsTime();
-
-		/* find the queue that has the next event */
-		for (EventQueue eq : eventQueues) {
-			if (eq.nextEventsTime() < earliest){
-				nextQueue = eq;	
-				earliest = eq.nextEventsTime();
-			}
-		}
-
-		this.nextEventQueue = nextQueue;
-		this.nextQueueEventTime = earliest;
+		this.nextQueueEventTime = this.eventQueue.nextEventsTime();
 	}
 
 	/** 
@@ -150,6 +344,10 @@ public class World {
 	 * this method is called and after one update interval.
 	 */
 	public void update () {
+		if (this.eventDriven && skipIdleIntervals()) {
+			return;
+		}
+		
 		double runUntil = SimClock.getTime() + this.updateInterval;
 
 		setNextEventQueue();
@@ -157,13 +355,23 @@ public class World {
 		/* process all events that are due until next interval update */
 		while (this.nextQueueEventTime <= runUntil) {
 			simClock.setTime(this.nextQueueEventTime);
-			ExternalEvent ee = this.nextEventQueue.nextEvent();
+			ExternalEvent ee = this.eventQueue.nextEvent();
 			ee.processEvent(this);
-			updateHosts(); // update all hosts after every event
+			if (this.targetedUpdates) {
+				updateAffectedHosts(ee.getAffectedHosts(this));
+			}
+			else {
+				updateHosts(); // update all hosts after every event
+			}
 			setNextEventQueue();
 		}
 
+		double moveTime = SimClock.getTime();
 		moveHosts(this.updateInterval);
+		if (this.sweptDetector != null && simulateConnections) {
+			this.sweptDetector.update(moveTime, runUntil, 
+					this.updateInterval);
+		}
 		simClock.setTime(runUntil);
 
 		updateHosts();
@@ -172,6 +380,70 @@ public class World {
 		for (UpdateListener ul : this.updateListeners) {
 			ul.updated(this.hosts);
 		}
+	}
+
+	/**
+	 * Skips the update intervals before the next time when anything can
+	 * happen in the world, if there are any such intervals. The hosts are
+	 * moved for the skipped time and the sim time is advanced to the start 
+	 * of the last update interval before the next event.
+	 * @return True if any intervals were skipped, false if not
+	 */
+	private boolean skipIdleIntervals() {
+		if (!this.updateListeners.isEmpty()) {
+			return false; /* listeners may want to see every update */
+		}
+		
+		double now = SimClock.getTime();
+		double minSkip = now + this.updateInterval;
+		
+		setNextEventQueue();
+		double next = Math.min(this.nextQueueEventTime, this.endTime);
+		for (int i=0, n=hosts.size(); i<n && next > minSkip; i++) {
+			next = Math.min(next, hosts.get(i).getNextEventTime());
+		}
+		if (next <= minSkip) {
+			return false;
+		}
+		
+		if (simulateConnections) {
+			next = Math.min(next, 
+					now + contactPredictor.getNextContactTime(next - now));
+		}
+		
+		/* all updates strictly before the next event can be skipped */
+		double intervals = Math.ceil((next - now) / this.updateInterval) - 1;
+		if (intervals < 1) {
+			return false;
+		}
+		
+		moveHosts(intervals * this.updateInterval);
+		
+		/* the update order would have been shuffled in every skipped update;
+		 * the times are summed like in the normal updates */
+		double time = now;
+		for (int i=0; i<intervals; i++) {
+			time += this.updateInterval;
+			simClock.setTime(time);
+			shuffleUpdateOrder();
+		}
+		return true;
+	}
+	
+	/**
+	 * Shuffles the update order for an update of all hosts at the current
+	 * sim time, if update order randomizing is on. Every shuffle starts from 
+	 * the previous order, so the order must be shuffled for every update,
+	 * also for the skipped ones (see {@link #EVENT_DRIVEN_S}).
+	 */
+	private void shuffleUpdateOrder() {
+		if (this.updateOrder == null) {
+			return;
+		}
+		assert this.updateOrder.size() == this.hosts.size() : 
+			"Nrof hosts has changed unexpectedly";
+		this.updateOrderRng.setSeed(SimClock.getIntTime());
+		Collections.shuffle(this.updateOrder, this.updateOrderRng);
 	}
 
 	/**
@@ -180,7 +452,10 @@ public class World {
 	 * are made in random order.
 	 */
 	private void updateHosts() {
-		if (this.updateOrder == null) { // randomizing is off
+		if (this.updatePool != null) {
+			updateHostsInParallel();
+		}
+		else if (this.updateOrder == null) { // randomizing is off
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
 					break;
@@ -189,10 +464,7 @@ public class World {
 			}
 		}
 		else { // update order randomizing is on
-			assert this.updateOrder.size() == this.hosts.size() : 
-				"Nrof hosts has changed unexpectedly";
-			Random rng = new Random(SimClock.getIntTime());
-			Collections.shuffle(this.updateOrder, rng); 
+			shuffleUpdateOrder();
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
 					break;
@@ -205,19 +477,148 @@ public class World {
 			simulateConnections = false;
 		}
 	}
+
+	/**
+	 * Updates the given hosts and the hosts connected to them (in the 
+	 * order of their addresses) without updating their interfaces. 
+	 * @param affected The hosts to update or null if all hosts should be
+	 * updated (using {@link #updateHosts()})
+	 */
+	private void updateAffectedHosts(List<DTNHost> affected) {
+		if (affected == null) {
+			updateHosts();
+			return;
+		}
+		
+		for (DTNHost host : affected) {
+			markForUpdate(host);
+			for (Connection con : host.getConnections()) {
+				markForUpdate(con.getOtherNode(host));
+			}
+		}
+		Collections.sort(this.targetHosts);
+		
+		for (int i=0, n = targetHosts.size(); i < n; i++) {
+			DTNHost host = targetHosts.get(i);
+			this.markedHosts[host.getAddress()] = false;
+			if (!this.isCancelled) {
+				host.update(false);
+			}
+		}
+		this.targetHosts.clear();
+	}
+	
+	/**
+	 * Adds a host to the targeted update, unless it is there already
+	 * @param host The host to add
+	 */
+	private void markForUpdate(DTNHost host) {
+		if (!this.markedHosts[host.getAddress()]) {
+			this.markedHosts[host.getAddress()] = true;
+			this.targetHosts.add(host);
+		}
+	}
 
 	/**
+	 * Updates all hosts using the parallel update phases. First the
+	 * interfaces' updates are announced to the connectivity optimizers in
+	 * the update order (randomized, if requested), then the interfaces look
+	 * up their connection candidates concurrently, and finally all hosts are
+	 * updated sequentially in the update order. The candidates are the near
+	 * interfaces the optimizers would give in the sequential updates, so
+	 * the results are the same as with {@link #updateHosts()} without the
+	 * parallel phases. 
+	 */
+	private void updateHostsInParallel() {
+		List<DTNHost> order = this.hosts;
+		
+		if (this.updateOrder != null) {
+			shuffleUpdateOrder();
+			order = this.updateOrder;
+		}
+		
+		if (simulateConnections) {
+			/* optimizers are not thread safe -> announce sequentially */
+			for (int i=0, n = order.size(); i < n; i++) {
+				for (NetworkInterface ni : order.get(i).getInterfaces()) {
+					ni.announceUpdate();
+				}
+			}
+			this.updatePool.invoke(new HostPhaseTask(CANDIDATES_PHASE, 
+					order, 0, order.size(), 0));
+		}
+		
+		for (int i=0, n = order.size(); i < n; i++) {
+			if (this.isCancelled) {
+				break;
+			}
+			order.get(i).update(simulateConnections);
+		}
+		
+		if (simulateConOnce && simulateConnections) {
+			simulateConnections = false;
+		}
+	}
+
+	/**
 	 * Moves all hosts in the world for a given amount of time
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		if (this.updatePool != null) {
+			moveHostsInParallel(timeIncrement);
+			return;
+		}
+		
 		for (int i=0,n = hosts.size(); i<n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);			
 		}		
+	}
+	
+	/**
+	 * Moves all hosts in the world in two phases. First all hosts that are
+	 * moving and either don't reach their next waypoint or whose movement 
+	 * models can be used concurrently (see 
+	 * {@link DTNHost#isMovementConcurrent()}) are moved concurrently. 
+	 * Then the rest of the hosts are moved sequentially in the order of their
+	 * addresses, so the movement models are asked for new paths (and the 
+	 * movement listeners are informed) in the same order as in sequential 
+	 * movement.
+	 * @param timeIncrement The time how long all nodes should move
+	 */
+	private void moveHostsInParallel(double timeIncrement) {
+		int n = hosts.size();
+		
+		/* activeness handlers may be shared -> check them sequentially */
+		for (int i=0; i<n; i++) {
+			this.deferredMoves[i] = hosts.get(i).isMovementActive();
+		}
+		
+		this.updatePool.invoke(new HostPhaseTask(MOVE_PHASE, hosts, 0, n,
+				timeIncrement));
+		
+		for (int i=0; i<n; i++) {
+			if (this.deferredMoves[i]) {
+				hosts.get(i).moveActive(timeIncrement);
+			}
+		}
 	}
 
 	/**
+	 * Releases the resources that are needed only while the simulation is 
+	 * running, i.e., shuts down the parallel update threads (if any). This
+	 * should be called when the simulation has ended; any updates after 
+	 * this are done sequentially.
+	 */
+	public void simulationDone() {
+		if (this.updatePool != null) {
+			this.updatePool.shutdown();
+			this.updatePool = null;
+		}
+	}
+
+	/**
 	 * Asynchronously cancels the currently running simulation
 	 */
 	public void cancelSim() {
@@ -273,5 +674,74 @@ public class World {
 	 */
 	public void scheduleUpdate(double simTime) {
 		scheduledUpdates.addUpdate(simTime);
+		eventQueue.queueChanged(0);
 	}
+	
+	/**
+	 * Fork/join task that runs one parallel update phase for a range of 
+	 * hosts. The range is split in halves until it is small enough to be 
+	 * handled by a single task.
+	 */
+	private class HostPhaseTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private int phase;
+		private List<DTNHost> phaseHosts;
+		private int start;
+		private int end;
+		private double timeIncrement;
+		
+		/**
+		 * Creates a new task
+		 * @param phase Id of the phase to run
+		 * @param phaseHosts The hosts of the phase
+		 * @param start Index of the first host of this task
+		 * @param end Index of the last host of this task plus one
+		 * @param timeIncrement The movement time (for the move phase)
+		 */
+		public HostPhaseTask(int phase, List<DTNHost> phaseHosts, int start, 
+				int end, double timeIncrement) {
+			this.phase = phase;
+			this.phaseHosts = phaseHosts;
+			this.start = start;
+			this.end = end;
+			this.timeIncrement = timeIncrement;
+		}
+		
+		@Override
+		protected void compute() {
+			if (end - start > PARALLEL_CHUNK_SIZE) {
+				int middle = (start + end) >>> 1;
+				invokeAll(new HostPhaseTask(phase, phaseHosts, start, middle, 
+							timeIncrement), 
+						new HostPhaseTask(phase, phaseHosts, middle, end,
+							timeIncrement));
+				return;
+			}
+			
+			for (int i = start; i < end; i++) {
+				DTNHost host = phaseHosts.get(i);
+				switch (phase) {
+				case MOVE_PHASE:
+					if (!deferredMoves[i]) {
+						break;
+					}
+					if (concurrentMoves[i]) {
+						host.moveActive(timeIncrement);
+						deferredMoves[i] = false;
+					}
+					else {
+						deferredMoves[i] = !host.moveOnSegment(timeIncrement);
+					}
+					break;
+				case CANDIDATES_PHASE:
+					for (NetworkInterface ni : host.getInterfaces()) {
+						ni.findConnectionCandidates();
+					}
+					break;
+				default:
+					assert false : "Invalid phase " + phase;
+				}
+			}
+		}
+	}
 }
@@ -3,6 +3,9 @@
  * Released under GPLv3. See LICENSE.txt for details. 
  */
 package input;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import core.DTNHost;
 import core.World;
@@ -46,6 +49,17 @@ public class ConnectionEvent extends ExternalEvent {
 		from.forceConnection(to, interfaceId, this.isUp);
 	}
 	
+	/**
+	 * Returns the hosts at the both ends of the connection
+	 */
+	@Override
+	public List<DTNHost> getAffectedHosts(World world) {
+		List<DTNHost> hosts = new ArrayList<DTNHost>(2);
+		hosts.add(world.getNodeByAddress(this.fromAddr));
+		hosts.add(world.getNodeByAddress(this.toAddr));
+		return hosts;
+	}
+	
 	@Override
 	public String toString() {
 		return "CONN " + (isUp ? "up" : "down") + " @" + this.time + " " + 
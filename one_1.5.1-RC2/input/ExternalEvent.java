@@ -5,7 +5,9 @@
 package input;
 
 import java.io.Serializable;
+import java.util.List;
 
+import core.DTNHost;
 import core.World;
 
 /**
@@ -28,6 +30,19 @@ public class ExternalEvent implements Comparable<ExternalEvent>, Serializable {
 	public void processEvent(World world) {
 		// this is just a dummy event
 	}
+	
+	/**
+	 * Returns the hosts whose state processing this event changes, i.e.,
+	 * the hosts that need an update after the event. Used when only the 
+	 * affected hosts are updated after external events (see
+	 * {@link World#TARGETED_UPDATES_S}). This implementation returns null.
+	 * @param world World where the actors of the event are
+	 * @return The affected hosts or null if the event may affect any host
+	 * (and all hosts should be updated)
+	 */
+	public List<DTNHost> getAffectedHosts(World world) {
+		return null;
+	}
 
 	/**
 	 * Returns the time when this event should happen.
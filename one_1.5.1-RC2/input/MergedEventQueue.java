@@ -0,0 +1,194 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package input;
+
+import java.util.List;
+
+/**
+ * Event queue that merges the events of multiple event queues. The queues
+ * are kept in a binary heap ordered by their next event's time, so finding
+ * the next event takes constant time and removing it O(log n) time (where n
+ * is the number of queues). If multiple queues have an event at the same
+ * time, the event of the queue that is first in the list is returned first.
+ * <P>
+ * The next event's time of a queue is assumed to change only when the
+ * queue's next event is removed using this object. If a queue's events 
+ * change otherwise, {@link #queueChanged(int)} must be called. Queues that
+ * implement {@link PolledEventQueue} are not kept in the heap but asked for
+ * their next event's time every time.</P>
+ */
+public class MergedEventQueue implements EventQueue {
+	/** the merged queues */
+	private EventQueue[] queues;
+	/** next event times of the queues (indexed like the queues) */
+	private double[] times;
+	/** binary heap of the (non-polled) queues' indexes */
+	private int[] heap;
+	/** position of each queue in the heap (-1 for polled queues) */
+	private int[] positions;
+	/** number of queues in the heap */
+	private int size;
+	/** indexes of the polled queues */
+	private int[] polled;
+
+	/**
+	 * Constructor.
+	 * @param queues The event queues to merge
+	 */
+	public MergedEventQueue(List<EventQueue> queues) {
+		int n = queues.size();
+		int nrofPolled = 0;
+		this.queues = queues.toArray(new EventQueue[n]);
+		this.times = new double[n];
+		this.heap = new int[n];
+		this.positions = new int[n];
+		this.size = 0;
+
+		for (int i=0; i<n; i++) {
+			if (this.queues[i] instanceof PolledEventQueue) {
+				this.positions[i] = -1;
+				nrofPolled++;
+				continue;
+			}
+			this.times[i] = this.queues[i].nextEventsTime();
+			this.heap[this.size] = i;
+			this.positions[i] = this.size;
+			siftUp(this.size++);
+		}
+
+		this.polled = new int[nrofPolled];
+		for (int i=0, j=0; i<n; i++) {
+			if (this.positions[i] == -1) {
+				this.polled[j++] = i;
+			}
+		}
+	}
+
+	/**
+	 * Returns the next event of the queue with the earliest event or 
+	 * ExternalEvent with time of Double.MAX_VALUE if there are no events
+	 * left in any of the queues.
+	 * @return The next event
+	 */
+	public ExternalEvent nextEvent() {
+		int next = nextQueue();
+		if (next == -1) {
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+
+		ExternalEvent ee = this.queues[next].nextEvent();
+		if (this.positions[next] != -1) {
+			queueChanged(next);
+		}
+		return ee;
+	}
+
+	/**
+	 * Returns the earliest next event's time of all the queues or 
+	 * Double.MAX_VALUE if there are no events left in any of the queues.
+	 * @return Next event's time
+	 */
+	public double nextEventsTime() {
+		int next = nextQueue();
+		if (next == -1) {
+			return Double.MAX_VALUE;
+		}
+		return this.times[next];
+	}
+
+	/**
+	 * Updates the position of a queue after its next event's time has 
+	 * changed otherwise than by removing an event using this object
+	 * @param index Index of the queue (in the list given to the constructor)
+	 */
+	public void queueChanged(int index) {
+		int pos = this.positions[index];
+		if (pos == -1) {
+			return; /* polled queue */
+		}
+		this.times[index] = this.queues[index].nextEventsTime();
+		siftDown(pos);
+		siftUp(this.positions[index]);
+	}
+
+	/**
+	 * Returns the index of the queue that has the earliest event
+	 * @return The index of the queue or -1 if there are no queues
+	 */
+	private int nextQueue() {
+		int next = (this.size > 0 ? this.heap[0] : -1);
+
+		for (int i : this.polled) {
+			this.times[i] = this.queues[i].nextEventsTime();
+			if (next == -1 || isBefore(i, next)) {
+				next = i;
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * Returns true if the next event of the first queue should be handled
+	 * before the next event of the second queue
+	 * @param i Index of the first queue
+	 * @param j Index of the second queue
+	 * @return True if the first queue is before the second queue
+	 */
+	private boolean isBefore(int i, int j) {
+		return this.times[i] < this.times[j] || 
+			(this.times[i] == this.times[j] && i < j);
+	}
+
+	/**
+	 * Moves the queue at the given heap position up until it is in the 
+	 * right place
+	 * @param pos The heap position
+	 */
+	private void siftUp(int pos) {
+		int index = this.heap[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) / 2;
+			if (!isBefore(index, this.heap[parent])) {
+				break;
+			}
+			setHeap(pos, this.heap[parent]);
+			pos = parent;
+		}
+		setHeap(pos, index);
+	}
+
+	/**
+	 * Moves the queue at the given heap position down until it is in the 
+	 * right place
+	 * @param pos The heap position
+	 */
+	private void siftDown(int pos) {
+		int index = this.heap[pos];
+		int half = this.size / 2;
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			if (child + 1 < this.size && 
+					isBefore(this.heap[child + 1], this.heap[child])) {
+				child++;
+			}
+			if (!isBefore(this.heap[child], index)) {
+				break;
+			}
+			setHeap(pos, this.heap[child]);
+			pos = child;
+		}
+		setHeap(pos, index);
+	}
+
+	/**
+	 * Puts a queue to a heap position
+	 * @param pos The heap position
+	 * @param index Index of the queue
+	 */
+	private void setHeap(int pos, int index) {
+		this.heap[pos] = index;
+		this.positions[index] = pos;
+	}
+}
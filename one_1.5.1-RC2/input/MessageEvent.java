@@ -4,6 +4,12 @@
  */
 package input;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import core.DTNHost;
+import core.World;
+
 /**
  * A message related external event
  */
@@ -29,6 +35,19 @@ public abstract class MessageEvent extends ExternalEvent {
 		this.id = id;
 	}
 	
+	/**
+	 * Returns the hosts the message is from and to
+	 */
+	@Override
+	public List<DTNHost> getAffectedHosts(World world) {
+		List<DTNHost> hosts = new ArrayList<DTNHost>(2);
+		hosts.add(world.getNodeByAddress(this.fromAddr));
+		if (this.toAddr != this.fromAddr) {
+			hosts.add(world.getNodeByAddress(this.toAddr));
+		}
+		return hosts;
+	}
+	
 	@Override
 	public String toString() {
 		return "MSG @" + this.time + " " + id;
@@ -0,0 +1,16 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package input;
+
+/**
+ * Marker interface for event queues whose next event's time can change
+ * also otherwise than by calling their {@link EventQueue#nextEvent()} 
+ * method (e.g., when the events come from outside of the simulator). 
+ * The {@link MergedEventQueue} asks the next event time of these queues 
+ * every time instead of keeping them in its heap.
+ */
+public interface PolledEventQueue extends EventQueue {
+
+}
@@ -4,25 +4,37 @@
  */
 package input;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Event queue where simulation objects can request an update to happen
  * at the specified simulation time. Multiple updates at the same time 
- * are merged to a single update.
+ * are merged to a single update. The update times are kept in a binary
+ * heap so adding and removing an update takes O(log n) time.
  */
 public class ScheduledUpdatesQueue implements EventQueue {
+	/** initial capacity of the update times heap */
+	private static final int INITIAL_CAPACITY = 16;
+	
 	/** Time of the event (simulated seconds) */
 	private ExternalEvent nextEvent;
-	private List<ExternalEvent> updates;
+	/** binary heap of the update times (after the next event) */
+	private double[] updates;
+	/** number of update times in the heap */
+	private int size;
+	/** the update times in the heap (for merging the same times) */
+	private Set<Double> updateTimes;
 	
 	/**
 	 * Constructor. Creates an empty update queue.
 	 */
 	public ScheduledUpdatesQueue(){
 		this.nextEvent = new ExternalEvent(Double.MAX_VALUE);
-		this.updates = new ArrayList<ExternalEvent>();
+		this.updates = new double[INITIAL_CAPACITY];
+		this.size = 0;
+		this.updateTimes = new HashSet<Double>();
 	}
 	
 	/**
@@ -33,11 +45,11 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	public ExternalEvent nextEvent() {
 		ExternalEvent event = this.nextEvent;
 		
-		if (this.updates.size() == 0) {
+		if (this.size == 0) {
 			this.nextEvent = new ExternalEvent(Double.MAX_VALUE);
 		}
 		else {
-			this.nextEvent = this.updates.remove(0);
+			this.nextEvent = new ExternalEvent(removeFirst());
 		}
 		
 		return event;
@@ -63,41 +75,76 @@ public class ScheduledUpdatesQueue implements EventQueue {
 			return;
 		}
 		else if (this.nextEvent.getTime() > simTime) { // new nextEvent
-			putToQueue(this.nextEvent); // put the old nextEvent back to q
+			putToQueue(this.nextEvent.getTime()); // put the old one back to q
 			this.nextEvent = ee;
 		}
 		else { // given event happens later..
-			putToQueue(ee);
+			putToQueue(simTime);
+		}
+	}
+	
+	/**
+	 * Puts an update time to the heap (unless it is there already)
+	 * @param time The time to put to the heap
+	 */
+	private void putToQueue(double time) {
+		if (time == Double.MAX_VALUE || !this.updateTimes.add(time)) {
+			return; // no update or update with the given time exists
+		}
+		
+		if (this.size == this.updates.length) {
+			this.updates = Arrays.copyOf(this.updates, 2 * this.size);
+		}
+		
+		/* sift up from the end of the heap */
+		int i = this.size++;
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (this.updates[parent] <= time) {
+				break;
+			}
+			this.updates[i] = this.updates[parent];
+			i = parent;
 		}
+		this.updates[i] = time;
 	}
 	
 	/**
-	 * Puts a event to the queue in the right place
-	 * @param ee The event to put to the queue
+	 * Removes the earliest update time from the heap
+	 * @return The removed time
 	 */
-	private void putToQueue(ExternalEvent ee) {
-		double eeTime = ee.getTime();
+	private double removeFirst() {
+		double first = this.updates[0];
+		double last = this.updates[--this.size];
+		this.updateTimes.remove(first);
 		
-		for (int i=0, n=this.updates.size(); i<n; i++) {
-			double time = updates.get(i).getTime();
-			if (time == eeTime) {
-				return; // update with the given time exists -> no need for new
+		/* sift the last time down from the root */
+		int i = 0;
+		int half = this.size / 2;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < this.size && 
+					this.updates[child + 1] < this.updates[child]) {
+				child++;
 			}
-			else if (eeTime < time) {
-				this.updates.add(i, ee);
-				return;
+			if (last <= this.updates[child]) {
+				break;
 			}
+			this.updates[i] = this.updates[child];
+			i = child;
 		}
+		this.updates[i] = last;
 		
-		/* all existing updates are earlier -> add to the end of the list */
-		this.updates.add(ee);  
+		return first;
 	}
 	
 	public String toString() {
 		String times = "updates @ " + this.nextEvent.getTime();
+		double[] sorted = Arrays.copyOf(this.updates, this.size);
+		Arrays.sort(sorted);
 		
-		for (ExternalEvent ee : this.updates) {
-			times += ", " + ee.getTime();
+		for (double time : sorted) {
+			times += ", " + time;
 		}
 		
 		return times;
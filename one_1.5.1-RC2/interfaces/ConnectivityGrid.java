@@ -7,6 +7,7 @@ package interfaces;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 
 import movement.MovementModel;
 
@@ -15,6 +16,7 @@ import core.DTNSim;
 import core.NetworkInterface;
 import core.Settings;
 import core.SettingsError;
+import core.SimClock;
 import core.World;
 
 /**
@@ -54,14 +56,47 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	/** default value for cell size multiplier ({@value}) */
 	public static final int DEF_CON_CELL_SIZE_MULT = 5;
 	
+	/**
+	 * Incremental connectivity -setting id ({@value}). Boolean valued.
+	 * Used in {@link World#OPTIMIZATION_SETTINGS_NS} name space.
+	 * If true, the grid keeps track of the interfaces that have moved (or 
+	 * whose connectivity has changed otherwise) since the previous update
+	 * and an interface that hasn't changed is offered only the changed 
+	 * interfaces of the neighboring cells as connection candidates. 
+	 * Default value is false.
+	 */
+	public static final String INCREMENTAL_S = "incrementalConnectivity";
+	
 	private GridCell[][] cells;
 	private HashMap<NetworkInterface, GridCell> ginterfaces;
+	/** change tracking entries of the interfaces (in incremental mode) */
+	private HashMap<NetworkInterface, GridEntry> gentries;
+	/** all change tracking entries (in incremental mode) */
+	private ArrayList<GridEntry> allEntries;
+	/** sim time when the interfaces were last checked for changes */
+	private double checkTime;
+	/** number of the changes check (i.e., the update round) */
+	private int checkRound;
+	/** look ahead entries of the announced interfaces */
+	private HashMap<NetworkInterface, AheadEntry> aentries;
+	/** number of the current look ahead round */
+	private int aheadRound;
+	/** number of interfaces announced in the current look ahead round */
+	private int nrofAnnounced;
+	/** number of the announced interfaces whose locations have been updated
+	 * in the announced order, or -1 if the order was not followed */
+	private int nrofUpdatedInOrder;
+	/** have locations been updated after the latest announcement */
+	private boolean updatedAfterAnnounce;
+	/** cells that the announced interfaces move to */
+	private ArrayList<GridCell> arrivalCells;
 	private int cellSize;
 	private int rows;
 	private int cols;
 	private static int worldSizeX;
 	private static int worldSizeY;
 	private static int cellSizeMultiplier;
+	private static boolean incremental;
 	
 	static HashMap<Integer,ConnectivityGrid> gridobjects;
 
@@ -90,6 +125,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 					") for " + World.OPTIMIZATION_SETTINGS_NS + 
 					"." + CELL_SIZE_MULT_S);
 		}
+		incremental = s.getBoolean(INCREMENTAL_S, false);
 	}
 
 	/**
@@ -110,6 +146,15 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 			}
 		}
 		ginterfaces = new HashMap<NetworkInterface,GridCell>();
+		if (incremental) {
+			gentries = new HashMap<NetworkInterface, GridEntry>();
+			allEntries = new ArrayList<GridEntry>();
+		}
+		this.checkTime = -1;
+		this.aentries = new HashMap<NetworkInterface, AheadEntry>();
+		this.arrivalCells = new ArrayList<GridCell>();
+		this.nrofUpdatedInOrder = -1;
+		this.updatedAfterAnnounce = true;
 	}
 
 	/**
@@ -140,6 +185,13 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		GridCell c = cellFromCoord(ni.getLocation());
 		c.addInterface(ni);
 		ginterfaces.put(ni,c);
+		
+		if (incremental) {
+			GridEntry e = new GridEntry(ni, c);
+			c.getEntries().add(e);
+			gentries.put(ni, e);
+			allEntries.add(e);
+		}
 	}
 
 	/** 
@@ -152,6 +204,14 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 			c.removeInterface(ni);
 		}
 		ginterfaces.remove(ni);
+		
+		if (incremental) {
+			GridEntry e = gentries.remove(ni);
+			if (e != null) {
+				e.moveTo(null);
+				allEntries.remove(e);
+			}
+		}
 	}
 
 	/**
@@ -172,37 +232,60 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		GridCell oldCell = (GridCell)ginterfaces.get(ni);
 		GridCell newCell = cellFromCoord(ni.getLocation());
 
+		if (incremental) {
+			GridEntry e = gentries.get(ni);
+			/* every interface updates its location once per update round,
+			 * so a second update (or a new sim time) starts a new round */
+			if (e.round == this.checkRound || 
+					SimClock.getTime() != this.checkTime) {
+				checkChanges();
+			}
+			e.round = this.checkRound;
+		}
+
+		if (this.nrofUpdatedInOrder >= 0) {
+			AheadEntry a = aentries.get(ni);
+			if (a != null && a.round == this.aheadRound && 
+					a.pos == this.nrofUpdatedInOrder) {
+				this.nrofUpdatedInOrder++;
+			}
+			else {
+				this.nrofUpdatedInOrder = -1; /* look ahead results invalid */
+			}
+		}
+		this.updatedAfterAnnounce = true;
+
 		if (newCell != oldCell) {
 			oldCell.moveInterface(ni, newCell);
 			ginterfaces.put(ni,newCell);
+			if (incremental) {
+				gentries.get(ni).moveTo(newCell);
+			}
 		}
 	}
-
-	/**
-	 * Finds all neighboring cells and the cell itself based on the coordinates
-	 * @param c The coordinates
-	 * @return Array of neighboring cells 
-	 */
-	private GridCell[] getNeighborCellsByCoord(Coord c) {
-		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1;
-		int col = (int)(c.getX()/cellSize) + 1;
-		return getNeighborCells(row,col);
-	}
-
+	
 	/**
-	 * Returns an array of Cells that contains the neighbors of a certain
-	 * cell and the cell itself.
-	 * @param row Row index of the cell
-	 * @param col Column index of the cell
-	 * @return Array of neighboring Cells
+	 * Checks which interfaces have moved or changed otherwise since the 
+	 * previous check and counts the changed interfaces of each cell. This 
+	 * is done in the beginning of every update round.
 	 */
-	private GridCell[] getNeighborCells(int row, int col) {
-		return new GridCell[] {
-			cells[row-1][col-1],cells[row-1][col],cells[row-1][col+1],//1st row
-			cells[row][col-1],cells[row][col],cells[row][col+1],//2nd row
-			cells[row+1][col-1],cells[row+1][col],cells[row+1][col+1]//3rd row
-		};
+	private void checkChanges() {
+		double time = SimClock.getTime();
+		this.checkTime = time;
+		this.checkRound++;
+		
+		for (int i=0, n=allEntries.size(); i<n; i++) {
+			GridEntry e = allEntries.get(i);
+			Coord loc = e.ni.getLocation();
+			e.isChanged = e.changePending || loc.getX() != e.x || 
+				loc.getY() != e.y;
+			e.changePending = false;
+			e.x = loc.getX();
+			e.y = loc.getY();
+			if (e.isChanged) {
+				e.cell.addChanged(time);
+			}
+		}
 	}
 
 	/**
@@ -237,17 +320,221 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni) {
 		ArrayList<NetworkInterface> niList = new ArrayList<NetworkInterface>();
-		GridCell loc = (GridCell)ginterfaces.get(ni);
+		getNearInterfaces(ni, niList);
+		return niList;
+	}
+	
+	/**
+	 * Puts all interfaces that are "near" (i.e., in neighboring grid cells) 
+	 * and use the same technology and channel as the given interface to the
+	 * list. The cells are gone through row by row starting from the upper 
+	 * left neighbor cell.
+	 * @param ni The interface whose neighboring interfaces are returned
+	 * @param result The list where the near interfaces are put to
+	 */
+	@Override
+	public void getNearInterfaces(NetworkInterface ni, 
+			List<NetworkInterface> result) {
+		result.clear();
+		if (!ginterfaces.containsKey(ni)) {
+			return;
+		}
 		
-		if (loc != null) {	
-			GridCell[] neighbors = 
-				getNeighborCellsByCoord(ni.getLocation());
-			for (int i=0; i < neighbors.length; i++) {
-				niList.addAll(neighbors[i].getInterfaces());
+		Coord c = ni.getLocation();
+		// +1 due empty cells on both sides of the matrix
+		int row = (int)(c.getY()/cellSize) + 1;
+		int col = (int)(c.getX()/cellSize) + 1;
+		for (int i=row-1; i <= row+1; i++) {
+			for (int j=col-1; j <= col+1; j++) {
+				ArrayList<NetworkInterface> interfaces = 
+					cells[i][j].getInterfaces();
+				for (int k=0, n=interfaces.size(); k<n; k++) {
+					result.add(interfaces.get(k));
+				}
 			}
 		}
+	}
+	
+	/**
+	 * Puts the near interfaces that have changed since the previous update
+	 * to the list if incremental connectivity is enabled (see 
+	 * {@link #INCREMENTAL_S}) and the given interface itself hasn't changed.
+	 * Otherwise puts all near interfaces to the list. The interfaces are in
+	 * the same order as with {@link #getNearInterfaces(NetworkInterface)}.
+	 * @param ni The interface whose neighboring interfaces are returned
+	 * @param result The list where the near interfaces are put to
+	 */
+	@Override
+	public void getChangedNearInterfaces(NetworkInterface ni, 
+			List<NetworkInterface> result) {
+		if (!incremental) {
+			getNearInterfaces(ni, result);
+			return;
+		}
 		
-		return niList;
+		GridEntry entry = gentries.get(ni);
+		if (SimClock.getTime() != this.checkTime) {
+			checkChanges();
+		}
+		if (entry == null || entry.isChanged) {
+			getNearInterfaces(ni, result);
+			return;
+		}
+		
+		result.clear();
+		Coord c = ni.getLocation();
+		int row = (int)(c.getY()/cellSize) + 1;
+		int col = (int)(c.getX()/cellSize) + 1;
+		for (int i=row-1; i <= row+1; i++) {
+			for (int j=col-1; j <= col+1; j++) {
+				if (!cells[i][j].hasChanged(checkTime)) {
+					continue;
+				}
+				ArrayList<GridEntry> entries = cells[i][j].getEntries();
+				for (int k=0, n=entries.size(); k<n; k++) {
+					GridEntry e = entries.get(k);
+					if (e.isChanged) {
+						result.add(e.ni);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Records the cell the interface moves to when its location is updated
+	 * in the current look ahead round. Look ups in advance are not
+	 * supported in the incremental mode. 
+	 * @param ni The interface whose location is updated next
+	 * @return true if the interface is in the grid and not in the 
+	 * incremental mode
+	 */
+	@Override
+	public boolean announceUpdate(NetworkInterface ni) {
+		GridCell oldCell = ginterfaces.get(ni);
+		if (incremental || oldCell == null) {
+			return false;
+		}
+		
+		AheadEntry a = aentries.get(ni);
+		if (a == null) {
+			a = new AheadEntry();
+			aentries.put(ni, a);
+		}
+		if (this.updatedAfterAnnounce || a.round == this.aheadRound) {
+			startAheadRound();
+		}
+		
+		a.round = this.aheadRound;
+		a.pos = this.nrofAnnounced++;
+		a.cell = cellFromCoord(ni.getLocation());
+		if (a.cell != oldCell) {
+			if (a.cell.arrivals == null) {
+				a.cell.arrivals = new ArrayList<NetworkInterface>();
+			}
+			if (a.cell.arrivals.isEmpty()) {
+				this.arrivalCells.add(a.cell);
+			}
+			a.cell.arrivals.add(ni);
+		}
+		return true;
+	}
+	
+	/**
+	 * Starts a new look ahead round
+	 */
+	private void startAheadRound() {
+		this.aheadRound++;
+		this.nrofAnnounced = 0;
+		this.nrofUpdatedInOrder = 0;
+		this.updatedAfterAnnounce = false;
+		for (int i=0, n=arrivalCells.size(); i<n; i++) {
+			arrivalCells.get(i).arrivals.clear();
+		}
+		arrivalCells.clear();
+	}
+	
+	/**
+	 * Puts the interfaces that are in the neighboring cells of the given
+	 * announced interface right after its location is updated to the list.
+	 * A cell's interfaces are then the interfaces that haven't left it in
+	 * the location updates before, in their current order, followed by the 
+	 * interfaces that have moved to the cell, in the update order.
+	 * @param ni The interface whose neighboring interfaces are returned
+	 * @param result The list where the near interfaces are put to
+	 */
+	@Override
+	public void getNearInterfacesAhead(NetworkInterface ni, 
+			List<NetworkInterface> result) {
+		result.clear();
+		AheadEntry a = aentries.get(ni);
+		if (a == null || a.round != this.aheadRound) {
+			return;
+		}
+		
+		Coord c = ni.getLocation();
+		int row = (int)(c.getY()/cellSize) + 1;
+		int col = (int)(c.getX()/cellSize) + 1;
+		for (int i=row-1; i <= row+1; i++) {
+			for (int j=col-1; j <= col+1; j++) {
+				GridCell cell = cells[i][j];
+				ArrayList<NetworkInterface> interfaces = cell.getInterfaces();
+				for (int k=0, n=interfaces.size(); k<n; k++) {
+					NetworkInterface other = interfaces.get(k);
+					AheadEntry o = aentries.get(other);
+					if (o == null || o.round != this.aheadRound || 
+							o.pos > a.pos || o.cell == cell) {
+						result.add(other);
+					}
+				}
+				if (cell.arrivals == null) {
+					continue;
+				}
+				for (int k=0, n=cell.arrivals.size(); k<n; k++) {
+					NetworkInterface other = cell.arrivals.get(k);
+					if (aentries.get(other).pos > a.pos) {
+						break;
+					}
+					result.add(other);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns true if the interfaces announced before the given interface,
+	 * and the interface itself, were the only ones whose locations have 
+	 * been updated (and in the announced order)
+	 * @param ni The interface whose location was just updated
+	 * @return true if the look ahead results of the interface are valid
+	 */
+	@Override
+	public boolean isLookAheadValid(NetworkInterface ni) {
+		AheadEntry a = aentries.get(ni);
+		return a != null && a.round == this.aheadRound && 
+			this.nrofUpdatedInOrder == a.pos + 1;
+	}
+	
+	/**
+	 * Marks the interface changed for the rest of the current update round
+	 * and for the next round (in incremental mode)
+	 * @param ni The interface whose state changed
+	 */
+	@Override
+	public void stateChanged(NetworkInterface ni) {
+		if (!incremental) {
+			return;
+		}
+		
+		GridEntry e = gentries.get(ni);
+		if (e == null) {
+			return;
+		}
+		e.changePending = true;
+		if (!e.isChanged) {
+			e.isChanged = true;
+			e.cell.addChanged(this.checkTime);
+		}
 	}
 
 
@@ -268,10 +555,24 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		// how large array is initially chosen
 		private static final int EXPECTED_INTERFACE_COUNT = 5;
 		private ArrayList<NetworkInterface> interfaces;
+		/** change tracking entries of the interfaces (incremental mode) */
+		private ArrayList<GridEntry> entries;
+		/** number of changed interfaces at {@link #changedTime} */
+		private int nrofChanged;
+		/** check time the changed interfaces were counted for */
+		private double changedTime;
+		/** announced interfaces that move to this cell (in the update 
+		 * order), or null if there hasn't been any */
+		private ArrayList<NetworkInterface> arrivals;
 
 		private GridCell() {
 			this.interfaces = new ArrayList<NetworkInterface>(
 					EXPECTED_INTERFACE_COUNT);
+			if (incremental) {
+				this.entries = new ArrayList<GridEntry>(
+						EXPECTED_INTERFACE_COUNT);
+			}
+			this.changedTime = -1;
 		}
 
 		/**
@@ -282,6 +583,47 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 			return this.interfaces;
 		}
 
+		/**
+		 * Returns the change tracking entries of the interfaces in this cell
+		 * (in the same order as the interfaces)
+		 * @return the change tracking entries
+		 */
+		private ArrayList<GridEntry> getEntries() {
+			return this.entries;
+		}
+		
+		/**
+		 * Counts a changed interface for the given check time
+		 * @param time The check time
+		 */
+		private void addChanged(double time) {
+			if (this.changedTime != time) {
+				this.changedTime = time;
+				this.nrofChanged = 0;
+			}
+			this.nrofChanged++;
+		}
+		
+		/**
+		 * Uncounts a changed interface that has left the cell
+		 * @param time The check time
+		 */
+		private void removeChanged(double time) {
+			if (this.changedTime == time) {
+				this.nrofChanged--;
+			}
+		}
+		
+		/**
+		 * Returns true if this cell has changed interfaces at the given check
+		 * time
+		 * @param time The check time
+		 * @return true if this cell has changed interfaces
+		 */
+		private boolean hasChanged(double time) {
+			return this.changedTime == time && this.nrofChanged > 0;
+		}
+
 		/**
 		 * Adds an interface to this cell
 		 * @param ni The interface to add
@@ -320,4 +662,59 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		}
 	}
 	
+	/**
+	 * Look ahead entry of an announced interface
+	 */
+	private static class AheadEntry {
+		/** the look ahead round the interface was last announced in */
+		private int round;
+		/** position of the interface in the announced update order */
+		private int pos;
+		/** the cell the interface is in after its location update */
+		private GridCell cell;
+	}
+	
+	/**
+	 * Change tracking entry of an interface in the incremental mode
+	 */
+	private class GridEntry {
+		private NetworkInterface ni;
+		/** the cell the interface is in */
+		private GridCell cell;
+		/** location of the interface at the previous check */
+		private double x, y;
+		/** has the interface changed since the check before the previous */
+		private boolean isChanged;
+		/** has the interface changed after the previous check */
+		private boolean changePending;
+		/** the update round the interface's location was last updated in */
+		private int round;
+		
+		private GridEntry(NetworkInterface ni, GridCell cell) {
+			this.ni = ni;
+			this.cell = cell;
+			this.changePending = true;
+		}
+		
+		/**
+		 * Moves the entry to another cell
+		 * @param to The new cell or null if the entry is only removed
+		 */
+		private void moveTo(GridCell to) {
+			boolean removeOk = this.cell.getEntries().remove(this);
+			assert removeOk : "entry of " + ni + " not found from " + cell;
+			if (this.isChanged) {
+				this.cell.removeChanged(checkTime);
+			}
+			
+			this.cell = to;
+			if (to != null) {
+				to.getEntries().add(this);
+				if (this.isChanged) {
+					to.addChanged(checkTime);
+				}
+			}
+		}
+	}
+	
 }
\ No newline at end of file
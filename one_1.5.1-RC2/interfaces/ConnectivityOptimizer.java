@@ -5,8 +5,12 @@
 package interfaces;
 
 import java.util.Collection;
+import java.util.List;
 
 import core.NetworkInterface;
+import core.Settings;
+import core.SettingsError;
+import core.World;
 
 /**
  * A superclass for schemes for optimizing the location of possible contacts
@@ -14,6 +18,45 @@ import core.NetworkInterface;
  */
 abstract public class ConnectivityOptimizer {
 
+	/**
+	 * Connectivity optimizer type -setting id ({@value}).
+	 * Used in {@link World#OPTIMIZATION_SETTINGS_NS} name space.
+	 * Valid values are {@link #GRID_OPTIMIZER} and {@link #KDTREE_OPTIMIZER}.
+	 * The KD-tree handles better interfaces that have very different ranges
+	 * but use the same optimizer. Default value is {@link #GRID_OPTIMIZER}.
+	 */
+	public static final String OPTIMIZER_S = "connectivityOptimizer";
+	/** Value for the grid optimizer ({@value}) */
+	public static final String GRID_OPTIMIZER = "ConnectivityGrid";
+	/** Value for the KD-tree optimizer ({@value}) */
+	public static final String KDTREE_OPTIMIZER = "KDTreeOptimizer";
+
+	/**
+	 * Returns the connectivity optimizer of the type defined in the 
+	 * settings for the interfaces with the given key
+	 * @param key A hash value that separates different interfaces from 
+	 * each other
+	 * @param maxRange Maximum range of the interfaces
+	 * @return The connectivity optimizer object for a specific interface
+	 */
+	public static ConnectivityOptimizer ConnectivityOptimizerFactory(int key,
+			double maxRange) {
+		Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+		String type = s.getSetting(OPTIMIZER_S, GRID_OPTIMIZER);
+		
+		if (type.equals(GRID_OPTIMIZER)) {
+			return ConnectivityGrid.ConnectivityGridFactory(key, maxRange);
+		}
+		else if (type.equals(KDTREE_OPTIMIZER)) {
+			return KDTreeOptimizer.KDTreeOptimizerFactory(key);
+		}
+		else {
+			throw new SettingsError("Unknown connectivity optimizer '" + 
+					type + "' for " + World.OPTIMIZATION_SETTINGS_NS + "." +
+					OPTIMIZER_S);
+		}
+	}
+
 	/**
 	 * Adds a network interface to the optimizer (unless it is already present)
 	 */
@@ -40,6 +83,99 @@ abstract public class ConnectivityOptimizer {
 	abstract public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni);
 
+	/**
+	 * Finds all network interfaces that might be located so that they can be
+	 * connected with the network interface and puts them to the given list
+	 * (after clearing it). Unlike {@link #getNearInterfaces(NetworkInterface)},
+	 * this lets the caller reuse the same list for every query. This 
+	 * implementation copies the interfaces from the collection returned by 
+	 * {@link #getNearInterfaces(NetworkInterface)}; optimizers should 
+	 * override this with a version that doesn't allocate memory.
+	 * 
+	 * @param ni network interface that needs to be connected
+	 * @param result the list where the interfaces are put to
+	 */
+	public void getNearInterfaces(NetworkInterface ni, 
+			List<NetworkInterface> result) {
+		result.clear();
+		result.addAll(getNearInterfaces(ni));
+	}
+
+	/**
+	 * Finds the network interfaces that might be located so that they can be
+	 * connected with the network interface and whose connectivity with it may
+	 * have changed since the previous update, and puts them to the given list
+	 * (after clearing it). This implementation puts all near interfaces to 
+	 * the list (see {@link #getNearInterfaces(NetworkInterface, List)}).
+	 * 
+	 * @param ni network interface that needs to be connected
+	 * @param result the list where the interfaces are put to
+	 */
+	public void getChangedNearInterfaces(NetworkInterface ni, 
+			List<NetworkInterface> result) {
+		getNearInterfaces(ni, result);
+	}
+
+	/**
+	 * Informs the optimizer that the connectivity of a network interface 
+	 * has changed in some other way than by moving (e.g., its range 
+	 * changed or one of its connections was torn down). This implementation
+	 * does nothing.
+	 * 
+	 * @param ni network interface whose state changed
+	 */
+	public void stateChanged(NetworkInterface ni) {
+	}
+
+	/**
+	 * Tells the optimizer that the location of a network interface is going
+	 * to be updated next (after the previously announced interfaces) in the
+	 * current update round. Once all the interfaces of the round are
+	 * announced, their near interfaces can be looked up in advance using
+	 * {@link #getNearInterfacesAhead(NetworkInterface, List)}. The first
+	 * announcement after a location update starts a new round. This
+	 * implementation doesn't support look ups in advance and returns false.
+	 *
+	 * @param ni network interface whose location is updated next
+	 * @return true if the near interfaces of the interface can be looked up
+	 * in advance, false if not
+	 */
+	public boolean announceUpdate(NetworkInterface ni) {
+		return false;
+	}
+
+	/**
+	 * Puts the interfaces that {@link #getChangedNearInterfaces(
+	 * NetworkInterface, List)} would return for an announced network
+	 * interface (see {@link #announceUpdate(NetworkInterface)}), when its
+	 * location is updated, to the given list (after clearing it). The
+	 * result is valid only if the locations are updated in the announced
+	 * order (see {@link #isLookAheadValid(NetworkInterface)}). Since the
+	 * optimizer is not changed, this can be called concurrently for
+	 * different interfaces. This implementation only clears the list.
+	 *
+	 * @param ni announced network interface that needs to be connected
+	 * @param result the list where the interfaces are put to
+	 */
+	public void getNearInterfacesAhead(NetworkInterface ni,
+			List<NetworkInterface> result) {
+		result.clear();
+	}
+
+	/**
+	 * Returns true if the near interfaces that were looked up in advance for
+	 * the network interface are still valid, i.e., the locations of the
+	 * interfaces announced before it, and the interface itself, have been
+	 * updated in the announced order and no other locations have been
+	 * updated. This implementation returns false.
+	 *
+	 * @param ni network interface whose location was just updated
+	 * @return true if the looked up interfaces are valid
+	 */
+	public boolean isLookAheadValid(NetworkInterface ni) {
+		return false;
+	}
+
 	/**
 	 * Finds all other interfaces that are registered to the
 	 * ConnectivityOptimizer
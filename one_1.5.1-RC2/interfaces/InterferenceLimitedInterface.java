@@ -4,7 +4,7 @@
  */
 package interfaces;
 
-import java.util.Collection;
+import java.util.List;
 
 import core.Connection;
 import core.NetworkInterface;
@@ -82,7 +82,7 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 		}
 		
 		// First break the old ones
-		optimizer.updateLocation(this);
+		updateOptimizerLocation();
 		for (int i=0; i<this.connections.size(); ) {
 			Connection con = this.connections.get(i);
 			NetworkInterface anotherInterface = con.getOtherInterface(this);
@@ -98,16 +98,17 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces = 
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) 
-			connect(i);
+		List<NetworkInterface> interfaces = 
+			getConnectionCandidates();
+		for (int i=0, n=interfaces.size(); i<n; i++) 
+			connect(interfaces.get(i));
 
 		// Find the current number of transmissions
 		// (to calculate the current transmission speed
 		numberOfTransmissions = 0;
 		int numberOfActive = 1;
-		for (Connection con : this.connections) {
+		for (int i=0, n=this.connections.size(); i<n; i++) {
+			Connection con = this.connections.get(i);
 			if (con.getMessage() != null) {
 				numberOfTransmissions++;
 			}
@@ -128,8 +129,8 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 						Math.log(1.0*numberOfActive))) /
 							ntrans );
 		
-		for (Connection con : getConnections()) {
-			con.update();
+		for (int i=0, n=this.connections.size(); i<n; i++) {
+			this.connections.get(i).update();
 		}
 	}
 
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+import core.Coord;
+import core.DTNSim;
+import core.NetworkInterface;
+import core.Settings;
+import core.SettingsError;
+import core.SimClock;
+import core.World;
+
+/**
+ * <P>
+ * Connectivity optimizer that keeps the interfaces in a two dimensional
+ * KD-tree. Unlike with {@link ConnectivityGrid}, the size of the searched
+ * area depends only on the range of the querying interface, so interfaces
+ * with very different ranges can share the same optimizer without making
+ * the queries of the short range interfaces slow.</P>
+ *
+ * <P>Rebuilding the tree every update round would be too slow, so the tree
+ * is built from the locations the interfaces had at the time of the build
+ * and the queries are widened by the longest distance an interface has
+ * moved since then. The tree is rebuilt when that distance grows larger
+ * than the rebuild distance setting (or when new interfaces have been
+ * added).</P>
+ */
+public class KDTreeOptimizer extends ConnectivityOptimizer {
+
+	/**
+	 * KD-tree rebuild distance -setting id ({@value}).
+	 * Used in {@link World#OPTIMIZATION_SETTINGS_NS} name space.
+	 * The tree is rebuilt when some interface has moved more than this
+	 * many meters since the previous build. Smaller values make queries
+	 * faster but the tree is rebuilt more often.
+	 * Default value is {@link #DEF_REBUILD_DISTANCE}.
+	 */
+	public static final String REBUILD_DISTANCE_S = "kdTreeRebuildDistance";
+	/** default value for the rebuild distance ({@value}) */
+	public static final double DEF_REBUILD_DISTANCE = 10;
+
+	private static double rebuildDistance;
+	static HashMap<Integer,KDTreeOptimizer> treeobjects;
+
+	static {
+		DTNSim.registerForReset(KDTreeOptimizer.class.getCanonicalName());
+		reset();
+	}
+
+	public static void reset() {
+		treeobjects = new HashMap<Integer, KDTreeOptimizer>();
+
+		Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+		rebuildDistance = s.getDouble(REBUILD_DISTANCE_S,
+				DEF_REBUILD_DISTANCE);
+		if (rebuildDistance < 0) {
+			throw new SettingsError("Negative value (" + rebuildDistance +
+					") for " + World.OPTIMIZATION_SETTINGS_NS +
+					"." + REBUILD_DISTANCE_S);
+		}
+	}
+
+	/** entries of all interfaces in the order they were added */
+	private ArrayList<TreeEntry> allEntries;
+	private HashMap<NetworkInterface, TreeEntry> tentries;
+	/** entries in the tree order (median of each subtree in the middle) */
+	private TreeEntry[] tree;
+	/** number of entries in the tree */
+	private int treeSize;
+	/** longest distance an interface has moved since the tree was built */
+	private double maxMoved;
+	/** sim time when the interfaces were last checked for movement */
+	private double checkTime;
+	/** number of the movement check (i.e., the update round) */
+	private int checkRound;
+
+	/**
+	 * Creates a new, empty, KD-tree optimizer
+	 */
+	private KDTreeOptimizer() {
+		this.allEntries = new ArrayList<TreeEntry>();
+		this.tentries = new HashMap<NetworkInterface, TreeEntry>();
+		this.tree = new TreeEntry[0];
+		this.treeSize = 0;
+		this.maxMoved = 0;
+		this.checkTime = -1;
+		this.checkRound = 0;
+	}
+
+	/**
+	 * Returns a KD-tree optimizer object based on a hash value
+	 * @param key A hash value that separates different interfaces from each
+	 * other
+	 * @return The KD-tree optimizer object for a specific interface
+	 */
+	public static KDTreeOptimizer KDTreeOptimizerFactory(int key) {
+		KDTreeOptimizer kdtree = treeobjects.get((Integer)key);
+		if (kdtree == null) {
+			kdtree = new KDTreeOptimizer();
+			treeobjects.put((Integer)key, kdtree);
+		}
+		return kdtree;
+	}
+
+	/**
+	 * Adds a network interface to the optimizer (unless it is already
+	 * present). The interface is included in the tree in the next rebuild,
+	 * which is done in the beginning of the next update round.
+	 * @param ni The new network interface
+	 */
+	public void addInterface(NetworkInterface ni) {
+		if (tentries.containsKey(ni)) {
+			return;
+		}
+		TreeEntry e = new TreeEntry(ni);
+		tentries.put(ni, e);
+		allEntries.add(e);
+	}
+
+	/**
+	 * Adds interfaces to the optimizer
+	 * @param interfaces Collection of interfaces to add
+	 */
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface n : interfaces) {
+			addInterface(n);
+		}
+	}
+
+	/**
+	 * Removes a network interface from the optimizer
+	 * @param ni The interface to be removed
+	 */
+	public void removeInterface(NetworkInterface ni) {
+		TreeEntry e = tentries.remove(ni);
+		if (e != null) {
+			allEntries.remove(e);
+			this.treeSize = 0; /* forces a rebuild */
+		}
+	}
+
+	/**
+	 * Updates the interface's location. Every interface updates its
+	 * location once per update round, so a second update from the same
+	 * interface (or a new sim time) starts a new round, and in the beginning
+	 * of a round the tree is checked and rebuilt if necessary.
+	 * @param ni The interface to update
+	 */
+	public void updateLocation(NetworkInterface ni) {
+		TreeEntry e = tentries.get(ni);
+		if (e == null) {
+			return;
+		}
+		if (e.round == this.checkRound ||
+				SimClock.getTime() != this.checkTime) {
+			checkMovement();
+		}
+		e.round = this.checkRound;
+	}
+
+	/**
+	 * Starts a new update round: updates the longest moved distance and
+	 * the largest ranges of the interfaces and rebuilds the tree if some
+	 * interface has moved too far or the set of interfaces has changed
+	 */
+	private void checkMovement() {
+		this.checkTime = SimClock.getTime();
+		this.checkRound++;
+
+		double moved = 0;
+		for (int i=0, n=allEntries.size(); i<n; i++) {
+			TreeEntry e = allEntries.get(i);
+			e.updateMaxRange();
+			Coord c = e.ni.getLocation();
+			double dx = c.getX() - e.x;
+			double dy = c.getY() - e.y;
+			double d = dx*dx + dy*dy;
+			if (d > moved) {
+				moved = d;
+			}
+		}
+		this.maxMoved = Math.sqrt(moved);
+
+		if (this.maxMoved > rebuildDistance ||
+				this.treeSize != allEntries.size()) {
+			rebuild();
+		}
+	}
+
+	/**
+	 * Builds the tree from the current locations of the interfaces
+	 */
+	private void rebuild() {
+		int n = allEntries.size();
+		if (tree.length != n) {
+			tree = new TreeEntry[n];
+		}
+		for (int i=0; i<n; i++) {
+			TreeEntry e = allEntries.get(i);
+			Coord c = e.ni.getLocation();
+			e.x = c.getX();
+			e.y = c.getY();
+			tree[i] = e;
+		}
+		this.treeSize = n;
+		this.maxMoved = 0;
+		build(0, n, true);
+	}
+
+	/**
+	 * Builds a subtree by putting the median entry (by the split axis)
+	 * of the range in the middle and building the both halves with the
+	 * other axis
+	 * @param lo Index of the first entry of the subtree
+	 * @param hi Index after the last entry of the subtree
+	 * @param xAxis True if the subtree is split by the x coordinate, false
+	 * if by the y coordinate
+	 */
+	private void build(int lo, int hi, boolean xAxis) {
+		if (hi - lo < 2) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		select(lo, hi - 1, mid, xAxis);
+		build(lo, mid, !xAxis);
+		build(mid + 1, hi, !xAxis);
+	}
+
+	/**
+	 * Partially orders the entries between the given indexes (inclusive)
+	 * so that the entry at index k is the one that would be there if the
+	 * range was sorted, entries before it are not larger and entries after
+	 * it are not smaller (by the given axis)
+	 */
+	private void select(int lo, int hi, int k, boolean xAxis) {
+		while (lo < hi) {
+			double pivot = tree[(lo + hi) >>> 1].key(xAxis);
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (tree[i].key(xAxis) < pivot) {
+					i++;
+				}
+				while (tree[j].key(xAxis) > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					TreeEntry tmp = tree[i];
+					tree[i] = tree[j];
+					tree[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				hi = j;
+			}
+			else if (k >= i) {
+				lo = i;
+			}
+			else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Finds all network interfaces that are within the (largest) range of
+	 * the given interface and puts them to the given list (after clearing
+	 * it). The locations of the interfaces must be updated (see
+	 * {@link #updateLocation(NetworkInterface)}) before the queries of an
+	 * update round. Since the queries only read the tree, they can be done
+	 * concurrently.
+	 * @param ni network interface that needs to be connected
+	 * @param result the list where the interfaces are put to
+	 */
+	public void getNearInterfaces(NetworkInterface ni,
+			List<NetworkInterface> result) {
+		result.clear();
+		TreeEntry e = tentries.get(ni);
+		if (e == null || treeSize == 0) {
+			return;
+		}
+
+		double range = Math.max(e.maxRange, ni.getTransmitRange());
+		Coord c = ni.getLocation();
+		double searchRange = range + this.maxMoved;
+		search(0, treeSize, true, c.getX(), c.getY(),
+				searchRange * searchRange, searchRange, range * range, result);
+	}
+
+	/**
+	 * Searches a subtree for the interfaces that were, when the tree was
+	 * built, within the search range of the given location and that are
+	 * now within the range of it
+	 * @param lo Index of the first entry of the subtree
+	 * @param hi Index after the last entry of the subtree
+	 * @param xAxis Split axis of the subtree
+	 * @param x X coordinate of the location
+	 * @param y Y coordinate of the location
+	 * @param searchRange2 Squared search range
+	 * @param searchRange Search range
+	 * @param range2 Squared range
+	 * @param result the list where the interfaces are put to
+	 */
+	private void search(int lo, int hi, boolean xAxis, double x, double y,
+			double searchRange2, double searchRange, double range2,
+			List<NetworkInterface> result) {
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			TreeEntry e = tree[mid];
+			double dx = x - e.x;
+			double dy = y - e.y;
+
+			if (dx*dx + dy*dy <= searchRange2) {
+				Coord c = e.ni.getLocation();
+				dx = x - c.getX();
+				dy = y - c.getY();
+				if (dx*dx + dy*dy <= range2) {
+					result.add(e.ni);
+				}
+			}
+
+			double d = xAxis ? x - e.x : y - e.y;
+			boolean left = d <= searchRange;
+			boolean right = d >= -searchRange;
+			if (left && right) {
+				search(lo, mid, !xAxis, x, y, searchRange2, searchRange,
+						range2, result);
+				lo = mid + 1;
+			}
+			else if (left) {
+				hi = mid;
+			}
+			else {
+				lo = mid + 1;
+			}
+			xAxis = !xAxis;
+		}
+	}
+
+	/**
+	 * Returns the interfaces that are within the (largest) range of the
+	 * given interface
+	 * @param ni The interface whose near interfaces are returned
+	 * @return List of the near interfaces
+	 */
+	public Collection<NetworkInterface> getNearInterfaces(
+			NetworkInterface ni) {
+		List<NetworkInterface> niList = new ArrayList<NetworkInterface>();
+		getNearInterfaces(ni, niList);
+		return niList;
+	}
+
+	/**
+	 * Returns all interfaces that use the same optimizer
+	 * @return All interfaces that use the same optimizer
+	 */
+	public Collection<NetworkInterface> getAllInterfaces() {
+		return tentries.keySet();
+	}
+
+	/**
+	 * Returns a string representation of the optimizer
+	 * @return a string representation of the optimizer
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " of " + allEntries.size() +
+			" interfaces";
+	}
+
+	/**
+	 * An interface's entry in the tree
+	 */
+	private static class TreeEntry {
+		private NetworkInterface ni;
+		/** location of the interface when the tree was built */
+		private double x, y;
+		/** largest range the interface has had */
+		private double maxRange;
+		/** update round when the interface last updated its location */
+		private int round;
+
+		private TreeEntry(NetworkInterface ni) {
+			this.ni = ni;
+			this.round = -1;
+			updateMaxRange();
+		}
+
+		/**
+		 * Updates the largest range from the interface's current range.
+		 * The largest range is used in the queries so that interfaces
+		 * whose range is temporarily zero (i.e., they are inactive) are
+		 * also found.
+		 */
+		private void updateMaxRange() {
+			double range = ni.getTransmitRange();
+			if (range > this.maxRange) {
+				this.maxRange = range;
+			}
+		}
+
+		/**
+		 * Returns the coordinate of the build time location by the axis
+		 */
+		private double key(boolean xAxis) {
+			return xAxis ? this.x : this.y;
+		}
+	}
+}
@@ -4,7 +4,7 @@
  */
 package interfaces;
 
-import java.util.Collection;
+import java.util.List;
 
 import core.CBRConnection;
 import core.Connection;
@@ -70,7 +70,7 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 		}
 		
 		// First break the old ones
-		optimizer.updateLocation(this);
+		updateOptimizerLocation();
 		for (int i=0; i<this.connections.size(); ) {
 			Connection con = this.connections.get(i);
 			NetworkInterface anotherInterface = con.getOtherInterface(this);
@@ -87,10 +87,10 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces =
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) {
-			connect(i);
+		List<NetworkInterface> interfaces =
+			getConnectionCandidates();
+		for (int i=0, n=interfaces.size(); i<n; i++) {
+			connect(interfaces.get(i));
 		}
 	}
 
@@ -0,0 +1,543 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import core.Connection;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.SimClock;
+import core.SweptPath;
+
+/**
+ * <P>
+ * Contact detector that finds the exact times when the links between the
+ * interfaces go up and down during a move of the hosts. With a long update
+ * interval, the normal connectivity check (which only compares the
+ * locations at the end of the interval) misses contacts of hosts that pass
+ * each other during the interval and gives contact times that are rounded
+ * to the interval.</P>
+ *
+ * <P>The detector uses the linear path segments recorded by the hosts
+ * during the move (see {@link DTNHost#getSweptPath()}). First the pairs of
+ * interfaces whose swept bounding boxes (expanded by the ranges) overlap
+ * are found using sweep-and-prune, then the times when each such pair is
+ * within range are solved segment by segment. Finally the link changes are
+ * applied in time order: the sim time is set to the time of the change and
+ * the interfaces are connected (using their normal connect method) or
+ * disconnected. The normal connectivity check at the end of the update
+ * interval is still done, so the state after the interval is the same as
+ * without the detector.</P>
+ *
+ * <P>The same checks can also be done for the paths the hosts would move
+ * along if they kept their current speed and direction to predict when
+ * the next new link could go up (see {@link #getNextContactTime(double)}).
+ * </P>
+ */
+public class SweptContactDetector {
+	/** link changes closer than this (seconds) to the start or the end of the
+	 * move are left to the normal connectivity checks */
+	private static final double TIME_EPSILON = 1e-9;
+
+	/** the interfaces of the current move and their bounding boxes */
+	private List<SweptEntry> entries;
+	/** the entries sorted by the lower x bound of their boxes */
+	private SweptEntry[] sorted;
+	/** entries whose box may still overlap the next ones' in the sweep */
+	private List<SweptEntry> active;
+	/** link changes found for the current move */
+	private List<LinkEvent> events;
+	/** the ranges when a pair is within range (start, end pairs) */
+	private double[] intervals;
+	private int nrofIntervals;
+
+	/** earliest start of the in-range intervals found by a prediction */
+	private double nextContactTime;
+
+	/**
+	 * Creates a new detector for the given hosts and sets the hosts to
+	 * record their path segments
+	 * @param hosts The hosts whose contacts are detected
+	 */
+	public SweptContactDetector(List<DTNHost> hosts) {
+		this(hosts, true);
+	}
+
+	/**
+	 * Creates a new detector for the given hosts
+	 * @param hosts The hosts whose contacts are detected
+	 * @param recordPaths If true, the hosts are set to record their path
+	 * segments (required by {@link #update(double, double, double)}). If
+	 * false, the detector can only be used for predictions.
+	 */
+	public SweptContactDetector(List<DTNHost> hosts, boolean recordPaths) {
+		this.entries = new ArrayList<SweptEntry>();
+		this.sorted = new SweptEntry[0];
+		this.active = new ArrayList<SweptEntry>();
+		this.events = new ArrayList<LinkEvent>();
+		this.intervals = new double[8];
+
+		for (DTNHost host : hosts) {
+			if (recordPaths) {
+				host.setSweptPathRecording(true);
+			}
+			for (NetworkInterface ni : host.getInterfaces()) {
+				this.entries.add(new SweptEntry(ni));
+			}
+		}
+	}
+
+	/**
+	 * Finds and applies the link changes of a move. Must be called after
+	 * the hosts have moved and before the sim time is advanced to the end of
+	 * the move.
+	 * @param moveTime Sim time when the hosts were moved
+	 * @param endTime Sim time at the end of the move
+	 * @param duration Duration of the move (seconds)
+	 */
+	public void update(double moveTime, double endTime, double duration) {
+		int n = 0;
+		for (SweptEntry e : entries) {
+			SweptPath path = e.host.getSweptPath();
+			if (path == null || path.getStartTime() != moveTime) {
+				path = null; /* didn't move */
+			}
+			if (e.setBounds(path, duration)) {
+				n++;
+			}
+		}
+
+		events.clear();
+		sweep(n, duration, false);
+
+		if (events.isEmpty()) {
+			return;
+		}
+
+		Collections.sort(events);
+		double startTime = endTime - duration;
+		for (LinkEvent le : events) {
+			le.apply(Math.max(startTime + le.time, moveTime));
+		}
+	}
+
+	/**
+	 * Predicts when the next new link could go up if all hosts kept moving
+	 * towards their current destination with their current speed (see
+	 * {@link DTNHost#getPredictedPath(double, SweptPath)}). Interfaces that
+	 * are already connected are not checked.
+	 * @param duration How long time ahead (seconds) to check
+	 * @return Time (relative to the current time) when the first two
+	 * unconnected interfaces are within range (zero if some already are) or
+	 * Double.MAX_VALUE if no interfaces come within range during the time
+	 */
+	public double getNextContactTime(double duration) {
+		int n = 0;
+		for (SweptEntry e : entries) {
+			SweptPath path = e.host.getPredictedPath(duration, e.predicted);
+			if (e.setBounds(path, duration)) {
+				n++;
+			}
+		}
+
+		nextContactTime = Double.MAX_VALUE;
+		sweep(n, duration, true);
+		return nextContactTime;
+	}
+
+	/**
+	 * Checks all the pairs of valid entries whose bounding boxes overlap
+	 * @param n Number of valid entries
+	 * @param duration Duration of the move
+	 * @param predict If true, only the start of the first in-range interval
+	 * of unconnected pairs is stored; otherwise all link events are added
+	 * to the events list
+	 */
+	private void sweep(int n, double duration, boolean predict) {
+		if (sorted.length != entries.size()) {
+			sorted = new SweptEntry[entries.size()];
+		}
+		int i = 0;
+		for (SweptEntry e : entries) {
+			if (e.isValid) {
+				sorted[i++] = e;
+			}
+		}
+		Arrays.sort(sorted, 0, n, MIN_X_COMPARATOR);
+
+		active.clear();
+		for (i=0; i<n; i++) {
+			SweptEntry e = sorted[i];
+			for (int j=0; j<active.size(); ) {
+				SweptEntry other = active.get(j);
+				if (other.maxX < e.minX) {
+					/* other's box ends before this one's starts */
+					active.remove(j);
+					continue;
+				}
+				if (other.minY <= e.maxY && e.minY <= other.maxY &&
+						other.host != e.host &&
+						other.ni.getInterfaceType().equals(
+								e.ni.getInterfaceType())) {
+					if (!predict) {
+						findLinkEvents(other, e, duration);
+					}
+					else if (!isConnected(other.ni, e.ni)) {
+						findInRangeIntervals(other, e, duration);
+						if (nrofIntervals > 0) {
+							nextContactTime = Math.min(nextContactTime,
+									intervals[0]);
+						}
+					}
+				}
+				j++;
+			}
+			active.add(e);
+		}
+	}
+
+	/**
+	 * Finds the times when the link between two interfaces should go up or
+	 * down during the move and adds them to the events list
+	 * @param a The first interface's entry
+	 * @param b The second interface's entry
+	 * @param duration Duration of the move
+	 */
+	private void findLinkEvents(SweptEntry a, SweptEntry b, double duration) {
+		findInRangeIntervals(a, b, duration);
+
+		for (int k=0; k<nrofIntervals; k++) {
+			double start = intervals[2 * k];
+			double end = intervals[2 * k + 1];
+			if (start > TIME_EPSILON) {
+				events.add(new LinkEvent(start, a, b, true,
+						(start + end) / 2));
+			}
+			if (end < duration - TIME_EPSILON) {
+				events.add(new LinkEvent(end, a, b, false, 0));
+			}
+		}
+	}
+
+	/**
+	 * Finds the time ranges when two interfaces are within range of each
+	 * other during the move and stores them to the intervals list
+	 * @param a The first interface's entry
+	 * @param b The second interface's entry
+	 * @param duration Duration of the move
+	 */
+	private void findInRangeIntervals(SweptEntry a, SweptEntry b,
+			double duration) {
+		double range = Math.min(a.range, b.range);
+		double r2 = range * range;
+		nrofIntervals = 0;
+
+		int i = 0;
+		int j = 0;
+		double ta = 0;
+		while (ta < duration) {
+			double tb = Math.min(a.getTime(i + 1), b.getTime(j + 1));
+			double dt = tb - ta;
+			if (dt > 0) {
+				/* relative location in the beginning and the end */
+				double x0 = b.getX(j, ta) - a.getX(i, ta);
+				double y0 = b.getY(j, ta) - a.getY(i, ta);
+				double vx = (b.getX(j, tb) - a.getX(i, tb) - x0) / dt;
+				double vy = (b.getY(j, tb) - a.getY(i, tb) - y0) / dt;
+				addInRangeInterval(ta, dt, x0, y0, vx, vy, r2);
+			}
+			boolean advanced = false;
+			if (a.getTime(i + 1) <= tb && i + 2 < a.size) {
+				i++;
+				advanced = true;
+			}
+			if (b.getTime(j + 1) <= tb && j + 2 < b.size) {
+				j++;
+				advanced = true;
+			}
+			if (!advanced && tb <= ta) {
+				break; /* at the end of both paths */
+			}
+			ta = tb;
+		}
+	}
+
+	/**
+	 * Solves when two hosts moving linearly relative to each other are
+	 * within range during a segment and adds the interval to the intervals
+	 * list (merging it with the previous one if they are adjacent)
+	 * @param ta Start time of the segment
+	 * @param dt Duration of the segment
+	 * @param x0 Relative x coordinate in the start of the segment
+	 * @param y0 Relative y coordinate in the start of the segment
+	 * @param vx Relative speed along x axis
+	 * @param vy Relative speed along y axis
+	 * @param r2 Squared range
+	 */
+	private void addInRangeInterval(double ta, double dt, double x0,
+			double y0, double vx, double vy, double r2) {
+		/* |p0 + v*s|^2 <= r^2  <=>  a*s^2 + b*s + c <= 0 */
+		double a = vx*vx + vy*vy;
+		double b = 2 * (x0*vx + y0*vy);
+		double c = x0*x0 + y0*y0 - r2;
+		double s1, s2;
+
+		if (a == 0) {
+			if (c > 0) {
+				return;
+			}
+			s1 = 0;
+			s2 = dt;
+		}
+		else {
+			double disc = b*b - 4*a*c;
+			if (disc < 0) {
+				return;
+			}
+			double sqrtDisc = Math.sqrt(disc);
+			s1 = Math.max((-b - sqrtDisc) / (2*a), 0);
+			s2 = Math.min((-b + sqrtDisc) / (2*a), dt);
+			if (s1 > s2) {
+				return;
+			}
+		}
+
+		double start = ta + s1;
+		double end = ta + s2;
+		if (nrofIntervals > 0 &&
+				start <= intervals[2 * nrofIntervals - 1] + TIME_EPSILON) {
+			intervals[2 * nrofIntervals - 1] = end;
+			return;
+		}
+		if (2 * (nrofIntervals + 1) > intervals.length) {
+			intervals = Arrays.copyOf(intervals, intervals.length * 2);
+		}
+		intervals[2 * nrofIntervals] = start;
+		intervals[2 * nrofIntervals + 1] = end;
+		nrofIntervals++;
+	}
+
+	/**
+	 * Returns true if the two interfaces are connected
+	 */
+	private static boolean isConnected(NetworkInterface a,
+			NetworkInterface b) {
+		List<Connection> cons = a.getConnections();
+		for (int i=0, n=cons.size(); i<n; i++) {
+			if (cons.get(i).getOtherInterface(a) == b) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Comparator for sorting the entries by the lower x bound of the box */
+	private static final Comparator<SweptEntry> MIN_X_COMPARATOR =
+		new Comparator<SweptEntry>() {
+		public int compare(SweptEntry e1, SweptEntry e2) {
+			return Double.compare(e1.minX, e2.minX);
+		}
+	};
+
+	/**
+	 * An interface and the path its host moved along during a move
+	 */
+	private static class SweptEntry {
+		private NetworkInterface ni;
+		private DTNHost host;
+		/** the path of the host (or null if the host didn't move) */
+		private SweptPath path;
+		/** storage for the predicted path of the host */
+		private SweptPath predicted;
+		/** number of points in the path (2 if the host didn't move) */
+		private int size;
+		private double duration;
+		private double range;
+		/** bounding box of the path expanded by half of the range */
+		private double minX, maxX, minY, maxY;
+		/** true if the interface takes part in the current move's checks */
+		private boolean isValid;
+
+		private SweptEntry(NetworkInterface ni) {
+			this.ni = ni;
+			this.host = ni.getHost();
+			this.predicted = new SweptPath();
+		}
+
+		/**
+		 * Sets the path and the bounding box for the move
+		 * @param path The path of the host during the move or null if the
+		 * host didn't move
+		 * @param duration Duration of the move
+		 * @return true if the interface takes part in the checks of the
+		 * move (i.e., its range is larger than zero)
+		 */
+		private boolean setBounds(SweptPath path, double duration) {
+			this.range = ni.getTransmitRange();
+			this.isValid = range > 0;
+			if (!isValid) {
+				return false;
+			}
+
+			this.duration = duration;
+			this.path = path;
+			if (path != null && path.size() >= 2) {
+				this.size = path.size();
+			}
+			else {
+				this.path = null; /* didn't move */
+				this.size = 2;
+			}
+
+			minX = maxX = getX(0, 0);
+			minY = maxY = getY(0, 0);
+			for (int i=1; i<size; i++) {
+				double x = getX(i - 1, getTime(i));
+				double y = getY(i - 1, getTime(i));
+				minX = Math.min(minX, x);
+				maxX = Math.max(maxX, x);
+				minY = Math.min(minY, y);
+				maxY = Math.max(maxY, y);
+			}
+			double margin = range / 2;
+			minX -= margin;
+			maxX += margin;
+			minY -= margin;
+			maxY += margin;
+			return true;
+		}
+
+		/**
+		 * Returns the time of the path point at the given index
+		 */
+		private double getTime(int index) {
+			if (path == null) {
+				return index == 0 ? 0 : duration;
+			}
+			return Math.min(path.getTime(index), duration);
+		}
+
+		/**
+		 * Returns the x coordinate at the given time on the segment that
+		 * starts from the path point at the given index
+		 */
+		private double getX(int index, double time) {
+			if (path == null) {
+				return host.getLocation().getX();
+			}
+			return interpolate(index, time, path.getX(index),
+					path.getX(index + 1));
+		}
+
+		/**
+		 * Returns the y coordinate at the given time on the segment that
+		 * starts from the path point at the given index
+		 */
+		private double getY(int index, double time) {
+			if (path == null) {
+				return host.getLocation().getY();
+			}
+			return interpolate(index, time, path.getY(index),
+					path.getY(index + 1));
+		}
+
+		private double interpolate(int index, double time, double v0,
+				double v1) {
+			if (index + 1 >= size) {
+				return v0;
+			}
+			double t0 = path.getTime(index);
+			double t1 = path.getTime(index + 1);
+			if (t1 <= t0 || time <= t0) {
+				return time < t1 ? v0 : v1;
+			}
+			if (time >= t1) {
+				return v1;
+			}
+			return v0 + (v1 - v0) * (time - t0) / (t1 - t0);
+		}
+	}
+
+	/**
+	 * A link that should go up or down during the move
+	 */
+	private static class LinkEvent implements Comparable<LinkEvent> {
+		/** time of the change relative to the start of the move */
+		private double time;
+		private SweptEntry a, b;
+		private boolean up;
+		/** time when the hosts are well within range (for link ups) */
+		private double inRangeTime;
+
+		private LinkEvent(double time, SweptEntry a, SweptEntry b,
+				boolean up, double inRangeTime) {
+			this.time = time;
+			this.a = a;
+			this.b = b;
+			this.up = up;
+			this.inRangeTime = inRangeTime;
+		}
+
+		/**
+		 * Applies the link change. For links going up, the hosts are
+		 * temporarily put to the locations they had in the middle of the
+		 * contact so the interfaces' own range checks pass.
+		 * @param simTime The sim time of the change
+		 */
+		private void apply(double simTime) {
+			SimClock.getInstance().setTime(simTime);
+			if (!up) {
+				if (isConnected(a.ni, b.ni)) {
+					a.ni.destroyConnection(b.ni);
+				}
+				return;
+			}
+			if (isConnected(a.ni, b.ni)) {
+				return;
+			}
+
+			Coord locA = a.host.getLocation();
+			Coord locB = b.host.getLocation();
+			double ax = locA.getX(), ay = locA.getY();
+			double bx = locB.getX(), by = locB.getY();
+			int i = segmentAt(a, inRangeTime);
+			int j = segmentAt(b, inRangeTime);
+			locA.setLocation(a.getX(i, inRangeTime), a.getY(i, inRangeTime));
+			locB.setLocation(b.getX(j, inRangeTime), b.getY(j, inRangeTime));
+
+			a.ni.connect(b.ni);
+			if (!isConnected(a.ni, b.ni)) {
+				b.ni.connect(a.ni);
+			}
+
+			locA.setLocation(ax, ay);
+			locB.setLocation(bx, by);
+		}
+
+		/**
+		 * Returns the index of the path segment of the entry at a time
+		 */
+		private int segmentAt(SweptEntry e, double time) {
+			int i = 0;
+			while (i + 2 < e.size && e.getTime(i + 1) < time) {
+				i++;
+			}
+			return i;
+		}
+
+		/**
+		 * Compares the events by their time
+		 */
+		public int compareTo(LinkEvent other) {
+			return Double.compare(this.time, other.time);
+		}
+	}
+}
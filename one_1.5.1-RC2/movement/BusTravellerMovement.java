@@ -162,6 +162,12 @@ public class BusTravellerMovement extends MapBasedMovement implements
 		return 0;
 	}
 	
+	@Override
+	protected void setRandomNumberGenerator(Random rng) {
+		super.setRandomNumberGenerator(rng);
+		cbtd = new ContinueBusTripDecider(rng, probabilities);
+	}
+	
 	@Override
 	public MapBasedMovement replicate() {
 		return new BusTravellerMovement(this);
@@ -81,6 +81,24 @@ public class ExternalPathMovement extends MovementModel {
 		return false;
 	}
 
+	@Override
+	public double nextActivenessChange() {
+		double t = SimClock.getTime();
+		double next = Double.MAX_VALUE;
+		
+		// The next start or end of an active period
+		for (ExternalPathMovementReader.ActiveTime a : this.active) {
+			if (t < a.start) {
+				next = Math.min(next, a.start);
+			}
+			else if (t <= a.end) {
+				next = Math.min(next, a.end);
+			}
+		}
+		
+		return next;
+	}
+
 	@Override
 	public Path getPath() {
 		// Make sure to not give out paths when the node is not active
@@ -396,6 +396,12 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		return cachedMap;
 	}
 	
+	@Override
+	protected boolean usesSharedState() {
+		/* many subclasses use shared control systems -> they must opt in */
+		return getClass() != MapBasedMovement.class;
+	}
+	
 	@Override
 	public MapBasedMovement replicate() {
 		return new MapBasedMovement(this);
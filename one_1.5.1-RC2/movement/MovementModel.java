@@ -44,9 +44,24 @@ public abstract class MovementModel {
 	public static final String WORLD_SIZE = "worldSize";
 	/** movement models' rng seed -setting id ({@value})*/
 	public static final String RNG_SEED = "rngSeed";
+	/** per host random number streams -setting id ({@value}). Boolean valued.
+	 * If true, each movement model gets its own random number generator 
+	 * when it is attached to a host. The generator's seed is derived from
+	 * the {@link #RNG_SEED} and the host's address so a host's movement 
+	 * doesn't depend on the other hosts' random number draws. Default is 
+	 * false (all models share a common generator). */
+	public static final String PER_HOST_RNG_S = "perHostRng";
 	
 	/** common rng for all movement models in the simulation */
-	protected static Random rng; 
+	private static Random sharedRng;
+	/** seed of the movement models' random number generators */
+	private static long rngSeed;
+	/** are per host random number generators used */
+	private static boolean perHostRng;
+	
+	/** rng of this movement model (the common rng unless per host 
+	 * generators are in use) */
+	protected Random rng;
 	
 	/** DTNHost to which this movement model is attached */
 	protected DTNHost host;
@@ -93,6 +108,7 @@ public abstract class MovementModel {
 	 */
 	public MovementModel() {
 		super();
+		this.rng = sharedRng;
 	}
 	
 	/**
@@ -103,6 +119,7 @@ public abstract class MovementModel {
 		double[] speeds;
 		double[] times;
 		
+		this.rng = sharedRng;
 		ah = new ActivenessHandler(settings);
 		
 		if (settings.contains(SPEED)) {
@@ -141,6 +158,7 @@ public abstract class MovementModel {
 	 * @param mm The MovementModel prototype to base the new object to 
 	 */
 	public MovementModel(MovementModel mm) {
+		this.rng = sharedRng;
 		this.maxSpeed = mm.maxSpeed;
 		this.minSpeed = mm.minSpeed;
 		this.maxWaitTime = mm.maxWaitTime;
@@ -221,8 +239,37 @@ public abstract class MovementModel {
 	 */
 	public void setHost(DTNHost host) {
 		this.host = host;
+		if (perHostRng) {
+			setRandomNumberGenerator(
+					new Random(getHostSeed(rngSeed, host.getAddress())));
+		}
 	}
-
+	
+	/**
+	 * Sets the random number generator this movement model uses. Subclasses
+	 * that pass the generator to other objects should override this and 
+	 * update those objects too.
+	 * @param rng The random number generator to use
+	 */
+	protected void setRandomNumberGenerator(Random rng) {
+		this.rng = rng;
+	}
+	
+	/**
+	 * Returns a seed for the random number generator of a host. The seed is
+	 * mixed from the common seed and the host's address (using the SplitMix64
+	 * finalizer) so that the streams of different hosts are uncorrelated.
+	 * @param seed The common seed
+	 * @param address Address of the host
+	 * @return The seed for the host's random number generator
+	 */
+	public static long getHostSeed(long seed, int address) {
+		long z = seed + (address + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
 	/**
 	 * Returns true if this node is active at the moment (false if not)
 	 * @return true if this node is active (false if not)
@@ -231,6 +278,20 @@ public abstract class MovementModel {
 		/* TODO: add offset support */
 		return ah.isActive();
 	}
+
+	/**
+	 * Returns the sim time when the activeness of this model (see 
+	 * {@link #isActive()}) may change next time. Movement models that 
+	 * override {@link #isActive()} should override this too.
+	 * @return The next time the activeness may change or Double.MAX_VALUE if
+	 * it never changes
+	 */
+	public double nextActivenessChange() {
+		if (ah == null) {
+			return Double.MAX_VALUE;
+		}
+		return ah.getNextChangeTime(0);
+	}
 		
 	/**
 	 * Returns a sim time when the next path is available. This implementation
@@ -240,6 +301,30 @@ public abstract class MovementModel {
 	public double nextPathAvailable() {
 		return SimClock.getTime() + generateWaitTime();
 	}
+	
+	/**
+	 * Returns true if this movement model can be used (i.e., its 
+	 * {@link #getPath()} and {@link #nextPathAvailable()} methods can be 
+	 * called) concurrently with the other hosts' movement models. This 
+	 * requires per host random number generators and a model that doesn't 
+	 * use state shared with other models.
+	 * @return true if the model can be used concurrently
+	 * @see #usesSharedState()
+	 */
+	public final boolean isConcurrent() {
+		return perHostRng && !usesSharedState();
+	}
+	
+	/**
+	 * Returns true if this movement model may modify state that is shared
+	 * with other movement models (other than the common random number 
+	 * generator). This implementation returns true; models that don't share 
+	 * any mutable state can override this.
+	 * @return true if the model may use shared state
+	 */
+	protected boolean usesSharedState() {
+		return true;
+	}
 	
 	/**
 	 * Sets the module communication bus for this movement model
@@ -277,12 +362,13 @@ public abstract class MovementModel {
 	public static void reset() {
 		Settings s = new Settings(MOVEMENT_MODEL_NS);
 		if (s.contains(RNG_SEED)) {
-			int seed = s.getInt(RNG_SEED);
-			rng = new Random(seed);
+			rngSeed = s.getInt(RNG_SEED);
 		}
 		else {
-			rng = new Random(0);
+			rngSeed = 0;
 		}
+		sharedRng = new Random(rngSeed);
+		perHostRng = s.getBoolean(PER_HOST_RNG_S, false);
 	}
 	
 }
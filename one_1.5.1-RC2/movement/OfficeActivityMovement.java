@@ -9,6 +9,7 @@ import input.WKTReader;
 import java.io.File;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 
 import util.ParetoRNG;
 
@@ -247,6 +248,13 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 		return waitTime;
 	}
 	
+	@Override
+	protected void setRandomNumberGenerator(Random rng) {
+		super.setRandomNumberGenerator(rng);
+		paretoRNG = new ParetoRNG(rng, officeWaitTimeParetoCoeff, 
+				officeMinWaitTime, officeMaxWaitTime);
+	}
+	
 	@Override
 	public MapBasedMovement replicate() {
 		return new OfficeActivityMovement(this);
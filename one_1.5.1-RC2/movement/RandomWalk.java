@@ -77,6 +77,11 @@ public class RandomWalk extends MovementModel implements SwitchableMovement {
 	}
 	
 	@Override
+	protected boolean usesSharedState() {
+		return false;
+	}
+	
+	@Override
 	public RandomWalk replicate() {
 		return new RandomWalk(this);
 	}
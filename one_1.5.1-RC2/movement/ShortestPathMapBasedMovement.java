@@ -5,6 +5,7 @@
 package movement;
 
 import java.util.List;
+import java.util.Random;
 
 import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
@@ -41,10 +42,22 @@ public class ShortestPathMapBasedMovement extends MapBasedMovement implements
 	 */
 	protected ShortestPathMapBasedMovement(ShortestPathMapBasedMovement mbm) {
 		super(mbm);
-		this.pathFinder = mbm.pathFinder;
+		/* path finders keep search state -> don't share between hosts */
+		this.pathFinder = new DijkstraPathFinder(getOkMapNodeTypes());
 		this.pois = mbm.pois;
 	}
 	
+	@Override
+	protected void setRandomNumberGenerator(Random rng) {
+		super.setRandomNumberGenerator(rng);
+		this.pois = new PointsOfInterest(this.pois, rng);
+	}
+	
+	@Override
+	protected boolean usesSharedState() {
+		return false;
+	}
+	
 	@Override
 	public Path getPath() {
 		Path p = new Path(generateSpeed());
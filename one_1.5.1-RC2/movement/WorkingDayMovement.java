@@ -4,6 +4,8 @@
  */
 package movement;
 
+import java.util.Random;
+
 import core.Coord;
 import core.Settings;
 
@@ -159,6 +161,16 @@ public class WorkingDayMovement extends ExtendedMovementModel {
 		return homeLoc;
 	}
 
+	@Override
+	protected void setRandomNumberGenerator(Random rng) {
+		super.setRandomNumberGenerator(rng);
+		busTravellerMM.setRandomNumberGenerator(rng);
+		workerMM.setRandomNumberGenerator(rng);
+		homeMM.setRandomNumberGenerator(rng);
+		eveningActivityMovement.setRandomNumberGenerator(rng);
+		carMM.setRandomNumberGenerator(rng);
+	}
+	
 	@Override
 	public MovementModel replicate() {
 		return new WorkingDayMovement(this);
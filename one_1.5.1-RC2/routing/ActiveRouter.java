@@ -5,8 +5,8 @@
 package routing;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 
@@ -49,6 +49,15 @@ public abstract class ActiveRouter extends MessageRouter {
 	
 	private MessageTransferAcceptPolicy policy;
 	private EnergyModel energy;
+	
+	/** connections at the last idle update (or null if the router is not
+	 * idle), see {@link #markIdle()} */
+	private Connection[] idleConnections;
+	/** state versions of this router (index 0) and the routers behind the
+	 * idle connections at the last idle update */
+	private long[] idleVersions;
+	/** random number generator for shuffling messages (created lazily) */
+	private Random shuffleRng;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -89,6 +98,8 @@ public abstract class ActiveRouter extends MessageRouter {
 		super.init(host, mListeners);
 		this.sendingConnections = new ArrayList<Connection>(1);
 		this.lastTtlCheck = 0;
+		this.idleConnections = null;
+		this.idleVersions = null;
 	}
 	
 	/**
@@ -102,6 +113,7 @@ public abstract class ActiveRouter extends MessageRouter {
 		if (this.energy != null && con.isUp() && !con.isInitiator(getHost())) {
 			this.energy.reduceDiscoveryEnergy();
 		}
+		stateChanged();
 	}
 	
 	@Override
@@ -111,17 +123,31 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 		
 		DTNHost other = con.getOtherNode(getHost());
-		/* do a copy to avoid concurrent modification exceptions 
-		 * (startTransfer may remove messages) */
-		ArrayList<Message> temp = 
-			new ArrayList<Message>(this.getMessageCollection());
-		for (Message m : temp) {
-			if (other == m.getTo()) {
-				if (startTransfer(m, con) == RCV_OK) {
-					return true;
+		if (!hasMessagesFor(other)) {
+			return false; // nothing to deliver for the other host
+		}
+		
+		/* collect the messages in the message collection's order to a new 
+		 * list to avoid concurrent modification exceptions (startTransfer 
+		 * may remove messages) */
+		List<Message> forOther = getMessagesFor(other);
+		ArrayList<Message> temp = new ArrayList<Message>(forOther.size());
+		if (forOther.size() == 1) {
+			temp.add(forOther.get(0));
+		}
+		else {
+			for (Message m : this.getMessageCollection()) {
+				if (other == m.getTo()) {
+					temp.add(m);
 				}
 			}
 		}
+		
+		for (Message m : temp) {
+			if (startTransfer(m, con) == RCV_OK) {
+				return true;
+			}
+		}
 		return false;
 	}
 	
@@ -237,7 +263,7 @@ public abstract class ActiveRouter extends MessageRouter {
 			return TRY_LATER_BUSY; // only one connection at a time
 		}
 	
-		if ( hasMessage(m.getId()) || isDeliveredMessage(m) ||
+		if ( hasMessage(m) || isDeliveredMessage(m) ||
 				super.isBlacklistedMessage(m.getId())) {
 			return DENIED_OLD; // already seen this message -> reject it
 		}
@@ -293,16 +319,38 @@ public abstract class ActiveRouter extends MessageRouter {
 	}
 	
 	/**
-	 * Drops messages whose TTL is less than zero.
+	 * Drops messages whose TTL is less than zero. Only the expired messages
+	 * are visited (see {@link #pollExpiredMessage()}). If several messages 
+	 * have expired, they are dropped in the order of the 
+	 * {@link #getMessageCollection() message collection}.
 	 */
 	protected void dropExpiredMessages() {
-		Message[] messages = getMessageCollection().toArray(new Message[0]);
-		for (int i=0; i<messages.length; i++) {
-			int ttl = messages[i].getTtl(); 
-			if (ttl <= 0) {
-				deleteMessage(messages[i].getId(), true);
+		Message first = pollExpiredMessage();
+		if (first == null) {
+			return; // nothing expired
+		}
+		
+		Message m = pollExpiredMessage();
+		if (m == null) {
+			deleteMessage(first.getId(), true); // the only expired message
+			return;
+		}
+		
+		HashSet<Message> expired = new HashSet<Message>();
+		expired.add(first);
+		do {
+			expired.add(m);
+		} while ((m = pollExpiredMessage()) != null);
+		
+		List<Message> dropped = new ArrayList<Message>(expired.size());
+		for (Message buffered : getMessageCollection()) {
+			if (expired.contains(buffered)) {
+				dropped.add(buffered);
 			}
 		}
+		for (Message expiredMsg : dropped) {
+			deleteMessage(expiredMsg.getId(), true);
+		}
 	}
 	
 	/**
@@ -323,28 +371,49 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * @param excludeMsgBeingSent If true, excludes message(s) that are
 	 * being sent from the oldest message check (i.e. if oldest message is
 	 * being sent, the second oldest message is returned)
+	 * If several messages have the same (oldest) receive time, the one that 
+	 * comes first in the {@link #getMessageCollection() message collection} 
+	 * is returned.
 	 * @return The oldest message or null if no message could be returned
 	 * (no messages in buffer or all messages in buffer are being sent and
 	 * exludeMsgBeingSent is true)
 	 */
 	protected Message getNextMessageToRemove(boolean excludeMsgBeingSent) {
-		Collection<Message> messages = this.getMessageCollection();
 		Message oldest = null;
-		for (Message m : messages) {
-			
+		HashSet<Message> equallyOld = null;
+		
+		/* the messages are ordered by the receive time -> the first one(s)
+		   that can be removed are the oldest */
+		for (Message m : getMessagesInDropOrder()) {
 			if (excludeMsgBeingSent && isSending(m.getId())) {
 				continue; // skip the message(s) that router is sending
 			}
-			
-			if (oldest == null ) {
+			if (oldest == null) {
 				oldest = m;
 			}
-			else if (oldest.getReceiveTime() > m.getReceiveTime()) {
-				oldest = m;
+			else if (m.getReceiveTime() == oldest.getReceiveTime()) {
+				if (equallyOld == null) {
+					equallyOld = new HashSet<Message>();
+					equallyOld.add(oldest);
+				}
+				equallyOld.add(m);
 			}
+			else {
+				break; // all the rest are younger
+			}
+		}
+		
+		if (equallyOld == null) {
+			return oldest;
 		}
 		
-		return oldest;
+		/* of the equally old messages, return the first in the buffer */
+		for (Message m : getMessageCollection()) {
+			if (equallyOld.contains(m)) {
+				return m;
+			}
+		}
+		return oldest; // not reached; all the messages are in the buffer
 	}
 	
 	/**
@@ -357,7 +426,21 @@ public abstract class ActiveRouter extends MessageRouter {
 			/* no messages -> empty list */
 			return new ArrayList<Tuple<Message, Connection>>(0); 
 		}
+		
+		boolean deliverable = false;
+		for (Connection con : getConnections()) {
+			if (hasMessagesFor(con.getOtherNode(getHost()))) {
+				deliverable = true;
+				break;
+			}
+		}
+		if (!deliverable) {
+			/* no messages for any of the connected hosts -> empty list */
+			return new ArrayList<Tuple<Message, Connection>>(0); 
+		}
 
+		/* collect the tuples in the message collection's order (the random
+		 * queue mode's shuffle result depends on the input order) */
 		List<Tuple<Message, Connection>> forTuples = 
 			new ArrayList<Tuple<Message, Connection>>();
 		for (Message m : getMessageCollection()) {
@@ -509,8 +592,12 @@ public abstract class ActiveRouter extends MessageRouter {
 			return; // nothing to shuffle
 		}
 		
-		Random rng = new Random(SimClock.getIntTime());
-		Collections.shuffle(messages, rng);	
+		if (this.shuffleRng == null) {
+			this.shuffleRng = new Random();
+		}
+		/* seeding with the time gives the same order as a new generator */
+		this.shuffleRng.setSeed(SimClock.getIntTime());
+		Collections.shuffle(messages, this.shuffleRng);	
 	}
 	
 	/**
@@ -521,6 +608,85 @@ public abstract class ActiveRouter extends MessageRouter {
 	 */
 	protected void addToSendingConnections(Connection con) {
 		this.sendingConnections.add(con);
+		stateChanged();
+	}
+	
+	/**
+	 * Returns true if the state versions of this router and the routers
+	 * of all connected hosts cover all the state that affects the outcome 
+	 * of message transfer attempts between them. This is not the case if
+	 * the router has an energy model, applications or a transfer accept 
+	 * policy with Module Communication Bus conditions.
+	 * @return true if the router's state is fully versioned
+	 * @see #getStateVersion()
+	 */
+	protected boolean isStateVersioned() {
+		return this.energy == null && !hasApplications() && 
+			!this.policy.hasMcbConditions();
+	}
+	
+	/**
+	 * Records that an update didn't start any transfer. Until the state of 
+	 * this router or the router of any connected host changes (or the 
+	 * connections change), {@link #isIdle()} returns true. Routers whose
+	 * choice of messages to offer depends only on the state of their own and
+	 * their peers' buffers and connections can call this after a failed
+	 * attempt to start a transfer and skip the next attempts while idle.
+	 */
+	protected void markIdle() {
+		List<Connection> connections = getConnections();
+		int nrofCons = connections.size();
+		this.idleConnections = null;
+		
+		if (!isStateVersioned()) {
+			return;
+		}
+		
+		if (this.idleVersions == null || 
+				this.idleVersions.length != nrofCons + 1) {
+			this.idleVersions = new long[nrofCons + 1];
+		}
+		Connection[] cons = new Connection[nrofCons];
+		this.idleVersions[0] = getStateVersion();
+		for (int i=0; i<nrofCons; i++) {
+			Connection con = connections.get(i);
+			MessageRouter other = con.getOtherNode(getHost()).getRouter();
+			if (!(other instanceof ActiveRouter) ||
+					!((ActiveRouter)other).isStateVersioned()) {
+				return; // can't tell when the other router's state changes
+			}
+			cons[i] = con;
+			this.idleVersions[i + 1] = other.getStateVersion();
+		}
+		this.idleConnections = cons;
+	}
+	
+	/**
+	 * Returns true if neither the state of this router nor the state of 
+	 * any connected router (nor the connections) have changed since the 
+	 * last call of {@link #markIdle()}, i.e., trying to start transfers 
+	 * again would fail like the last time.
+	 * @return true if the router is idle
+	 */
+	protected boolean isIdle() {
+		if (this.idleConnections == null || 
+				this.idleVersions[0] != getStateVersion()) {
+			return false;
+		}
+		
+		List<Connection> connections = getConnections();
+		if (connections.size() != this.idleConnections.length) {
+			return false;
+		}
+		for (int i=0, n=connections.size(); i<n; i++) {
+			Connection con = connections.get(i);
+			if (con != this.idleConnections[i] || 
+					this.idleVersions[i + 1] != con.getOtherNode(
+							getHost()).getRouter().getStateVersion()) {
+				return false;
+			}
+		}
+		return true;
 	}
 		
 	/**
@@ -615,6 +781,7 @@ public abstract class ActiveRouter extends MessageRouter {
 					this.makeRoomForMessage(0);
 				}
 				sendingConnections.remove(i);
+				stateChanged();
 			}
 			else {
 				/* index increase needed only if nothing was removed */
@@ -636,6 +803,20 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 	}
 	
+	/**
+	 * Returns the time of the next TTL check if the router has no sending
+	 * connections and no energy model (that needs updating on every
+	 * update round), current time otherwise.
+	 */
+	@Override
+	public double getNextEventTime() {
+		if (this.energy != null || this.sendingConnections.size() > 0) {
+			return SimClock.getTime();
+		}
+		return Math.min(super.getNextEventTime(), 
+				lastTtlCheck + ttlCheckInterval);
+	}
+	
 	/**
 	 * Method is called just before a transfer is aborted at {@link #update()} 
 	 * due connection going down. This happens on the sending host. 
@@ -14,9 +14,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import routing.util.PredictabilityTable;
 import routing.util.RoutingInfo;
 import util.Tuple;
 
@@ -68,11 +67,7 @@ public class CompatibleProphetRouter extends ActiveRouter {
     /**
      * delivery predictabilities
      */
-    private Map<DTNHost, Double> preds;
-    /**
-     * last delivery predictability update (sim)time
-     */
-    private double lastAgeUpdate;
+    private PredictabilityTable preds;
 
     /**
      * Constructor. Creates a new message router based on the settings in the
@@ -106,10 +101,10 @@ public class CompatibleProphetRouter extends ActiveRouter {
     }
 
     /**
-     * Initializes predictability hash
+     * Initializes predictability table
      */
     private void initPreds() {
-        this.preds = new HashMap<DTNHost, Double>();
+        this.preds = new PredictabilityTable(GAMMA, secondsInTimeUnit);
     }
 
     @Override
@@ -147,7 +142,7 @@ public class CompatibleProphetRouter extends ActiveRouter {
     private void updateDeliveryPredFor(DTNHost host) {
         double oldValue = getPredFor(host);
         double newValue = oldValue + (1 - oldValue) * P_INIT;
-        preds.put(host, newValue);
+        preds.setPred(host, newValue, SimClock.getTime());
     }
 
     /**
@@ -158,12 +153,7 @@ public class CompatibleProphetRouter extends ActiveRouter {
      * @return the current P value
      */
     public double getPredFor(DTNHost host) {
-        ageDeliveryPreds(); // make sure preds are updated before getting
-        if (preds.containsKey(host)) {
-            return preds.get(host);
-        } else {
-            return 0;
-        }
+        return preds.getPred(host, SimClock.getTime()); // aged if needed
     }
 
     /**
@@ -182,7 +172,7 @@ public class CompatibleProphetRouter extends ActiveRouter {
                 + "with other routers of same type: " + otherRouter;
 
         double pForHost = getPredFor(host); // P(a,b)
-        Map<DTNHost, Double> othersPreds;
+        PredictabilityTable othersPreds;
         if (otherRouter instanceof CompatibleProphetRouter) {
             othersPreds = ((CompatibleProphetRouter) otherRouter).getDeliveryPreds();
         } else if (otherRouter instanceof ProphetPtuRouter) {
@@ -192,47 +182,30 @@ public class CompatibleProphetRouter extends ActiveRouter {
             othersPreds = ((SnwPtuRouter) otherRouter).getDeliveryPreds();
         }
 
-        for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-            if (e.getKey() == getHost()) {
+        double now = SimClock.getTime();
+        for (int i = 0, n = othersPreds.size(); i < n; i++) {
+            DTNHost c = othersPreds.getHost(i);
+            if (c == getHost()) {
                 continue; // don't add yourself
             }
 
-            double pOld = getPredFor(e.getKey()); // P(a,c)_old
-            double pNew = pOld + (1 - pOld) * pForHost * e.getValue() * beta;
-            preds.put(e.getKey(), pNew);
+            double pOld = getPredFor(c); // P(a,c)_old
+            double pNew = pOld + (1 - pOld) * pForHost
+                    * othersPreds.getPred(i, now) * beta;
+            preds.setPred(c, pNew, now);
         }
     }
 
     /**
-     * Ages all entries in the delivery predictions.
-     * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of time
-     * units that have elapsed since the last time the metric was aged.
+     * Returns the table of this router's delivery predictions. The entries of
+     * the table are aged (<CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>,
+     * where k is number of time units that have elapsed since the last time
+     * the metric was aged) when they are read.
      *
+     * @return the table of this router's delivery predictions
      * @see #SECONDS_IN_UNIT_S
      */
-    private void ageDeliveryPreds() {
-        double timeDiff = (SimClock.getTime() - this.lastAgeUpdate)
-                / secondsInTimeUnit;
-
-        if (timeDiff == 0) {
-            return;
-        }
-
-        double mult = Math.pow(GAMMA, timeDiff);
-        for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-            e.setValue(e.getValue() * mult);
-        }
-
-        this.lastAgeUpdate = SimClock.getTime();
-    }
-
-    /**
-     * Returns a map of this router's delivery predictions
-     *
-     * @return a map of this router's delivery predictions
-     */
-    protected Map<DTNHost, Double> getDeliveryPreds() {
-        ageDeliveryPreds(); // make sure the aging is done
+    protected PredictabilityTable getDeliveryPreds() {
         return this.preds;
     }
 
@@ -276,7 +249,7 @@ public class CompatibleProphetRouter extends ActiveRouter {
             if (othRouter instanceof CompatibleProphetRouter) {
                 CompatibleProphetRouter pr = (CompatibleProphetRouter) othRouter;
                 for (Message m : msgCollection) {
-                    if (othRouter.hasMessage(m.getId())) {
+                    if (othRouter.hasMessage(m)) {
                         continue; // skip messages that the other one has
                     }
                     if (pr.getPredFor(m.getTo()) > getPredFor(m.getTo())) {
@@ -287,7 +260,7 @@ public class CompatibleProphetRouter extends ActiveRouter {
             } else if (othRouter instanceof ProphetPtuRouter) {
                 ProphetPtuRouter ptur = (ProphetPtuRouter) othRouter;
                 for (Message m : msgCollection) {
-                    if (othRouter.hasMessage(m.getId())) {
+                    if (othRouter.hasMessage(m)) {
                         continue; // skip messages that the other one has
                     }
                     if (ptur.getPredFor(m.getTo()) > getPredFor(m.getTo())) {
@@ -300,7 +273,7 @@ public class CompatibleProphetRouter extends ActiveRouter {
 
                 SnwPtuRouter sptur = (SnwPtuRouter) othRouter;
                 for (Message m : msgCollection) {
-                    if (othRouter.hasMessage(m.getId())) {
+                    if (othRouter.hasMessage(m)) {
                         continue; // skip messages that the other one has
                     }
                     if (sptur.getPredFor(m.getTo()) > getPredFor(m.getTo())) {
@@ -375,14 +348,13 @@ public class CompatibleProphetRouter extends ActiveRouter {
 
     @Override
     public RoutingInfo getRoutingInfo() {
-        ageDeliveryPreds();
         RoutingInfo top = super.getRoutingInfo();
         RoutingInfo ri = new RoutingInfo(preds.size()
                 + " delivery prediction(s)");
 
-        for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-            DTNHost host = e.getKey();
-            Double value = e.getValue();
+        for (int i = 0; i < preds.size(); i++) {
+            DTNHost host = preds.getHost(i);
+            double value = preds.getPred(i, SimClock.getTime());
 
             ri.addMoreInfo(new RoutingInfo(String.format("%s : %.6f",
                     host, value)));
@@ -25,11 +25,15 @@ public class DirectDeliveryRouter extends ActiveRouter {
 		if (isTransferring() || !canStartTransfer()) {
 			return; // can't start a new transfer
 		}
+		if (isIdle()) {
+			return; // nothing has changed since the last failed try
+		}
 		
 		// Try only the messages that can be delivered to final recipient
 		if (exchangeDeliverableMessages() != null) {
 			return; // started a transfer
 		}
+		markIdle();
 	}
 	
 	@Override
@@ -5,8 +5,10 @@
 package routing;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
+import util.LongHashMap;
 import core.*;
 
 /**
@@ -21,6 +23,12 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	
 	/** List of all routers in this node group */
 	private static List<EpidemicOracleRouter> allRouters;
+	/** Routers (indices in {@link #allRouters}) that have a message in their
+	 * buffer, by the interned message IDs */
+	private static LongHashMap<BitSet> messageHolders;
+
+	/** Index of this router in {@link #allRouters} */
+	private int routerIndex;
 
 	static {
 		DTNSim.registerForReset(EpidemicOracleRouter.class.getCanonicalName());
@@ -42,6 +50,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	 */
 	protected EpidemicOracleRouter(EpidemicOracleRouter r) {
 		super(r);
+		this.routerIndex = allRouters.size();
 		allRouters.add(this);
 	}
 	
@@ -54,7 +63,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 			List<Message> newMessages = new ArrayList<Message>();
 			
 			for (Message m : peer.getMessageCollection()) {
-				if (!this.hasMessage(m.getId())) {
+				if (!this.hasMessage(m)) {
 					newMessages.add(m);
 				}
 			}
@@ -112,9 +121,17 @@ public class EpidemicOracleRouter extends ActiveRouter {
 		Message m = super.messageTransferred(id, from);
 
 		if (m.getTo() == this.getHost()) {
-			for (EpidemicOracleRouter r : allRouters) {
-				if (r != this && r != from.getRouter()) {
-					r.removeDeliveredMessage(id);
+			BitSet holders = messageHolders.get(m.getInternedId());
+			if (holders != null) {
+				/* copy, since the routers are removed from the set when
+				   they remove the message */
+				holders = (BitSet)holders.clone();
+				for (int i = holders.nextSetBit(0); i >= 0;
+						i = holders.nextSetBit(i + 1)) {
+					EpidemicOracleRouter r = allRouters.get(i);
+					if (r != this && r != from.getRouter()) {
+						r.removeDeliveredMessage(id);
+					}
 				}
 			}
 		} else {
@@ -124,8 +141,32 @@ public class EpidemicOracleRouter extends ActiveRouter {
 		return m;
 	}
 	
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		super.addToMessages(m, newMessage);
+		BitSet holders = messageHolders.get(m.getInternedId());
+		if (holders == null) {
+			holders = new BitSet();
+			messageHolders.put(m.getInternedId(), holders);
+		}
+		holders.set(this.routerIndex);
+	}
+
+	@Override
+	protected Message removeFromMessages(String id) {
+		Message m = super.removeFromMessages(id);
+		if (m != null) {
+			BitSet holders = messageHolders.get(m.getInternedId());
+			holders.clear(this.routerIndex);
+			if (holders.isEmpty()) {
+				messageHolders.remove(m.getInternedId());
+			}
+		}
+		return m;
+	}
+
 	protected int checkReceiving(Message m) {
-		if ( isIncomingMessage(m.getId()) || hasMessage(m.getId()) || 
+		if ( isIncomingMessage(m.getId()) || hasMessage(m) || 
 				isDeliveredMessage(m) ){
 			return DENIED_OLD; // already seen this message -> reject it
 		}
@@ -172,10 +213,11 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	}
 	
 	/**
-	 * Resets the static router list
+	 * Resets the static router list and the message holders index
 	 */
 	public static void reset() {
 		allRouters = new ArrayList<EpidemicOracleRouter>();
+		messageHolders = new LongHashMap<BitSet>();
 	}
 
 }
\ No newline at end of file
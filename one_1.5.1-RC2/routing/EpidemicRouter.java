@@ -37,6 +37,9 @@ public class EpidemicRouter extends ActiveRouter {
 		if (isTransferring() || !canStartTransfer()) {
 			return; // transferring, don't try other connections yet
 		}
+		if (isIdle()) {
+			return; // nothing has changed since the last failed try
+		}
 		
 		// Try first the messages that can be delivered to final recipient
 		if (exchangeDeliverableMessages() != null) {
@@ -44,7 +47,9 @@ public class EpidemicRouter extends ActiveRouter {
 		}
 		
 		// then try any/all message to any/all connection
-		this.tryAllMessagesToAllConnections();
+		if (this.tryAllMessagesToAllConnections() == null) {
+			markIdle();
+		}
 	}
 	
 	
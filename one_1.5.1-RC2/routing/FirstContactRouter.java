@@ -52,12 +52,17 @@ public class FirstContactRouter extends ActiveRouter {
 		if (isTransferring() || !canStartTransfer()) {
 			return; 
 		}
+		if (isIdle()) {
+			return; // nothing has changed since the last failed try
+		}
 		
 		if (exchangeDeliverableMessages() != null) {
 			return; 
 		}
 		
-		tryAllMessagesToAllConnections();
+		if (tryAllMessagesToAllConnections() == null) {
+			markIdle();
+		}
 	}
 	
 	@Override
@@ -6,11 +6,13 @@ package routing;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Random;
+import java.util.Set;
+import java.util.HashSet;
 import java.lang.Math;
+import routing.util.AnchorZoneIndex;
 import core.*;
 
 /**
@@ -93,18 +95,36 @@ public class FloatingContentRouter extends ActiveRouter {
 	/** Message property keys */ 
 
 	public static final String FC_SRCLOC = "srcloc";
-	public static final String FC_ANCHOR = "anchor";
-	public static final String FC_A = "a";
-	public static final String FC_R = "r";
+	public static final String FC_ANCHOR = FC_NS + ".anchor";
+	public static final String FC_A = FC_NS + ".a";
+	public static final String FC_R = FC_NS + ".r";
 	public static final String FC_TYPE = "type";
-	public static final String FC_TTL = "ttl";
-	public static final String FC_TTL_VAL = "ttlval";
+	public static final String FC_TTL = FC_NS + ".ttl";
+	public static final String FC_TTL_VAL = FC_NS + ".ttlval";
+
+	/** Typed keys of the message properties that are read while routing.
+	 * The names are in the router's name space so that they don't restrict
+	 * the types of other modules' properties. */
+	public static final MessagePropertyKey FC_ANCHOR_KEY =
+		MessagePropertyKey.register(FC_ANCHOR, MessagePropertyKey.Type.OBJECT);
+	public static final MessagePropertyKey FC_A_KEY =
+		MessagePropertyKey.register(FC_A, MessagePropertyKey.Type.DOUBLE);
+	public static final MessagePropertyKey FC_R_KEY =
+		MessagePropertyKey.register(FC_R, MessagePropertyKey.Type.DOUBLE);
+	public static final MessagePropertyKey FC_TTL_KEY =
+		MessagePropertyKey.register(FC_TTL, MessagePropertyKey.Type.DOUBLE);
+	public static final MessagePropertyKey FC_TTL_VAL_KEY =
+		MessagePropertyKey.register(FC_TTL_VAL, MessagePropertyKey.Type.DOUBLE);
 
 	protected Random rng;
 	protected Random replRng;
 	protected Random delRng;
 
 	private List<Connection>   new_conns = new ArrayList<Connection> ();
+	/* anchor zones (of deletion_radius ()) and replication sort keys of the buffered messages */
+	private AnchorZoneIndex    zone_index = new AnchorZoneIndex ();
+	/* buffered messages in the replication order; null if the buffer has changed since ordering */
+	private List<Message>      replication_order = null;
 	
 	private double gpsLastReading = 0;
 	private double gpsUpdateInterval = 0;
@@ -268,14 +288,23 @@ public class FloatingContentRouter extends ActiveRouter {
 		}
 	}
 
+	/**
+	 * Returns always the current time since the messages are deleted and
+	 * replicated based on the host's current location on every update.
+	 */
+	@Override
+	public double getNextEventTime() {
+		return SimClock.getTime();
+	}
+
 	@Override
 	public void update() {
 
 	        Coord loc, peer_loc;
 		List<Connection> connections, conn_list;
 		int n;
-		Collection<Message> m_set, m_set2;
-		List<Message> m_list, m_ordered_list;
+		Collection<Message> m_set;
+		List<Message> m_list, m_ordered_list, m_unsure;
 		List<String> d_list, d_list2;
 		double distance_curr;
 		boolean location_valid = (location_source == LOC_SRC_GPS);
@@ -298,12 +327,13 @@ public class FloatingContentRouter extends ActiveRouter {
 
 			if (this.getNrofMessages() > 0 && !isTransferring()) {
 
-				m_set2 = this.getMessageCollection();
+				/* only the messages whose anchor zone we may have left need to be checked */
+				m_unsure = in_buffer_order (zone_index.getUnsureMessages (loc));
 				d_list2 = new ArrayList<String> ();
 
-				for (Message m : m_set2) {
-					distance_curr = loc.distance ((Coord) m.getProperty (FC_ANCHOR));
-					if  (distance_curr > (Double) m.getProperty (FC_A)) {
+				for (Message m : m_unsure) {
+					distance_curr = loc.distance ((Coord) m.getObject (FC_ANCHOR_KEY));
+					if  (distance_curr > m.getDouble (FC_A_KEY)) {
 						d_list2.add (m.getId ());
 					}
 				}
@@ -324,7 +354,6 @@ public class FloatingContentRouter extends ActiveRouter {
 		connections = getHost().getConnections();
 		conn_list = new ArrayList<Connection> ();
 		m_list = new ArrayList<Message> ();
-		m_ordered_list = new ArrayList<Message> ();
 		m_set = this.getMessageCollection();
 		d_list = new ArrayList<String> ();
 
@@ -349,15 +378,17 @@ public class FloatingContentRouter extends ActiveRouter {
 			location_valid = true;
 		    }
 		}
-		if (deletion_policy == DEL_ENCOUNTER && location_valid) {
+		if (deletion_policy == DEL_ENCOUNTER && location_valid && !new_conns.isEmpty ()) {
 			/* This branch of the code deletes the message upon first encounter of another node outside the anchor zone
 			 * We loop through the new connections to perform the evaluation of the probabilistic deletion check
-			 * once per new connection.  
+			 * once per new connection.  Messages whose replication range we are certainly inside of
+			 * are never deleted (and draw no random numbers), so only the rest need to be checked.
 			 */
+			m_unsure = in_buffer_order (zone_index.getUnsureMessages (loc));
              for (Connection c : new_conns) {
-				for (Message m : m_set) {
-					distance_curr = loc.distance ((Coord) m.getProperty (FC_ANCHOR));
-					if ((deletion_check (distance_curr, (Double) m.getProperty (FC_R), (Double) m.getProperty (FC_A)) == 1)) {
+				for (Message m : m_unsure) {
+					distance_curr = loc.distance ((Coord) m.getObject (FC_ANCHOR_KEY));
+					if ((deletion_check (distance_curr, m.getDouble (FC_R_KEY), m.getDouble (FC_A_KEY)) == 1)) {
 					    if (!d_list.contains (m.getId ()))
 							d_list.add (m.getId ());
 					}
@@ -370,92 +401,11 @@ public class FloatingContentRouter extends ActiveRouter {
 		d_list.clear();
 
 		// organize messages for replication
-		for (Message m : m_set) {
-		    m_ordered_list.add (m);
-		}
-		
-		switch (replication_policy) {
-		case REPL_RND:
+		if (replication_policy == REPL_RND) {
+			m_ordered_list = new ArrayList<Message> (m_set);
 			Collections.shuffle (m_ordered_list, rng);
-			break;
-		case REPL_SAF:
-			Collections.sort (m_ordered_list, new Comparator<Message> () {
-				public int compare (Message m1, Message m2) {
-					double  a1, a2;
-					a1 = (Double) m1.getProperty (FC_A);
-					a2 = (Double) m2.getProperty (FC_A);
-
-					if (a1 == a2)
-						return 0;
-					return a1 < a2 ? -1 : 1;
-				}
-			});
-			break;
-		case REPL_SVF:
-			Collections.sort (m_ordered_list, new Comparator<Message> () {
-				public int compare (Message m1, Message m2) {
-					double  v1, v2;
-					v1 = (Double) m1.getProperty (FC_A) * (double) m1.getSize ();
-					v2 = (Double) m2.getProperty (FC_A) * (double) m2.getSize ();
-
-					if (v1 == v2)
-						return 0;
-					return v1 < v2 ? -1 : 1;
-				}
-			});
-			break;
-		case REPL_SVF2:
-			Collections.sort (m_ordered_list, new Comparator<Message> () {
-				public int compare (Message m1, Message m2) {
-					double  v1, v2;
-					v1 = (Double) m1.getProperty (FC_A) * (Double) m1.getProperty (FC_A) * (double) m1.getSize ();
-					v2 = (Double) m2.getProperty (FC_A) * (Double) m2.getProperty (FC_A) * (double) m2.getSize ();
-
-					if (v1 == v2)
-						return 0;
-					return v1 < v2 ? -1 : 1;
-				}
-			});
-			break;
-		case REPL_STF:
-			Collections.sort (m_ordered_list, new Comparator<Message> () {
-				public int compare (Message m1, Message m2) {
-					double  t1, t2;
-					t1 = (Double) m1.getProperty (FC_A);
-					t1 *= (Double) m1.getProperty (FC_TTL_VAL);
-					t1 *= m1.getSize ();
-					t2 = (Double) m2.getProperty (FC_A);
-					t2 *= (Double) m2.getProperty (FC_TTL_VAL);
-					t2 *= m2.getSize ();
-
-					if (t1 == t2)
-						return 0;
-					return t1 < t2 ? -1 : 1;
-				}
-			});
-			break;
-		case REPL_STF2:
-			Collections.sort (m_ordered_list, new Comparator<Message> () {
-				public int compare (Message m1, Message m2) {
-					double  t1, t2;
-
-					t1 = (Double) m1.getProperty (FC_A);
-					t1 *= t1;
-					t1 *= (Double) m1.getProperty (FC_TTL_VAL);
-					t1 *= m1.getSize ();
-					t2 = (Double) m2.getProperty (FC_A);
-					t2 *= t2;
-					t2 *= (Double) m2.getProperty (FC_TTL_VAL);
-					t2 *= m2.getSize ();
-
-					if (t1 == t2)
-						return 0;
-					return t1 < t2 ? -1 : 1;
-				}
-			});
-		case REPL_FIFO:
-		default:
-			/* if none of the above is chosen, we imply "fifo" and use the original message order */
+		} else {
+			m_ordered_list = get_replication_order ();
 		}
 
 		double a, r, h;
@@ -480,23 +430,23 @@ public class FloatingContentRouter extends ActiveRouter {
 				if (peer_router.getLocationSource () == LOC_SRC_GPS) {
 				    /* the remote node knows where it is -> use its location */
 				    peer_loc = peer_router.getLocation ();
-				    h = peer_loc.distance ((Coord) m.getProperty (FC_ANCHOR));
+				    h = peer_loc.distance ((Coord) m.getObject (FC_ANCHOR_KEY));
 				} else if (location_valid) {
 				    /* we know where we are (or at least approximately -> our our location as a backup */
-				    h = loc.distance ((Coord) m.getProperty (FC_ANCHOR));
+				    h = loc.distance ((Coord) m.getObject (FC_ANCHOR_KEY));
 				} else if ((peer_loc = peer_router.getLastKnownLocation ()) != null) {
 				    /* if we don't know either, let's try the most recent peer location */
-				    h = peer_loc.distance ((Coord) m.getProperty (FC_ANCHOR));
+				    h = peer_loc.distance ((Coord) m.getObject (FC_ANCHOR_KEY));
 				} else if (last_known_location != null) { 
 				    /* last resort: our most recently known location if not established in this round */
-				    h = last_known_location.distance ((Coord) m.getProperty (FC_ANCHOR));
+				    h = last_known_location.distance ((Coord) m.getObject (FC_ANCHOR_KEY));
 				} else {
 				    /* no idea about location on either side -> don't replicate */
 				    continue;
 				}
 
-				r = (Double) m.getProperty (FC_R);
-				a = (Double) m.getProperty (FC_A);
+				r = m.getDouble (FC_R_KEY);
+				a = m.getDouble (FC_A_KEY);
 				// Rule 1: if within core radius -> replicate
 				// d <= r
 				if (h <= r) {
@@ -540,10 +490,95 @@ public class FloatingContentRouter extends ActiveRouter {
 				conn_list.clear();
 			}
 		}
-		m_ordered_list.clear ();
 		new_conns.clear ();
 	}
 
+	/* Returns the buffered messages in the replication order.  The order only changes
+	 * when the buffer changes, so it is kept until then.  The returned list must not be modified.
+	 */
+	private List<Message> get_replication_order () {
+		if (replication_order == null) {
+			replication_order = new ArrayList<Message> (this.getMessageCollection ());
+			/* fifo: the original message order; the sort is stable so equal keys keep it too */
+			if (replication_policy != REPL_FIFO)
+				zone_index.sortByKey (replication_order);
+		}
+		return replication_order;
+	}
+
+	/* Sort key of a message for the replication policy; the messages with the smallest keys
+	 * are replicated first.
+	 */
+	private double replication_key (Message m) {
+		double  k;
+
+		switch (replication_policy) {
+		case REPL_SAF:
+			return m.getDouble (FC_A_KEY);
+		case REPL_SVF:
+			return m.getDouble (FC_A_KEY) * (double) m.getSize ();
+		case REPL_SVF2:
+			return m.getDouble (FC_A_KEY) * m.getDouble (FC_A_KEY) * (double) m.getSize ();
+		case REPL_STF:
+			k = m.getDouble (FC_A_KEY);
+			k *= m.getDouble (FC_TTL_VAL_KEY);
+			k *= m.getSize ();
+			return k;
+		case REPL_STF2:
+			k = m.getDouble (FC_A_KEY);
+			k *= k;
+			k *= m.getDouble (FC_TTL_VAL_KEY);
+			k *= m.getSize ();
+			return k;
+		default:
+			return 0;
+		}
+	}
+
+	/* Radius of the zone around the anchor point inside which a message is never deleted:
+	 * the anchor zone (a) with immediate deletion and also within the replication range (r)
+	 * with encounter-based deletion.
+	 */
+	private double deletion_radius (Message m) {
+		if (deletion_policy == DEL_IMMEDIATE)
+			return m.getDouble (FC_A_KEY);
+		return Math.min (m.getDouble (FC_R_KEY), m.getDouble (FC_A_KEY));
+	}
+
+	/* Returns the given messages in the order of the message buffer, i.e., in the order in which
+	 * they are checked for deletion and the random numbers for the checks are drawn.
+	 */
+	private List<Message> in_buffer_order (List<Message> messages) {
+		if (messages.size () < 2)
+			return messages;
+
+		Set<Message>  m_set = new HashSet<Message> (messages);
+		List<Message> ordered = new ArrayList<Message> (messages.size ());
+		for (Message m : this.getMessageCollection ()) {
+			if (m_set.contains (m))
+				ordered.add (m);
+		}
+		return ordered;
+	}
+
+	/* Keep the anchor zone index and the replication order in sync with the message buffer */
+	@Override
+	protected void addToMessages (Message m, boolean newMessage) {
+		super.addToMessages (m, newMessage);
+		zone_index.add (m, (Coord) m.getObject (FC_ANCHOR_KEY), deletion_radius (m), replication_key (m));
+		replication_order = null;
+	}
+
+	@Override
+	protected Message removeFromMessages (String id) {
+		Message m = super.removeFromMessages (id);
+		if (m != null) {
+			zone_index.remove (id);
+			replication_order = null;
+		}
+		return m;
+	}
+
 	// This check can only be carried out with the encounter-based deletion;
 	// otherwise, content in the buffer zone would die out too quickly as
 	// every time tick would lead to a new check.
@@ -9,6 +9,7 @@ import java.util.Vector;
 import core.DTNHost;
 import core.Message;
 import core.Settings;
+import core.SimClock;
 import core.Connection;
 
 /**
@@ -76,6 +77,15 @@ public class LifeRouter extends ActiveRouter {
 		return super.checkReceiving(m, from);
 	}
 	
+	/**
+	 * Returns always the current time since the messages are dropped based
+	 * on the peer message counts (that other hosts change) on every update.
+	 */
+	@Override
+	public double getNextEventTime() {
+		return SimClock.getTime();
+	}
+	
 	@Override
 	public void update() {
 		int peerMsgCount;
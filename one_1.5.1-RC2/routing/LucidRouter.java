@@ -8,6 +8,7 @@ import core.Connection;
 import core.Coord;
 import core.DTNHost;
 import core.Message;
+import core.MessagePropertyKey;
 import core.Settings;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -31,6 +32,12 @@ public class LucidRouter extends ActiveRouter {
      * Location of a message where it was created
      */
     public static final String INIT_LOCATION_PROPERTY = "initLocation";
+    /**
+     * Typed key of the initial location property
+     */
+    public static final MessagePropertyKey INIT_LOCATION_KEY =
+            MessagePropertyKey.register(INIT_LOCATION_PROPERTY,
+                    MessagePropertyKey.Type.OBJECT);
     /**
      * Original location where this message was created. Only used for reporting
      * purpose.
@@ -86,7 +93,7 @@ public class LucidRouter extends ActiveRouter {
             Coord currentLocation = getLocation();
 
             for (Message m : msgCollection) {
-                if (othRouter.hasMessage(m.getId())) {
+                if (othRouter.hasMessage(m)) {
                     continue; // skip messages that the other one has
                 }
 
@@ -95,7 +102,8 @@ public class LucidRouter extends ActiveRouter {
                  * as well as any other node receiving it. In the latter case,
                  * location of message reception is stored.
                  */
-                double distance = currentLocation.distance((Coord) m.getProperty(INIT_LOCATION_PROPERTY));
+                double distance = currentLocation.distance(
+                        (Coord) m.getObject(INIT_LOCATION_KEY));
 
                 if (m.getFrom().equals(getHost())) {
                     // This node is the source of the message and
@@ -117,7 +125,7 @@ public class LucidRouter extends ActiveRouter {
     @Override
     public Message messageTransferred(String id, DTNHost from) {
         Message msg = super.messageTransferred(id, from);
-        msg.updateProperty(INIT_LOCATION_PROPERTY, getLocation());
+        msg.setObject(INIT_LOCATION_KEY, getLocation());
 
         return msg;
     }
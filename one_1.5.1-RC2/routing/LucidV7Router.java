@@ -58,11 +58,12 @@ public class LucidV7Router extends LucidRouter {
             Coord currentLocation = getLocation();
 
             for (Message m : msgCollection) {
-                if (othRouter.hasMessage(m.getId())) {
+                if (othRouter.hasMessage(m)) {
                     continue; // skip messages that the other one has
                 }
 
-                double distance = currentLocation.distance((Coord) m.getProperty(INIT_LOCATION_PROPERTY));
+                double distance = currentLocation.distance(
+                        (Coord) m.getObject(INIT_LOCATION_KEY));
                 boolean shouldReplicate = (rng.nextDouble()
                         < getReplicationProbability(distance))
                         && (m.getHopCount() <= maxHopCount);
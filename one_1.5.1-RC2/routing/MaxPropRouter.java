@@ -55,12 +55,11 @@ public class MaxPropRouter extends ActiveRouter {
 	private MaxPropDijkstra dijkstra;	
 	/** IDs of the messages that are known to have reached the final dst */
 	private Set<String> ackedMessageIds;
-	/** mapping of the current costs for all messages. This should be set to
-	 * null always when the costs should be updated (a host is met or a new
-	 * message is received) */
-	private Map<Integer, Double> costsForMessages;
-	/** From host of the last cost calculation */
-	private DTNHost lastCostFrom;
+	/** mappings of the current costs for all messages by the hosts where 
+	 * the paths start from. This should be set to null always when the 
+	 * costs should be updated (a host is met or a new message is 
+	 * received) */
+	private Map<DTNHost, Map<Integer, Double>> costsForMessages;
 	
 	/** Map of which messages have been sent to which hosts from this host */
 	private Map<DTNHost, Set<String>> sentMessages;
@@ -270,19 +269,23 @@ public class MaxPropRouter extends ActiveRouter {
     @Override
 	protected Message getNextMessageToRemove(boolean excludeMsgBeingSent) {
 		Collection<Message> messages = this.getMessageCollection();
-		List<Message> validMessages = new ArrayList<Message>();
+		MaxPropComparator comparator = 
+			new MaxPropComparator(this.calcThreshold());
+		Message last = null;
 
+		/* the costs change over time, so instead of keeping the messages
+		   in order, find the message that would be last in the order (the 
+		   last one of equal messages, like after a stable sort) */
 		for (Message m : messages) {	
 			if (excludeMsgBeingSent && isSending(m.getId())) {
 				continue; // skip the message(s) that router is sending
 			}
-			validMessages.add(m);
+			if (last == null || comparator.compare(m, last) >= 0) {
+				last = m;
+			}
 		}
 		
-		Collections.sort(validMessages, 
-				new MaxPropComparator(this.calcThreshold())); 
-		
-		return validMessages.get(validMessages.size()-1); // return last message
+		return last;
 	}
 	
 	@Override
@@ -291,13 +294,18 @@ public class MaxPropRouter extends ActiveRouter {
 		if (!canStartTransfer() ||isTransferring()) {
 			return; // nothing to transfer or is currently transferring 
 		}
+		if (isIdle()) {
+			return; // nothing has changed since the last failed try
+		}
 		
 		// try messages that could be delivered to final recipient
 		if (exchangeDeliverableMessages() != null) {
 			return;
 		}
 		
-		tryOtherMessages();	
+		if (tryOtherMessages() == null) {
+			markIdle();
+		}
 	}
 	
 	/**
@@ -312,8 +320,13 @@ public class MaxPropRouter extends ActiveRouter {
 	 */
 	public double getCost(DTNHost from, DTNHost to) {
 		/* check if the cached values are OK */
-		if (this.costsForMessages == null || lastCostFrom != from) {
-			/* cached costs are invalid -> calculate new costs */
+		if (this.costsForMessages == null) {
+			this.costsForMessages = new HashMap<DTNHost, Map<Integer,Double>>();
+		}
+		Map<Integer, Double> costs = this.costsForMessages.get(from);
+		
+		if (costs == null) {
+			/* no valid costs from the host -> calculate new costs */
 			this.allProbs.put(getHost().getAddress(), this.probs);
 			int fromIndex = from.getAddress();
 			
@@ -324,12 +337,13 @@ public class MaxPropRouter extends ActiveRouter {
 				toSet.add(m.getTo().getAddress());
 			}
 						
-			this.costsForMessages = dijkstra.getCosts(fromIndex, toSet);
-			this.lastCostFrom = from; // store source host for caching checks
+			costs = dijkstra.getCosts(fromIndex, toSet);
+			this.costsForMessages.put(from, costs);
 		}
 		
-		if (costsForMessages.containsKey(to.getAddress())) {
-			return costsForMessages.get(to.getAddress());
+		Double cost = costs.get(to.getAddress());
+		if (cost != null) {
+			return cost;
 		}
 		else {
 			/* there's no known path to the given host */
@@ -346,8 +360,6 @@ public class MaxPropRouter extends ActiveRouter {
 		List<Tuple<Message, Connection>> messages = 
 			new ArrayList<Tuple<Message, Connection>>(); 
 	
-		Collection<Message> msgCollection = getMessageCollection();
-		
 		/* for all connected hosts that are not transferring at the moment,
 		 * collect all the messages that could be sent */
 		for (Connection con : getConnections()) {
@@ -359,11 +371,9 @@ public class MaxPropRouter extends ActiveRouter {
 				continue; // skip hosts that are transferring
 			}
 			
-			for (Message m : msgCollection) {
-				/* skip messages that the other host has or that have
-				 * passed the other host */
-				if (othRouter.hasMessage(m.getId()) ||
-						m.getHops().contains(other)) {
+			for (Message m : getMessagesMissingFrom(othRouter)) {
+				/* skip messages that have passed the other host */
+				if (m.getHops().contains(other)) {
 					continue; 
 				}
 				/* skip message if this host has already sent it to the other
@@ -53,12 +53,11 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	private MaxPropDijkstra dijkstra;	
 	/** IDs of the messages that are known to have reached the final dst */
 	private Set<String> ackedMessageIds;
-	/** mapping of the current costs for all messages. This should be set to
-	 * null always when the costs should be updated (a host is met or a new
-	 * message is received) */
-	private Map<Integer, Double> costsForMessages;
-	/** From host of the last cost calculation */
-	private DTNHost lastCostFrom;
+	/** mappings of the current costs for all messages by the hosts where 
+	 * the paths start from. This should be set to null always when the 
+	 * costs should be updated (a host is met or a new message is 
+	 * received) */
+	private Map<DTNHost, Map<Integer, Double>> costsForMessages;
 		
 	/** Over how many samples the "average number of bytes transferred per
 	 * transfer opportunity" is taken */
@@ -440,8 +439,13 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	 */
 	public double getCost(DTNHost from, DTNHost to) {
 		/* check if the cached values are OK */
-		if (this.costsForMessages == null || lastCostFrom != from) {
-			/* cached costs are invalid -> calculate new costs */
+		if (this.costsForMessages == null) {
+			this.costsForMessages = new HashMap<DTNHost, Map<Integer,Double>>();
+		}
+		Map<Integer, Double> costs = this.costsForMessages.get(from);
+		
+		if (costs == null) {
+			/* no valid costs from the host -> calculate new costs */
 			this.allProbs.put(getHost().getAddress(), this.probs);
 			int fromIndex = from.getAddress();
 			
@@ -452,12 +456,13 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 				toSet.add(m.getTo().getAddress());
 			}
 						
-			this.costsForMessages = dijkstra.getCosts(fromIndex, toSet);
-			this.lastCostFrom = from; // store source host for caching checks
+			costs = dijkstra.getCosts(fromIndex, toSet);
+			this.costsForMessages.put(from, costs);
 		}
 		
-		if (costsForMessages.containsKey(to.getAddress())) {
-			return costsForMessages.get(to.getAddress());
+		Double cost = costs.get(to.getAddress());
+		if (cost != null) {
+			return cost;
 		}
 		else {
 			/* there's no known path to the given host */
@@ -474,8 +479,6 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 		List<Tuple<Message, Connection>> messages = 
 			new ArrayList<Tuple<Message, Connection>>(); 
 	
-		Collection<Message> msgCollection = getMessageCollection();
-		
 		/* for all connected hosts that are not transferring at the moment,
 		 * collect all the messages that could be sent */
 		for (Connection con : getConnections()) {
@@ -486,11 +489,9 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 				continue; // skip hosts that are transferring
 			}
 			
-			for (Message m : msgCollection) {
-				/* skip messages that the other host has or that have
-				 * passed the other host */
-				if (othRouter.hasMessage(m.getId()) ||
-						m.getHops().contains(other)) {
+			for (Message m : getMessagesMissingFrom(othRouter)) {
+				/* skip messages that have passed the other host */
+				if (m.getHops().contains(other)) {
 					continue; 
 				}
 				messages.add(new Tuple<Message, Connection>(m,con));
@@ -4,17 +4,20 @@
  */
 package routing;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Random;
 
+import routing.util.MessageDropIndex;
+import routing.util.MessageExpiryIndex;
 import routing.util.RoutingInfo;
+import routing.util.SendQueueOrdering;
 
-import util.Tuple;
+import util.LongHashMap;
 
 import core.Application;
 import core.Connection;
@@ -46,6 +49,8 @@ public abstract class MessageRouter {
 	 * <UL>
 	 * <LI/> 1 : random (message order is randomized every time; default option)
 	 * <LI/> 2 : FIFO (most recently received messages are sent last)
+	 * <LI/> 3 : size (smallest messages are sent first)
+	 * <LI/> 4 : TTL (messages that expire first are sent first)
 	 * </UL>
 	 */ 
 	public static final String SEND_QUEUE_MODE_S = "sendQueue";
@@ -54,6 +59,10 @@ public abstract class MessageRouter {
 	public static final int Q_MODE_RANDOM = 1;
 	/** Setting value for FIFO queue mode */
 	public static final int Q_MODE_FIFO = 2;
+	/** Setting value for size (smallest first) queue mode */
+	public static final int Q_MODE_SIZE = 3;
+	/** Setting value for TTL (shortest TTL first) queue mode */
+	public static final int Q_MODE_TTL = 4;
 	
 	/* Return values when asking to start a transmission:
 	 * RCV_OK (0) means that the host accepts the message and transfer started, 
@@ -81,22 +90,40 @@ public abstract class MessageRouter {
 	public static final int DENIED_UNSPECIFIED = -99;
 	
 	private List<MessageListener> mListeners;
-	/** The messages being transferred with msgID_hostName keys */
-	private HashMap<String, Message> incomingMessages;
+	/** The messages being transferred with (interned msgID, host address)
+	 * keys (see {@link #getIncomingKey(int, DTNHost)}) */
+	private LongHashMap<Message> incomingMessages;
 	/** The messages this router is carrying */
 	private HashMap<String, Message> messages; 
-	/** The messages this router has received as the final recipient */
-	private HashMap<String, Message> deliveredMessages;
+	/** Summary vector of the carried messages: the messages by their 
+	 * interned IDs (sized by the buffer, not by the number of IDs) */
+	private LongHashMap<Message> summaryVector;
+	/** The carried messages by their final recipients */
+	private HashMap<DTNHost, List<Message>> messagesByDestination;
+	/** The messages this router has received as the final recipient (by
+	 * their interned IDs) */
+	private LongHashMap<Message> deliveredMessages;
 	/** The messages that Applications on this router have blacklisted */
 	private HashMap<String, Object> blacklistedMessages;
 	/** Host where this router belongs to */
 	private DTNHost host;
 	/** size of the buffer */
 	private int bufferSize;
+	/** total size of the messages in the buffer (bytes) */
+	private long occupiedBufferSize;
+	/** the messages in the buffer in the order they should be dropped */
+	private MessageDropIndex dropIndex;
+	/** the messages in the buffer in the order of their expiry times (may
+	 * also contain messages that have been removed from the buffer) */
+	private MessageExpiryIndex expiryIndex;
+	/** version of the router's state (see {@link #getStateVersion()}) */
+	private long stateVersion;
 	/** TTL for all messages */
 	protected int msgTtl;
 	/** Queue mode for sending messages */
 	private int sendQueueMode;
+	/** Ordering of the messages by the queue mode */
+	private SendQueueOrdering queueOrdering;
 
 	/** applications attached to the host */
 	private HashMap<String, Collection<Application>> applications = null;
@@ -120,7 +147,7 @@ public abstract class MessageRouter {
 		}
 		if (s.contains(SEND_QUEUE_MODE_S)) {
 			this.sendQueueMode = s.getInt(SEND_QUEUE_MODE_S);
-			if (sendQueueMode < 1 || sendQueueMode > 2) {
+			if (sendQueueMode < 1 || sendQueueMode > 4) {
 				throw new SettingsError("Invalid value for " + 
 						s.getFullPropertyName(SEND_QUEUE_MODE_S));
 			}
@@ -128,7 +155,7 @@ public abstract class MessageRouter {
 		else {
 			sendQueueMode = Q_MODE_RANDOM;
 		}
-		
+		this.queueOrdering = SendQueueOrdering.createOrdering(sendQueueMode);
 	}
 	
 	/**
@@ -139,9 +166,15 @@ public abstract class MessageRouter {
 	 * @param mListeners The message listeners
 	 */
 	public void init(DTNHost host, List<MessageListener> mListeners) {
-		this.incomingMessages = new HashMap<String, Message>();
+		this.incomingMessages = new LongHashMap<Message>();
 		this.messages = new HashMap<String, Message>();
-		this.deliveredMessages = new HashMap<String, Message>();
+		this.summaryVector = new LongHashMap<Message>();
+		this.messagesByDestination = new HashMap<DTNHost, List<Message>>();
+		this.occupiedBufferSize = 0;
+		this.dropIndex = new MessageDropIndex(getDropOrder());
+		this.expiryIndex = new MessageExpiryIndex();
+		this.stateVersion = 0;
+		this.deliveredMessages = new LongHashMap<Message>();
 		this.blacklistedMessages = new HashMap<String, Object>();
 		this.mListeners = mListeners;
 		this.host = host;
@@ -155,6 +188,7 @@ public abstract class MessageRouter {
 		this.bufferSize = r.bufferSize;
 		this.msgTtl = r.msgTtl;
 		this.sendQueueMode = r.sendQueueMode;
+		this.queueOrdering = SendQueueOrdering.createOrdering(sendQueueMode);
 
 		this.applications = new HashMap<String, Collection<Application>>();
 		for (Collection<Application> apps : r.applications.values()) {
@@ -176,6 +210,54 @@ public abstract class MessageRouter {
 			}
 		}
 	}
+
+	/**
+	 * Returns the earliest simulation time when this router needs an
+	 * {@link #update()} call to do something even if its host does not have
+	 * any connections and does not receive or create any messages before
+	 * that. The simulation kernel may skip update calls of idle routers
+	 * until this time. The default implementation returns the current time
+	 * if any applications are attached to the router (since their update
+	 * behavior is not known) and Double.MAX_VALUE otherwise; routers whose
+	 * update behavior depends on the time or the host's location alone
+	 * should override this method.
+	 * @return The time of the next (possible) event of the router
+	 */
+	public double getNextEventTime() {
+		if (hasApplications()) {
+			return SimClock.getTime();
+		}
+		return Double.MAX_VALUE;
+	}
+	
+	/**
+	 * Returns true if any applications are attached to this router
+	 * @return true if any applications are attached to this router
+	 */
+	protected boolean hasApplications() {
+		return !this.applications.isEmpty();
+	}
+	
+	/**
+	 * Returns the version of this router's state. The version is increased
+	 * every time the message buffer or the incoming messages buffer changes
+	 * (and by subclasses on other changes that may affect the outcome of 
+	 * message transfers, see {@link #stateChanged()}). If the version hasn't 
+	 * changed, the router accepts and offers messages like it did before.
+	 * @return The state version
+	 */
+	public long getStateVersion() {
+		return this.stateVersion;
+	}
+	
+	/**
+	 * Increases the state version of this router. Should be called on every
+	 * change that may affect the outcome of message transfer attempts 
+	 * from or to this router.
+	 */
+	protected void stateChanged() {
+		this.stateVersion++;
+	}
 	
 	/**
 	 * Informs the router about change in connections state.
@@ -201,6 +283,36 @@ public abstract class MessageRouter {
 		return this.messages.containsKey(id);
 	}
 	
+	/**
+	 * Checks if this router has a message with the same id as the given 
+	 * message buffered. Faster than {@link #hasMessage(String)} since the
+	 * message's interned ID is used for the check.
+	 * @param m The message
+	 * @return True if the router has message with the same id, false if not
+	 */
+	public boolean hasMessage(Message m) {
+		return this.summaryVector.containsKey(m.getInternedId());
+	}
+	
+	/**
+	 * Returns the messages this router has but the other router doesn't
+	 * have. Every message is checked from the other router's summary vector
+	 * using the message's interned ID, so the cost depends only on the 
+	 * number of buffered messages.
+	 * @param other The other router
+	 * @return The messages the other router lacks, in the same order as 
+	 * they are in the {@link #getMessageCollection() message collection}
+	 */
+	public List<Message> getMessagesMissingFrom(MessageRouter other) {
+		List<Message> missingMessages = new ArrayList<Message>();
+		for (Message m : this.messages.values()) {
+			if (!other.summaryVector.containsKey(m.getInternedId())) {
+				missingMessages.add(m);
+			}
+		}
+		return missingMessages;
+	}
+	
 	/**
 	 * Returns true if a full message with same ID as the given message has been
 	 * received by this host as the <strong>final</strong> recipient 
@@ -210,7 +322,7 @@ public abstract class MessageRouter {
 	 * this host as the final recipient.
 	 */
 	protected boolean isDeliveredMessage(Message m) {
-		return (this.deliveredMessages.containsKey(m.getId()));
+		return (this.deliveredMessages.containsKey(m.getInternedId()));
 	}
 	
 	/** 
@@ -238,6 +350,75 @@ public abstract class MessageRouter {
 		return this.messages.values();
 	}
 	
+	/**
+	 * Returns true if this router is carrying any messages whose final 
+	 * recipient is the given host
+	 * @param destination The host
+	 * @return True if there are messages for the host, false if not
+	 */
+	public boolean hasMessagesFor(DTNHost destination) {
+		return this.messagesByDestination.containsKey(destination);
+	}
+	
+	/**
+	 * Returns the messages this router is carrying whose final recipient 
+	 * is the given host. The messages are in the order they were added to 
+	 * the buffer, which is not necessarily the order of the 
+	 * {@link #getMessageCollection() message collection}.
+	 * @param destination The host
+	 * @return An unmodifiable list of the messages for the host
+	 */
+	public List<Message> getMessagesFor(DTNHost destination) {
+		List<Message> list = this.messagesByDestination.get(destination);
+		if (list == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(list);
+	}
+	
+	/**
+	 * Returns the messages of this router in the order they should be 
+	 * dropped (see {@link #getDropOrder()}). The messages must not be 
+	 * added or removed while iterating.
+	 * @return The messages in the drop order
+	 */
+	protected Iterable<Message> getMessagesInDropOrder() {
+		return this.dropIndex;
+	}
+	
+	/**
+	 * Returns the next message in the buffer whose TTL has expired (i.e.,
+	 * its {@link Message#getTtl()} is zero or less) and removes it from 
+	 * the index of the expiry times. Messages are returned in the order 
+	 * of their expiry times and each message is returned only once, so 
+	 * the caller should remove the message from the buffer.
+	 * @return The next expired message or null if no message in the 
+	 * buffer has expired
+	 */
+	protected Message pollExpiredMessage() {
+		Message m;
+		while ((m = this.expiryIndex.peek()) != null && m.getTtl() <= 0) {
+			this.expiryIndex.poll();
+			if (this.messages.get(m.getId()) == m) {
+				return m;
+			}
+			/* else: the message was already removed from the buffer */
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the order in which the messages should be dropped from the 
+	 * buffer (the first message in the order is dropped first). The order 
+	 * of a message must not change while the message is in the buffer. 
+	 * Called once when the router is initialized. This implementation 
+	 * orders the messages by their receive time (oldest first).
+	 * @return Comparator for the drop order
+	 */
+	protected Comparator<Message> getDropOrder() {
+		return MessageDropIndex.RECEIVE_TIME_ORDER;
+	}
+	
 	/**
 	 * Returns the number of messages this router has
 	 * @return How many messages this router has
@@ -262,17 +443,22 @@ public abstract class MessageRouter {
 	 * size isn't defined)
 	 */
 	public int getFreeBufferSize() {
-		int occupancy = 0;
-		
 		if (this.getBufferSize() == Integer.MAX_VALUE) {
 			return Integer.MAX_VALUE;
 		}
 		
-		for (Message m : getMessageCollection()) {
-			occupancy += m.getSize();
-		}
-		
-		return this.getBufferSize() - occupancy;
+		return (int)(this.getBufferSize() - this.occupiedBufferSize);
+	}
+	
+	/**
+	 * Returns the total size of the messages in the buffer. The size is 
+	 * kept up to date when messages are added and removed, so calling this
+	 * method is cheap. May be larger than the buffer size if there are 
+	 * more messages in the buffer than should fit there.
+	 * @return The number of bytes the messages in the buffer take
+	 */
+	public long getOccupiedBufferSize() {
+		return this.occupiedBufferSize;
 	}
 	
 	/**
@@ -371,7 +557,7 @@ public abstract class MessageRouter {
 			// -> put to buffer
 			addToMessages(aMessage, false);
 		} else if (isFirstDelivery) {
-			this.deliveredMessages.put(id, aMessage);
+			this.deliveredMessages.put(aMessage.getInternedId(), aMessage);
 		} else if (outgoing == null) {
 			// Blacklist messages that an app wants to drop.
 			// Otherwise the peer will just try to send it back again.
@@ -393,7 +579,18 @@ public abstract class MessageRouter {
 	 * @param from Who the message was from (previous hop).
 	 */
 	protected void putToIncomingBuffer(Message m, DTNHost from) {
-		this.incomingMessages.put(m.getId() + "_" + from.toString(), m);
+		this.incomingMessages.put(getIncomingKey(m.getInternedId(), from), m);
+		stateChanged();
+	}
+	
+	/**
+	 * Returns the incoming buffer key of a message from a host
+	 * @param internedId Interned ID of the message
+	 * @param from The host the message is from
+	 * @return The key
+	 */
+	private static long getIncomingKey(int internedId, DTNHost from) {
+		return ((long)internedId << 32) | (from.getAddress() & 0xffffffffL);
 	}
 	
 	/**
@@ -404,7 +601,12 @@ public abstract class MessageRouter {
 	 * @return The found message or null if such message wasn't found
 	 */
 	protected Message removeFromIncomingBuffer(String id, DTNHost from) {
-		return this.incomingMessages.remove(id + "_" + from.toString());
+		int internedId = Message.getInternedId(id);
+		if (internedId < 0) {
+			return null; /* no such message at all */
+		}
+		stateChanged();
+		return this.incomingMessages.remove(getIncomingKey(internedId, from));
 	}
 	
 	/**
@@ -414,7 +616,15 @@ public abstract class MessageRouter {
 	 * @return True if such message is incoming right now
 	 */
 	protected boolean isIncomingMessage(String id) {
-		return this.incomingMessages.containsKey(id);
+		if (this.incomingMessages.isEmpty()) {
+			return false;
+		}
+		for (Message m : this.incomingMessages.values()) {
+			if (m.getId().equals(id)) {
+				return true;
+			}
+		}
+		return false;
 	}
 	
 	/**
@@ -425,7 +635,33 @@ public abstract class MessageRouter {
 	 * message, if false, nothing is informed.
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
-		this.messages.put(m.getId(), m);
+		Message old = this.messages.put(m.getId(), m);
+		this.summaryVector.put(m.getInternedId(), m);
+		stateChanged();
+		if (old != null) {
+			this.occupiedBufferSize -= old.getSize();
+			removeFromDestinationIndex(old);
+		}
+		this.occupiedBufferSize += m.getSize();
+		
+		List<Message> forDestination = this.messagesByDestination.get(m.getTo());
+		if (forDestination == null) {
+			forDestination = new ArrayList<Message>(2);
+			this.messagesByDestination.put(m.getTo(), forDestination);
+		}
+		forDestination.add(m);
+		this.dropIndex.add(m);
+		
+		if (this.expiryIndex.size() > 2 * this.messages.size() + 16) {
+			/* mostly removed messages in the index; rebuild it */
+			this.expiryIndex.clear();
+			for (Message buffered : this.messages.values()) {
+				this.expiryIndex.add(buffered);
+			}
+		}
+		else {
+			this.expiryIndex.add(m);
+		}
 		
 		if (newMessage) {
 			for (MessageListener ml : this.mListeners) {
@@ -441,9 +677,28 @@ public abstract class MessageRouter {
 	 */
 	protected Message removeFromMessages(String id) {
 		Message m = this.messages.remove(id);
+		if (m != null) {
+			this.summaryVector.remove(m.getInternedId());
+			stateChanged();
+			this.occupiedBufferSize -= m.getSize();
+			this.dropIndex.remove(id);
+			removeFromDestinationIndex(m);
+		}
 		return m;
 	}
 	
+	/**
+	 * Removes a message from the by-destination index of the messages
+	 * @param m The message to remove
+	 */
+	private void removeFromDestinationIndex(Message m) {
+		List<Message> forDestination = this.messagesByDestination.get(m.getTo());
+		forDestination.remove(m);
+		if (forDestination.isEmpty()) {
+			this.messagesByDestination.remove(m.getTo());
+		}
+	}
+	
 	/**
 	 * This method should be called (on the receiving host) when a message 
 	 * transfer was aborted.
@@ -501,47 +756,8 @@ public abstract class MessageRouter {
 	 * @param list The list to sort or shuffle
 	 * @return The sorted/shuffled list
 	 */
-	@SuppressWarnings(value = "unchecked") /* ugly way to make this generic */
-	protected List sortByQueueMode(List list) {
-		switch (sendQueueMode) {
-		case Q_MODE_RANDOM:
-			Collections.shuffle(list, new Random(SimClock.getIntTime()));
-			break;
-		case Q_MODE_FIFO:
-			Collections.sort(list, 
-					new Comparator() {
-				/** Compares two tuples by their messages' receiving time */
-				public int compare(Object o1, Object o2) {
-					double diff;
-					Message m1, m2;
-					
-					if (o1 instanceof Tuple) {
-						m1 = ((Tuple<Message, Connection>)o1).getKey();
-						m2 = ((Tuple<Message, Connection>)o2).getKey();
-					}
-					else if (o1 instanceof Message) {
-						m1 = (Message)o1;
-						m2 = (Message)o2;
-					}
-					else {
-						throw new SimError("Invalid type of objects in " + 
-								"the list");
-					}
-					
-					diff = m1.getReceiveTime() - m2.getReceiveTime();
-					if (diff == 0) {
-						return 0;
-					}
-					return (diff < 0 ? -1 : 1);
-				}
-			});
-			break;
-		/* add more queue modes here */
-		default:
-			throw new SimError("Unknown queue mode " + sendQueueMode);
-		}
-		
-		return list;
+	protected <T> List<T> sortByQueueMode(List<T> list) {
+		return this.queueOrdering.order(list);
 	}
 
 	/**
@@ -553,20 +769,7 @@ public abstract class MessageRouter {
 	 *          message should come first, or 0 if the ordering isn't defined
 	 */
 	protected int compareByQueueMode(Message m1, Message m2) {
-		switch (sendQueueMode) {
-		case Q_MODE_RANDOM:
-			/* return randomly (enough) but consistently -1, 0 or 1 */
-			return (m1.hashCode()/2 + m2.hashCode()/2) % 3 - 1; 
-		case Q_MODE_FIFO:
-			double diff = m1.getReceiveTime() - m2.getReceiveTime();
-			if (diff == 0) {
-				return 0;
-			}
-			return (diff < 0 ? -1 : 1);
-		/* add more queue modes here */
-		default:
-			throw new SimError("Unknown queue mode " + sendQueueMode);
-		}
+		return this.queueOrdering.compare(m1, m2);
 	}
 	
 	/**
@@ -14,9 +14,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import routing.util.PredictabilityTable;
 import util.Tuple;
 
 /**
@@ -65,11 +64,7 @@ public class ProphetPtuRouter extends ActiveRouter {
     /**
      * delivery predictabilities
      */
-    private Map<DTNHost, Double> preds;
-    /**
-     * last delivery predictability update (sim)time
-     */
-    private double lastAgeUpdate;
+    private PredictabilityTable preds;
     /**
      * identifier for the initial number of copies setting ({@value})
      */
@@ -138,10 +133,10 @@ public class ProphetPtuRouter extends ActiveRouter {
     }
 
     /**
-     * Initializes predictability hash
+     * Initializes predictability table
      */
     private void initPreds() {
-        this.preds = new HashMap<DTNHost, Double>();
+        this.preds = new PredictabilityTable(GAMMA, secondsInTimeUnit);
     }
 
     @Override
@@ -178,7 +173,7 @@ public class ProphetPtuRouter extends ActiveRouter {
     private void updateDeliveryPredFor(DTNHost host) {
         double oldValue = getPredFor(host);
         double newValue = oldValue + (1 - oldValue) * P_INIT;
-        preds.put(host, newValue);
+        preds.setPred(host, newValue, SimClock.getTime());
     }
 
     /**
@@ -189,12 +184,7 @@ public class ProphetPtuRouter extends ActiveRouter {
      * @return the current P value
      */
     public double getPredFor(DTNHost host) {
-        ageDeliveryPreds(); // make sure preds are updated before getting
-        if (preds.containsKey(host)) {
-            return preds.get(host);
-        } else {
-            return 0;
-        }
+        return preds.getPred(host, SimClock.getTime()); // aged if needed
     }
 
     /**
@@ -213,7 +203,7 @@ public class ProphetPtuRouter extends ActiveRouter {
                 + " with other routers of same type: " + otherRouter;
 
         double pForHost = getPredFor(host); // P(a,b)
-        Map<DTNHost, Double> othersPreds;
+        PredictabilityTable othersPreds;
 
         int address = host.getAddress();
         if (this.protocolMap[address].equals(SIGNATURE_PROPHET)) {
@@ -224,47 +214,30 @@ public class ProphetPtuRouter extends ActiveRouter {
             othersPreds = ((SnwPtuRouter) otherRouter).getDeliveryPreds();
         }
 
-        for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-            if (e.getKey() == getHost()) {
+        double now = SimClock.getTime();
+        for (int i = 0, n = othersPreds.size(); i < n; i++) {
+            DTNHost c = othersPreds.getHost(i);
+            if (c == getHost()) {
                 continue; // don't add yourself
             }
 
-            double pOld = getPredFor(e.getKey()); // P(a,c)_old
-            double pNew = pOld + (1 - pOld) * pForHost * e.getValue() * beta;
-            preds.put(e.getKey(), pNew);
+            double pOld = getPredFor(c); // P(a,c)_old
+            double pNew = pOld + (1 - pOld) * pForHost
+                    * othersPreds.getPred(i, now) * beta;
+            preds.setPred(c, pNew, now);
         }
     }
 
     /**
-     * Ages all entries in the delivery predictions.
-     * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of time
-     * units that have elapsed since the last time the metric was aged.
+     * Returns the table of this router's delivery predictions. The entries of
+     * the table are aged (<CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>,
+     * where k is number of time units that have elapsed since the last time
+     * the metric was aged) when they are read.
      *
+     * @return the table of this router's delivery predictions
      * @see #SECONDS_IN_UNIT_S
      */
-    private void ageDeliveryPreds() {
-        double timeDiff = (SimClock.getTime() - this.lastAgeUpdate)
-                / secondsInTimeUnit;
-
-        if (timeDiff == 0) {
-            return;
-        }
-
-        double mult = Math.pow(GAMMA, timeDiff);
-        for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-            e.setValue(e.getValue() * mult);
-        }
-
-        this.lastAgeUpdate = SimClock.getTime();
-    }
-
-    /**
-     * Returns a map of this router's delivery predictions
-     *
-     * @return a map of this router's delivery predictions
-     */
-    protected Map<DTNHost, Double> getDeliveryPreds() {
-        ageDeliveryPreds(); // make sure the aging is done
+    protected PredictabilityTable getDeliveryPreds() {
         return this.preds;
     }
 
@@ -378,7 +351,7 @@ public class ProphetPtuRouter extends ActiveRouter {
                 CompatibleProphetRouter pr = (CompatibleProphetRouter) othRouter;
                 // At first, go through the PROPHET msgs
                 for (Message m : msgCollection) {
-                    if (othRouter.hasMessage(m.getId())) {
+                    if (othRouter.hasMessage(m)) {
                         continue; // skip messages that the other one has
                     }
 
@@ -391,7 +364,7 @@ public class ProphetPtuRouter extends ActiveRouter {
                     }
                 }
                 for (Message m : msgCollection) {
-                    if (othRouter.hasMessage(m.getId())) {
+                    if (othRouter.hasMessage(m)) {
                         continue; // skip messages that the other one has
                     }
                     // If the message is a SnW msg, and this node has a single
@@ -409,7 +382,7 @@ public class ProphetPtuRouter extends ActiveRouter {
             //                // TODO: What if it is a SnW router?                
             //                SnWPTURouter sptur = (SnWPTURouter) othRouter;
             //                for (Message m : msgCollection) {
-            //                    if (othRouter.hasMessage(m.getId())) {
+            //                    if (othRouter.hasMessage(m)) {
             //                        continue; // skip messages that the other one has
             //                    }
             //                    
@@ -429,7 +402,7 @@ public class ProphetPtuRouter extends ActiveRouter {
             else if (this.protocolMap[address].equals(SIGNATURE_SNW)) {
                 // SnW msgs
                 for (Message m : msgCollection) {
-                    if (othRouter.hasMessage(m.getId())) {
+                    if (othRouter.hasMessage(m)) {
                         continue; // skip messages that the other one has
                     }
                     // If the message is a SnW msg, and this node has a single
@@ -444,7 +417,7 @@ public class ProphetPtuRouter extends ActiveRouter {
 
                 // PROPHET msgs
                 for (Message m : msgCollection) {
-                    if (othRouter.hasMessage(m.getId())) {
+                    if (othRouter.hasMessage(m)) {
                         continue; // skip messages that the other one has
                     }
 
@@ -457,7 +430,7 @@ public class ProphetPtuRouter extends ActiveRouter {
             } else if (this.protocolMap[address].equals(SIGNATURE_PROPHET_PTU)) {
                 ProphetPtuRouter ptur = (ProphetPtuRouter) othRouter;
                 for (Message m : msgCollection) {
-                    if (othRouter.hasMessage(m.getId())) {
+                    if (othRouter.hasMessage(m)) {
                         continue; // skip messages that the other one has
                     }
 
@@ -7,13 +7,14 @@ package routing;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
+import core.MessagePropertyKey;
 import core.Settings;
 import core.SimClock;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
+import movement.MovementModel;
 import util.Tuple;
 
 /**
@@ -62,6 +63,23 @@ public class SeerRouter extends ActiveRouter {
      * Random number generator for ICT reset
      */
     private Random rng = null;
+    /** Initial size of the candidate arrays */
+    private static final int INITIAL_CANDIDATES = 16;
+    /**
+     * Random number generator for the replication acceptance draws (seeded
+     * with the scenario's movement model seed mixed with the host's address
+     * so that the runs are reproducible but differ between the seeds)
+     */
+    private Random acceptRng = null;
+    /** The movement model random number generator seed of the scenario */
+    private long scenarioSeed;
+    /**
+     * Replication candidates of one connection and their hop counts and
+     * temperatures (the arrays are reused between the evaluations)
+     */
+    private Message[] candidates = new Message[INITIAL_CANDIDATES];
+    private int[] candidateHopCounts = new int[INITIAL_CANDIDATES];
+    private double[] candidateTemperatures = new double[INITIAL_CANDIDATES];
     /**
      * Lower temperature threshold to stop simulated annealing
      */
@@ -76,6 +94,12 @@ public class SeerRouter extends ActiveRouter {
      * Temperature property of a message
      */
     public static final String TEMPERATURE = "temperature";
+    /**
+     * Typed key of the temperature property
+     */
+    public static final MessagePropertyKey TEMPERATURE_KEY =
+            MessagePropertyKey.register(TEMPERATURE,
+                    MessagePropertyKey.Type.DOUBLE);
     private static final String BOLTZMANN_CONSTANT_S = "boltzmannConstant";
     private static final String COOLING_COEEFICIENT_S = "coolingCoefficient";
     private static final String INITIAL_TEMPERATURE_S = "initialTemeperature";
@@ -107,6 +131,11 @@ public class SeerRouter extends ActiveRouter {
             initialTemperature = seer.getDouble(INITIAL_TEMPERATURE_S);
         }
 
+        Settings mm = new Settings(MovementModel.MOVEMENT_MODEL_NS);
+        if (mm.contains(MovementModel.RNG_SEED)) {
+            scenarioSeed = mm.getInt(MovementModel.RNG_SEED);
+        }
+
         ictManager = new HashMap<Integer, Integer>();
     }
 
@@ -121,13 +150,14 @@ public class SeerRouter extends ActiveRouter {
         boltzmannConstant = r.boltzmannConstant;
         coolingCoefficient = r.coolingCoefficient;
         initialTemperature = r.initialTemperature;
+        scenarioSeed = r.scenarioSeed;
         ictManager = new HashMap<Integer, Integer>();
     }
 
     @Override
     public boolean createNewMessage(Message m) {
         boolean createStatus = super.createNewMessage(m);
-        m.addProperty(TEMPERATURE, initialTemperature);
+        m.setDouble(TEMPERATURE_KEY, initialTemperature);
 
         return createStatus;
     }
@@ -169,6 +199,15 @@ public class SeerRouter extends ActiveRouter {
         }
     }
 
+    /**
+     * Returns always the current time since the seen messages and ICT
+     * timers are reset on every update.
+     */
+    @Override
+    public double getNextEventTime() {
+        return SimClock.getTime();
+    }
+
     @Override
     public void update() {
         // Must be called before resetting ICT timers
@@ -199,7 +238,6 @@ public class SeerRouter extends ActiveRouter {
         List<Tuple<Message, Connection>> messages =
                 new ArrayList<Tuple<Message, Connection>>();
 
-        Collection<Message> msgCollection = getMessageCollection();
         int currentTime = SimClock.getIntTime();
 
         for (Connection con : getConnections()) {
@@ -210,12 +248,9 @@ public class SeerRouter extends ActiveRouter {
                 continue; // skip hosts that are transferring
             }
 
-            for (Message m : msgCollection) {
-                if (othRouter.hasMessage(m.getId())) {
-                    continue; // skip messages that the other one has
-                }
+            int nrofCandidates = 0;
+            for (Message m : getMessagesMissingFrom(othRouter)) {
 
-                int hopCount = m.getHopCount();
                 double ttlDelta = m.getInitialTtl() * 60
                         - 2 * (currentTime - m.getCreationTime());
 
@@ -230,30 +265,16 @@ public class SeerRouter extends ActiveRouter {
                     continue;
                 }
 
-                double temperature = (Double) m.getProperty(TEMPERATURE);
+                double temperature = m.getDouble(TEMPERATURE_KEY);
 
                 if (temperature < ZERO_TEMPERATURE) {
                     continue;
                 }
 
-                double cost1;
-                double cost2;
-
-                cost1 = ict * (1 + hopCount);
-                cost2 = othRouter.ict * (2 + hopCount);
-
-                double delta = cost2 - cost1;
-                double otherwise = Math.exp(-delta / (boltzmannConstant
-                        * temperature));
-
-                // Max double otherwise = Math.exp(delta / (temperature));
-                double prob = Math.random();
-
-                if (delta <= 0 || prob < otherwise) {
-                    // the other node has higher probability of delivery
-                    messages.add(new Tuple<Message, Connection>(m, con));
-                }
+                addCandidate(nrofCandidates++, m, temperature);
             }
+
+            acceptCandidates(nrofCandidates, othRouter.ict, con, messages);
         }
 
         if (messages.isEmpty()) {
@@ -263,6 +284,68 @@ public class SeerRouter extends ActiveRouter {
         return tryMessagesForConnected(messages);	// try to send messages
     }
 
+    /**
+     * Stores a replication candidate to the candidate arrays
+     *
+     * @param index Index of the candidate
+     * @param m The candidate message
+     * @param temperature Temperature of the message
+     */
+    private void addCandidate(int index, Message m, double temperature) {
+        if (index == candidates.length) {
+            int capacity = candidates.length * 2;
+            Message[] newCandidates = new Message[capacity];
+            int[] newHopCounts = new int[capacity];
+            double[] newTemperatures = new double[capacity];
+            System.arraycopy(candidates, 0, newCandidates, 0, index);
+            System.arraycopy(candidateHopCounts, 0, newHopCounts, 0, index);
+            System.arraycopy(candidateTemperatures, 0, newTemperatures, 0,
+                    index);
+            candidates = newCandidates;
+            candidateHopCounts = newHopCounts;
+            candidateTemperatures = newTemperatures;
+        }
+
+        candidates[index] = m;
+        candidateHopCounts[index] = m.getHopCount();
+        candidateTemperatures[index] = temperature;
+    }
+
+    /**
+     * Evaluates the simulated annealing acceptance for all the candidates of
+     * a connection in one pass. A candidate is accepted if replicating it to
+     * the other node lowers the cost or, otherwise, with probability
+     * exp(-delta / (k * temperature)).
+     *
+     * @param nrofCandidates Number of candidates in the candidate arrays
+     * @param otherIct ICT of the node on the other side of the connection
+     * @param con The connection
+     * @param accepted List where the accepted message-connection tuples are
+     * added to
+     */
+    private void acceptCandidates(int nrofCandidates, double otherIct,
+            Connection con, List<Tuple<Message, Connection>> accepted) {
+        if (acceptRng == null) {
+            acceptRng = new Random(MovementModel.getHostSeed(scenarioSeed,
+                    getHost().getAddress()));
+        }
+
+        for (int i = 0; i < nrofCandidates; i++) {
+            int hopCount = candidateHopCounts[i];
+            double cost1 = ict * (1 + hopCount);
+            double cost2 = otherIct * (2 + hopCount);
+            double delta = cost2 - cost1;
+
+            if (delta <= 0 || acceptRng.nextDouble() < Math.exp(-delta
+                    / (boltzmannConstant * candidateTemperatures[i]))) {
+                // the other node has higher probability of delivery
+                accepted.add(new Tuple<Message, Connection>(candidates[i],
+                        con));
+            }
+            candidates[i] = null; // don't keep the message referenced
+        }
+    }
+
     @Override
     public SeerRouter replicate() {
         return new SeerRouter(this);
@@ -355,14 +438,14 @@ public class SeerRouter extends ActiveRouter {
 
     private void decreaseTemperature() {
         for (Message m : getMessageCollection()) {
-            double temperature = (Double) m.getProperty(TEMPERATURE);
+            double temperature = m.getDouble(TEMPERATURE_KEY);
 
             if (temperature < ZERO_TEMPERATURE) {
                 continue;
             }
 
             temperature *= coolingCoefficient;
-            m.updateProperty(TEMPERATURE, temperature);
+            m.setDouble(TEMPERATURE_KEY, temperature);
         }
     }
 }
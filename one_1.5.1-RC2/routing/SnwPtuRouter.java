@@ -11,9 +11,8 @@ import core.Message;
 import core.Settings;
 import core.SimClock;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import routing.util.PredictabilityTable;
 
 /**
  * Implementation of Protocol Translation Unit (PTU) router that is compatible
@@ -62,11 +61,7 @@ public class SnwPtuRouter extends ActiveRouter {
     /**
      * delivery predictabilities
      */
-    private Map<DTNHost, Double> preds;
-    /**
-     * last delivery predictability update (sim)time
-     */
-    private double lastAgeUpdate;
+    private PredictabilityTable preds;
     /**
      * identifier for the initial number of copies setting ({@value})
      */
@@ -134,10 +129,10 @@ public class SnwPtuRouter extends ActiveRouter {
     }
 
     /**
-     * Initializes predictability hash
+     * Initializes predictability table
      */
     private void initPreds() {
-        this.preds = new HashMap<DTNHost, Double>();
+        this.preds = new PredictabilityTable(GAMMA, secondsInTimeUnit);
     }
 
     @Override
@@ -170,7 +165,7 @@ public class SnwPtuRouter extends ActiveRouter {
     private void updateDeliveryPredFor(DTNHost host) {
         double oldValue = getPredFor(host);
         double newValue = oldValue + (1 - oldValue) * P_INIT;
-        preds.put(host, newValue);
+        preds.setPred(host, newValue, SimClock.getTime());
     }
 
     /**
@@ -181,12 +176,7 @@ public class SnwPtuRouter extends ActiveRouter {
      * @return the current P value
      */
     public double getPredFor(DTNHost host) {
-        ageDeliveryPreds(); // make sure preds are updated before getting
-        if (preds.containsKey(host)) {
-            return preds.get(host);
-        } else {
-            return 0;
-        }
+        return preds.getPred(host, SimClock.getTime()); // aged if needed
     }
 
     /**
@@ -205,7 +195,7 @@ public class SnwPtuRouter extends ActiveRouter {
                 + " with other routers of same type: " + otherRouter;
 
         double pForHost = getPredFor(host); // P(a,b)
-        Map<DTNHost, Double> othersPreds;
+        PredictabilityTable othersPreds;
 
         int address = host.getAddress();
         if (this.protocolMap[address].equals(SIGNATURE_PROPHET)) {
@@ -216,47 +206,30 @@ public class SnwPtuRouter extends ActiveRouter {
             othersPreds = ((SnwPtuRouter) otherRouter).getDeliveryPreds();
         }
 
-        for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-            if (e.getKey() == getHost()) {
+        double now = SimClock.getTime();
+        for (int i = 0, n = othersPreds.size(); i < n; i++) {
+            DTNHost c = othersPreds.getHost(i);
+            if (c == getHost()) {
                 continue; // don't add yourself
             }
 
-            double pOld = getPredFor(e.getKey()); // P(a,c)_old
-            double pNew = pOld + (1 - pOld) * pForHost * e.getValue() * beta;
-            preds.put(e.getKey(), pNew);
+            double pOld = getPredFor(c); // P(a,c)_old
+            double pNew = pOld + (1 - pOld) * pForHost
+                    * othersPreds.getPred(i, now) * beta;
+            preds.setPred(c, pNew, now);
         }
     }
 
     /**
-     * Ages all entries in the delivery predictions.
-     * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of time
-     * units that have elapsed since the last time the metric was aged.
+     * Returns the table of this router's delivery predictions. The entries of
+     * the table are aged (<CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>,
+     * where k is number of time units that have elapsed since the last time
+     * the metric was aged) when they are read.
      *
+     * @return the table of this router's delivery predictions
      * @see #SECONDS_IN_UNIT_S
      */
-    private void ageDeliveryPreds() {
-        double timeDiff = (SimClock.getTime() - this.lastAgeUpdate)
-                / secondsInTimeUnit;
-
-        if (timeDiff == 0) {
-            return;
-        }
-
-        double mult = Math.pow(GAMMA, timeDiff);
-        for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-            e.setValue(e.getValue() * mult);
-        }
-
-        this.lastAgeUpdate = SimClock.getTime();
-    }
-
-    /**
-     * Returns a map of this router's delivery predictions
-     *
-     * @return a map of this router's delivery predictions
-     */
-    protected Map<DTNHost, Double> getDeliveryPreds() {
-        ageDeliveryPreds(); // make sure the aging is done
+    protected PredictabilityTable getDeliveryPreds() {
         return this.preds;
     }
 
@@ -10,6 +10,7 @@ import java.util.List;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
+import core.MessagePropertyKey;
 import core.Settings;
 
 /**
@@ -28,6 +29,10 @@ public class SprayAndWaitRouter extends ActiveRouter {
 	/** Message property key */
 	public static final String MSG_COUNT_PROPERTY = SPRAYANDWAIT_NS + "." +
 		"copies";
+	/** Typed key of the message property */
+	public static final MessagePropertyKey MSG_COUNT_KEY =
+		MessagePropertyKey.register(MSG_COUNT_PROPERTY,
+				MessagePropertyKey.Type.INT);
 	
 	protected int initialNrofCopies;
 	protected boolean isBinary;
@@ -58,9 +63,8 @@ public class SprayAndWaitRouter extends ActiveRouter {
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
 		Message msg = super.messageTransferred(id, from);
-		Integer nrofCopies = (Integer)msg.getProperty(MSG_COUNT_PROPERTY);
-		
-		assert nrofCopies != null : "Not a SnW message: " + msg;
+		assert msg.hasProperty(MSG_COUNT_KEY) : "Not a SnW message: " + msg;
+		int nrofCopies = msg.getInt(MSG_COUNT_KEY);
 		
 		if (isBinary) {
 			/* in binary S'n'W the receiving node gets ceil(n/2) copies */
@@ -71,7 +75,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 			nrofCopies = 1;
 		}
 		
-		msg.updateProperty(MSG_COUNT_PROPERTY, nrofCopies);
+		msg.setInt(MSG_COUNT_KEY, nrofCopies);
 		return msg;
 	}
 	
@@ -80,7 +84,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		makeRoomForNewMessage(msg.getSize());
 
 		msg.setTtl(this.msgTtl);
-		msg.addProperty(MSG_COUNT_PROPERTY, new Integer(initialNrofCopies));
+		msg.setInt(MSG_COUNT_KEY, initialNrofCopies);
 		addToMessages(msg, true);
 		return true;
 	}
@@ -91,6 +95,9 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		if (!canStartTransfer() || isTransferring()) {
 			return; // nothing to transfer or is currently transferring 
 		}
+		if (isIdle()) {
+			return; // nothing has changed since the last failed try
+		}
 
 		/* try messages that could be delivered to final recipient */
 		if (exchangeDeliverableMessages() != null) {
@@ -103,8 +110,12 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		
 		if (copiesLeft.size() > 0) {
 			/* try to send those messages */
-			this.tryMessagesToConnections(copiesLeft, getConnections());
+			if (this.tryMessagesToConnections(copiesLeft, 
+					getConnections()) != null) {
+				return;
+			}
 		}
+		markIdle();
 	}
 	
 	/**
@@ -116,10 +127,9 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		List<Message> list = new ArrayList<Message>();
 
 		for (Message m : getMessageCollection()) {
-			Integer nrofCopies = (Integer)m.getProperty(MSG_COUNT_PROPERTY);
-			assert nrofCopies != null : "SnW message " + m + " didn't have " + 
-				"nrof copies property!";
-			if (nrofCopies > 1) {
+			assert m.hasProperty(MSG_COUNT_KEY) : "SnW message " + m + 
+				" didn't have nrof copies property!";
+			if (m.getInt(MSG_COUNT_KEY) > 1) {
 				list.add(m);
 			}
 		}
@@ -136,7 +146,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 	 */
 	@Override
 	protected void transferDone(Connection con) {
-		Integer nrofCopies;
+		int nrofCopies;
 		String msgId = con.getMessage().getId();
 		/* get this router's copy of the message */
 		Message msg = getMessage(msgId);
@@ -146,14 +156,14 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		}
 		
 		/* reduce the amount of copies left */
-		nrofCopies = (Integer)msg.getProperty(MSG_COUNT_PROPERTY);
+		nrofCopies = msg.getInt(MSG_COUNT_KEY);
 		if (isBinary) { 
 			nrofCopies /= 2;
 		}
 		else {
 			nrofCopies--;
 		}
-		msg.updateProperty(MSG_COUNT_PROPERTY, nrofCopies);
+		msg.setInt(MSG_COUNT_KEY, nrofCopies);
 	}
 	
 	@Override
@@ -121,7 +121,7 @@ public class SprayAndWaitUtilityRouter extends SprayAndWaitRouter {
             }
 
             for (Message m : msgCollection) {
-                if (othRouter.hasMessage(m.getId())) {
+                if (othRouter.hasMessage(m)) {
                     continue; // skip messages that the other one has
                 }
 
@@ -1,39 +1,52 @@
-/* 
+/*
  * Copyright 2010 Aalto University, ComNet
- * Released under GPLv3. See LICENSE.txt for details. 
+ * Released under GPLv3. See LICENSE.txt for details.
  */
 package routing.maxprop;
 
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
 
 /**
  * Dijkstra's shortest path implementation for MaxProp Router module.
+ * The search state is kept in primitive arrays indexed by the node
+ * addresses and the unvisited nodes are kept in an indexed binary heap that
+ * supports decreasing a node's distance in O(log n) time. The arrays are
+ * reused between the searches; values left from earlier searches are
+ * recognized by search stamps so nothing needs to be cleared.
  */
 public class MaxPropDijkstra {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distancesFromStart;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<Integer> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<Integer> unvisited;
-	/** Map of previous nodes on the shortest path(s) -- only used for
-	 * debugging purposes */
-	private Map<Integer, Integer> prevNodes;
+	private static final double INFINITY = Double.MAX_VALUE;
+	/** Initial size of the node arrays */
+	private static final int INIT_SIZE = 16;
+
+	/** Node distances from the source node (valid only if the node's
+	 * distance stamp is the current search's stamp) */
+	private double[] distancesFromStart;
+	/** Search stamps of the distance values */
+	private int[] distanceStamps;
+	/** Search stamps of the visited nodes (where the shortest path is
+	 * known) */
+	private int[] visitedStamps;
+	/** Search stamps of the target nodes */
+	private int[] targetStamps;
+	/** Stamp of the current search */
+	private int searchStamp;
+
+	/** Binary heap of unvisited nodes discovered so far */
+	private int[] unvisited;
+	/** Number of nodes in the heap */
+	private int nrofUnvisited;
+	/** Positions of the nodes in the heap (valid only for unvisited nodes
+	 * whose distance is known) */
+	private int[] heapPositions;
+
 	/** Mapping of to other nodes' (whom this node has met) probability sets */
 	private Map<Integer, MeetingProbabilitySet> probs;
-	
+
 	/**
 	 * Constructor.
 	 * @param probs A reference to the mapping of the known hosts meeting
@@ -41,28 +54,38 @@ public class MaxPropDijkstra {
 	 */
 	public MaxPropDijkstra(Map<Integer, MeetingProbabilitySet> probs) {
 		this.probs = probs;
+		this.distancesFromStart = new double[INIT_SIZE];
+		this.distanceStamps = new int[INIT_SIZE];
+		this.visitedStamps = new int[INIT_SIZE];
+		this.targetStamps = new int[INIT_SIZE];
+		this.heapPositions = new int[INIT_SIZE];
+		this.unvisited = new int[INIT_SIZE];
+		this.searchStamp = 0;
 	}
 
 	/**
 	 * Initializes a new search with the first hop router node
 	 * @param firstHop The first hop router node
 	 */
-	private void initWith(Integer firstHop) {
-		this.unvisited = new PriorityQueue<Integer>(PQ_INIT_SIZE, 
-				new DistanceComparator());
-		this.visited = new HashSet<Integer>();
-		this.prevNodes = new HashMap<Integer, Integer>();
-		this.distancesFromStart = new DistanceMap();
-		
+	private void initWith(int firstHop) {
+		if (this.searchStamp == Integer.MAX_VALUE) {
+			/* stamps wrapping around; forget the old stamps */
+			Arrays.fill(this.distanceStamps, 0);
+			Arrays.fill(this.visitedStamps, 0);
+			Arrays.fill(this.targetStamps, 0);
+			this.searchStamp = 0;
+		}
+		this.searchStamp++;
+		this.nrofUnvisited = 0;
+
 		// set distance to source 0 and initialize unvisited queue
-		this.distancesFromStart.put(firstHop, 0);
-		this.unvisited.add(firstHop);
+		setDistance(firstHop, 0);
 	}
-	
+
 	/**
-	 * Calculates total costs to the given set of target nodes. The cost to 
+	 * Calculates total costs to the given set of target nodes. The cost to
 	 * a node is the sum of complements of probabilities that all the links
-	 * come up as the next contact of the nodes. 
+	 * come up as the next contact of the nodes.
 	 * @param from The index (address) of the start node
 	 * @param to The address set of destination nodes
 	 * @return A map of (destination node, cost) tuples
@@ -70,155 +93,198 @@ public class MaxPropDijkstra {
 	public Map<Integer, Double> getCosts(Integer from, Set<Integer> to) {
 		Map<Integer, Double> distMap = new HashMap<Integer, Double>();
 		int nrofNodesToFind = to.size();
-		
+
 		initWith(from);
-		Integer node = null;
-		
+		for (Integer target : to) {
+			ensureCapacity(target);
+			this.targetStamps[target] = this.searchStamp;
+		}
+
 		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (to.contains(node)) {
+		while (this.nrofUnvisited > 0) {
+			int node = poll();
+			if (this.targetStamps[node] == this.searchStamp) {
 				// found one of the requested nodes
-				distMap.put(node, distancesFromStart.get(node));
+				distMap.put(node, this.distancesFromStart[node]);
 				nrofNodesToFind--;
 				if (nrofNodesToFind == 0) {
 					break; // all requested nodes found
 				}
-			} 
-			
-			visited.add(node); // mark the node as visited
+			}
+
+			this.visitedStamps[node] = this.searchStamp; // mark as visited
 			relax(node);       // add/update neighbor nodes' distances
 		}
-			
+
 		return distMap;
 	}
-	
+
 	/**
 	 * Relaxes the neighbors of a node (updates the shortest distances).
+	 * The "distance" between two nodes is the complement of the probability
+	 * that the next node "node" meets is the neighbor.
 	 * @param node The node whose neighbors are relaxed
 	 */
-	private void relax(Integer node) {
-		double nodeDist = distancesFromStart.get(node);
-		Collection<Integer> neighbors;
-		
-		if (!this.probs.containsKey(node)) {
+	private void relax(int node) {
+		double nodeDist = this.distancesFromStart[node];
+		MeetingProbabilitySet nodeProbs = this.probs.get(node);
+
+		if (nodeProbs == null) {
 			return; // node's neighbors are not known
 		}
-		
-		neighbors =	this.probs.get(node).getAllProbs().keySet();
-		
-		for (Integer n : neighbors) {
-			if (visited.contains(n)) {
+
+		for (int i=0, nrofNeighbors=nodeProbs.size(); i<nrofNeighbors; i++) {
+			int n = nodeProbs.getNodeAt(i);
+			ensureCapacity(n);
+			if (this.visitedStamps[n] == this.searchStamp) {
 				continue; // skip visited nodes
 			}
-						
+
 			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
-			
-			if (distancesFromStart.get(n) > nDist) { 
+			double nDist = nodeDist + ( 1 - nodeProbs.getProbAt(i) );
+
+			if (getDistance(n) > nDist) {
 				// stored distance > found dist -> update
-				prevNodes.put(n, node); // for debugging
 				setDistance(n, nDist);
 			}
 		}
 	}
-	
-	/**
-	 * Sets the distance from source node to a node
-	 * @param n The node whose distance is set
-	 * @param distance The distance of the node from the source node
-	 */
-	private void setDistance(Integer n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distancesFromStart.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
-	}
-	
+
 	/**
-	 * Returns the "distance" between two nodes, i.e., the complement of the 
-	 * probability that the next node "from" meets is "to". Works only if there
-	 * exist a probability value for "from" meeting "to". 
-	 * @param from The first node
-	 * @param to The second node
-	 * @return The distance between the two nodes
+	 * Returns the distance of a node from the source node
+	 * @param n The node
+	 * @return The distance or {@link #INFINITY} if the node has not been
+	 * reached yet
 	 */
-	private double getDistance(Integer from, Integer to) {
-		assert probs.containsKey(from) : "Node " + from + " has not met " + to +
-			" (it has met nodes " + probs.keySet() + ")";
-		return ( 1 - probs.get(from).getProbFor(to) );
+	private double getDistance(int n) {
+		if (this.distanceStamps[n] != this.searchStamp) {
+			return INFINITY;
+		}
+		return this.distancesFromStart[n];
 	}
-	
+
 	/**
-	 * Comparator that compares two nodes by their distance from
-	 * the source node.
+	 * Sets the distance from source node to a node and moves the node to
+	 * its new place in the unvisited nodes' heap (or adds it to the heap).
+	 * The distance must not be larger than the node's old distance.
+	 * @param n The node whose distance is set
+	 * @param distance The distance of the node from the source node
 	 */
-	private class DistanceComparator implements 
-		Comparator<Integer> {
-		
-		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
-		 */
-		public int compare(Integer node1, Integer node2) {
-			double dist1 = distancesFromStart.get(node1);
-			double dist2 = distancesFromStart.get(node2);
-			
-			if (dist1 > dist2) {
-				return 1;
-			}
-			else if (dist1 < dist2) {
-				return -1;
+	private void setDistance(int n, double distance) {
+		ensureCapacity(n);
+		int pos;
+		if (this.distanceStamps[n] != this.searchStamp) {
+			/* not in the heap yet */
+			this.distanceStamps[n] = this.searchStamp;
+			if (this.nrofUnvisited == this.unvisited.length) {
+				int[] newHeap = new int[this.unvisited.length * 2];
+				System.arraycopy(this.unvisited, 0, newHeap, 0,
+						this.nrofUnvisited);
+				this.unvisited = newHeap;
 			}
-			else {
-				return node1.compareTo(node2);
+			pos = this.nrofUnvisited++;
+		}
+		else {
+			pos = this.heapPositions[n];
+		}
+		this.distancesFromStart[n] = distance; // update distance
+
+		/* sift up */
+		while (pos > 0) {
+			int parent = (pos - 1) / 2;
+			if (!isBefore(n, this.unvisited[parent])) {
+				break;
 			}
+			place(this.unvisited[parent], pos);
+			pos = parent;
 		}
+		place(n, pos);
 	}
-	
+
 	/**
-	 * Simple Map implementation for storing distances. 
+	 * Removes and returns the unvisited node with the shortest distance
+	 * @return The node
 	 */
-	private class DistanceMap {
-		private HashMap<Integer, Double> map;
-		
-		/**
-		 * Constructor. Creates an empty distance map
-		 */
-		public DistanceMap() {
-			this.map = new HashMap<Integer, Double>(); 
-		}
-		
-		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link MaxPropDijkstra#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
-		 */
-		public double get(Integer node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
+	private int poll() {
+		int first = this.unvisited[0];
+		int last = this.unvisited[--this.nrofUnvisited];
+
+		/* sift down the last node from the root */
+		int pos = 0;
+		int half = this.nrofUnvisited / 2;
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			if (child + 1 < this.nrofUnvisited &&
+					isBefore(this.unvisited[child + 1],
+							this.unvisited[child])) {
+				child++;
 			}
-			else {
-				return INFINITY;
+			if (!isBefore(this.unvisited[child], last)) {
+				break;
 			}
+			place(this.unvisited[child], pos);
+			pos = child;
 		}
-		
-		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
-		 */
-		public void  put(Integer node, double distance) {
-			map.put(node, distance);
+		if (this.nrofUnvisited > 0) {
+			place(last, pos);
 		}
-		
-		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
-		 */
-		public String toString() {
-			return map.toString();
+
+		return first;
+	}
+
+	/**
+	 * Returns true if node1 should be visited before node2, i.e., if its
+	 * distance from the source node is smaller or, if the distances are
+	 * equal, its address is smaller
+	 * @param node1 The first node
+	 * @param node2 The second node
+	 * @return true if node1 comes before node2
+	 */
+	private boolean isBefore(int node1, int node2) {
+		double dist1 = this.distancesFromStart[node1];
+		double dist2 = this.distancesFromStart[node2];
+
+		if (dist1 != dist2) {
+			return dist1 < dist2;
 		}
+		return node1 < node2;
+	}
+
+	/**
+	 * Places a node to a position in the heap
+	 * @param n The node
+	 * @param pos The position
+	 */
+	private void place(int n, int pos) {
+		this.unvisited[pos] = n;
+		this.heapPositions[n] = pos;
+	}
+
+	/**
+	 * Makes sure the node arrays have room for the given node
+	 * @param n The node (address)
+	 */
+	private void ensureCapacity(int n) {
+		if (n < this.distancesFromStart.length) {
+			return;
+		}
+		int size = Math.max(n + 1, this.distancesFromStart.length * 2);
+		this.distancesFromStart = grow(this.distancesFromStart, size);
+		this.distanceStamps = grow(this.distanceStamps, size);
+		this.visitedStamps = grow(this.visitedStamps, size);
+		this.targetStamps = grow(this.targetStamps, size);
+		this.heapPositions = grow(this.heapPositions, size);
+	}
+
+	private static double[] grow(double[] array, int size) {
+		double[] newArray = new double[size];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+
+	private static int[] grow(int[] array, int size) {
+		int[] newArray = new int[size];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
 	}
-}
\ No newline at end of file
+}
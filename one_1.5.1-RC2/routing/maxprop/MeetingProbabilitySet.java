@@ -1,6 +1,6 @@
-/* 
+/*
  * Copyright 2010 Aalto University, ComNet
- * Released under GPLv3. See LICENSE.txt for details. 
+ * Released under GPLv3. See LICENSE.txt for details.
  */
 package routing.maxprop;
 
@@ -13,17 +13,50 @@ import core.SimClock;
 /**
  * Class for storing and manipulating the meeting probabilities for the MaxProp
  * router module.
+ * <P>The probabilities are stored as weights in primitive arrays and the
+ * actual probability of a node is its weight multiplied by a scale factor
+ * that is common for all the nodes. Normalizing the probabilities
+ * after a meeting only changes the scale factor. When the set size is
+ * limited, the entries are also kept in a min-heap so that the smallest
+ * entry can be dropped without searching for it. Replicas of a set share
+ * the arrays until either of the sets is modified.</P>
  */
 public class MeetingProbabilitySet {
 	public static final int INFINITE_SET_SIZE = Integer.MAX_VALUE;
-	/** meeting probabilities (probability that the next node one meets is X) */
-	private Map<Integer, Double> probs;
+	/** scale factor value under which the weights are rescaled to keep them
+	 * in the floating point range */
+	private static final double MIN_SCALE = 1e-100;
+	/** initial capacity (entries) of the set */
+	private static final int INITIAL_CAPACITY = 8;
+
+	/** node indices of the entries (by entry slot) */
+	private int[] nodes;
+	/** weights of the entries (by entry slot); meeting probability
+	 * (probability that the next node one meets is X) is the weight
+	 * multiplied by the scale */
+	private double[] weights;
+	/** number of entries */
+	private int size;
+	/** scale factor of the weights */
+	private double scale;
+	/** open addressing hash table of entry slots (+1, 0 = empty) by the
+	 * node indices */
+	private int[] slotTable;
+	/** min-heap of the entry slots ordered by the weights (null if the set
+	 * size is infinite) */
+	private int[] heap;
+	/** positions of the entries in the heap (by entry slot) */
+	private int[] heapPositions;
+	/** true if the arrays are shared with a replica (and must be copied
+	 * before modifying them) */
+	private boolean shared;
+
 	/** the time when this MPS was last updated */
 	private double lastUpdateTime;
 	/** the alpha parameter */
 	private double alpha;
     private int maxSetSize;
-	
+
 	/**
 	 * Constructor. Creates a probability set with empty node-probability
 	 * mapping.
@@ -32,17 +65,25 @@ public class MeetingProbabilitySet {
 	 */
 	public MeetingProbabilitySet(int maxSetSize, double alpha) {
 		this.alpha = alpha;
-		this.probs = new HashMap<Integer, Double>();
+		int capacity = INITIAL_CAPACITY;
         if (maxSetSize == INFINITE_SET_SIZE || maxSetSize < 1) {
-        	this.probs = new HashMap<Integer, Double>();
         	this.maxSetSize = INFINITE_SET_SIZE;
+        	this.heap = null;
         } else {
-        	this.probs = new HashMap<Integer, Double>(maxSetSize);
             this.maxSetSize = maxSetSize;
+            capacity = Math.min(maxSetSize, 1 << 16);
+            this.heap = new int[capacity];
         }
+        this.nodes = new int[capacity];
+        this.weights = new double[capacity];
+        this.heapPositions = new int[capacity];
+        this.slotTable = new int[tableSizeFor(capacity)];
+        this.size = 0;
+        this.scale = 1;
+        this.shared = false;
 		this.lastUpdateTime = 0;
 	}
-	
+
 	/**
 	 * Constructor. Creates a probability set with empty node-probability
 	 * mapping and infinite set size
@@ -50,86 +91,134 @@ public class MeetingProbabilitySet {
 	public MeetingProbabilitySet() {
 		this(INFINITE_SET_SIZE, 1);
 	}
-	
+
 	/**
 	 * Constructor. Creates a probability set with equal probability for
 	 * all the given node indexes.
 	 */
-	public MeetingProbabilitySet(double alpha, 
+	public MeetingProbabilitySet(double alpha,
 				List<Integer> initiallyKnownNodes) {
 		this(INFINITE_SET_SIZE, alpha);
 		double prob = 1.0/initiallyKnownNodes.size();
 		for (Integer i : initiallyKnownNodes) {
-			this.probs.put(i, prob);
+			setProb(i, prob);
 		}
 	}
-	
+
+	/**
+	 * Copy constructor for replicas. The replica shares the arrays with
+	 * the original set.
+	 * @param mps The original set
+	 */
+	private MeetingProbabilitySet(MeetingProbabilitySet mps) {
+		this.nodes = mps.nodes;
+		this.weights = mps.weights;
+		this.size = mps.size;
+		this.scale = mps.scale;
+		this.slotTable = mps.slotTable;
+		this.heap = mps.heap;
+		this.heapPositions = mps.heapPositions;
+		this.lastUpdateTime = mps.lastUpdateTime;
+		this.alpha = mps.alpha;
+		this.maxSetSize = mps.maxSetSize;
+		this.shared = true;
+		mps.shared = true;
+	}
+
 	/**
 	 * Updates meeting probability for the given node index.
 	 * <PRE> P(b) = P(b)_old + alpha
-	 * Normalize{P}</PRE> 
+	 * Normalize{P}</PRE>
 	 * I.e., The probability of the given node index is increased by one and
 	 * then all the probabilities are normalized so that their sum equals to 1.
 	 * @param index The node index to update the probability for
 	 */
 	public void updateMeetingProbFor(Integer index) {
-        Map.Entry<Integer, Double> smallestEntry = null;
-        double smallestValue = Double.MAX_VALUE;
-
 		this.lastUpdateTime = SimClock.getTime();
-		
-		if (probs.size() == 0) { // first entry
-			probs.put(index, 1.0);
+
+		if (this.size == 0) { // first entry
+			this.scale = 1;
+			setProb(index, 1.0);
 			return;
 		}
-		
+
 		double newValue = getProbFor(index) + alpha;
-		probs.put(index, newValue);
+		setProb(index, newValue);
 
 		/* now the sum of all entries is 1+alpha;
-		 * normalize to one by dividing all the entries by 1+alpha */ 
-		for (Map.Entry<Integer, Double> entry : probs.entrySet()) {
-			entry.setValue(entry.getValue() / (1+alpha));
-            if (entry.getValue() < smallestValue) {
-                smallestEntry = entry;
-                smallestValue = entry.getValue();
-            }
-
+		 * normalize to one by dividing all the entries by 1+alpha */
+		this.scale /= (1+alpha);
+		if (this.scale < MIN_SCALE) {
+			rescale();
 		}
 
-        if (probs.size() >= maxSetSize) {
-            core.Debug.p("Probsize: " + probs.size() + " dropping " + 
-                    probs.remove(smallestEntry.getKey()));
+        if (this.size >= maxSetSize) {
+            core.Debug.p("Probsize: " + this.size + " dropping " +
+                    removeSmallest());
         }
 	}
-	
+
 	public void updateMeetingProbFor(Integer index, double iet)	{
-		probs.put(index, iet);
+		setProb(index, iet);
 	}
-	
+
 	/**
-	 * Returns the current delivery probability value for the given node index 
+	 * Returns the current delivery probability value for the given node index
 	 * @param index The index of the node to look the P for
 	 * @return the current delivery probability value
 	 */
 	public double getProbFor(Integer index) {
-		if (probs.containsKey(index)) {
-			return probs.get(index);
+		int slot = slotOf(index);
+		if (slot >= 0) {
+			return this.weights[slot] * this.scale;
 		}
 		else {
 			/* the node with the given index has not been met */
 			return 0.0;
 		}
 	}
-	
+
+	/**
+	 * Returns the number of nodes in this probability set
+	 * @return the number of nodes in this probability set
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the node index of an entry. Entries are indexed from 0 to
+	 * {@link #size()}-1 in no particular order; the order may change when
+	 * the set is modified.
+	 * @param i The entry's index
+	 * @return The node index of the entry
+	 */
+	public int getNodeAt(int i) {
+		return this.nodes[i];
+	}
+
+	/**
+	 * Returns the probability of an entry (see {@link #getNodeAt(int)})
+	 * @param i The entry's index
+	 * @return The probability of the entry
+	 */
+	public double getProbAt(int i) {
+		return this.weights[i] * this.scale;
+	}
+
 	/**
-	 * Returns a reference to the probability map of this probability set
-	 * @return a reference to the probability map of this probability set
+	 * Returns the probabilities of this probability set as a map. The map is
+	 * a copy and modifying it does not change the set.
+	 * @return a map of node index - probability pairs
 	 */
 	public Map<Integer, Double> getAllProbs() {
-		return this.probs;
+		Map<Integer, Double> probs = new HashMap<Integer, Double>();
+		for (int i=0; i<this.size; i++) {
+			probs.put(this.nodes[i], getProbAt(i));
+		}
+		return probs;
 	}
-	
+
 	/**
 	 * Returns the time when this probability set was last updated
 	 * @return the time when this probability set was last updated
@@ -137,37 +226,275 @@ public class MeetingProbabilitySet {
 	public double getLastUpdateTime() {
 		return this.lastUpdateTime;
 	}
-	
+
 	/**
 	 * Enables changing the alpha parameter dynamically
 	 */
 	public void setAlpha(double alpha) {
 		this.alpha = alpha;
 	}
-	
+
 	/**
-	 * Returns a deep copy of the probability set
-	 * @return a deep copy of the probability set
+	 * Returns a copy of the probability set. The copy shares the
+	 * probability data with this set until either of them is modified.
+	 * @return a copy of the probability set
 	 */
 	public MeetingProbabilitySet replicate() {
-		MeetingProbabilitySet replica = new MeetingProbabilitySet(
-				this.maxSetSize, alpha);
-		
-		// do a deep copy
-		for (Map.Entry<Integer, Double> e : probs.entrySet()) {
-			replica.probs.put(e.getKey(), e.getValue().doubleValue());
+		return new MeetingProbabilitySet(this);
+	}
+
+	/**
+	 * Sets the probability of a node, adding the node to the set if needed
+	 * @param index The node index
+	 * @param prob The new probability
+	 */
+	private void setProb(int index, double prob) {
+		unshare();
+		int slot = slotOf(index);
+		if (slot < 0) {
+			slot = addEntry(index);
+			this.weights[slot] = prob / this.scale;
+			if (this.heap != null) {
+				siftUp(slot, this.heapPositions[slot]);
+			}
+			return;
+		}
+
+		double oldWeight = this.weights[slot];
+		this.weights[slot] = prob / this.scale;
+		if (this.heap != null) {
+			if (this.weights[slot] < oldWeight) {
+				siftUp(slot, this.heapPositions[slot]);
+			}
+			else {
+				siftDown(slot, this.heapPositions[slot], this.size);
+			}
+		}
+	}
+
+	/**
+	 * Removes the entry with the smallest probability from the set
+	 * @return The probability of the removed entry
+	 */
+	private double removeSmallest() {
+		int slot = this.heap[0];
+		double prob = getProbAt(slot);
+
+		/* remove from the heap */
+		int last = this.heap[this.size - 1];
+		if (last != slot) {
+			siftDown(last, 0, this.size - 1);
+		}
+
+		/* remove from the table and move the last entry to the free slot */
+		removeFromTable(this.nodes[slot]);
+		int lastSlot = this.size - 1;
+		if (slot != lastSlot) {
+			this.nodes[slot] = this.nodes[lastSlot];
+			this.weights[slot] = this.weights[lastSlot];
+			this.heapPositions[slot] = this.heapPositions[lastSlot];
+			this.heap[this.heapPositions[slot]] = slot;
+			this.slotTable[findInTable(this.nodes[slot])] = slot + 1;
+		}
+		this.size--;
+
+		return prob;
+	}
+
+	/**
+	 * Multiplies all weights with the scale factor and resets the scale
+	 */
+	private void rescale() {
+		unshare();
+		for (int i=0; i<this.size; i++) {
+			this.weights[i] *= this.scale;
 		}
-		
-		replica.lastUpdateTime = this.lastUpdateTime;
-		return replica;
+		this.scale = 1;
 	}
-	
+
+	/**
+	 * Copies the arrays if they are shared with a replica
+	 */
+	private void unshare() {
+		if (!this.shared) {
+			return;
+		}
+		this.nodes = this.nodes.clone();
+		this.weights = this.weights.clone();
+		this.slotTable = this.slotTable.clone();
+		this.heapPositions = this.heapPositions.clone();
+		if (this.heap != null) {
+			this.heap = this.heap.clone();
+		}
+		this.shared = false;
+	}
+
+	/**
+	 * Adds a new entry for a node (the weight is not set)
+	 * @param index The node index
+	 * @return The slot of the new entry
+	 */
+	private int addEntry(int index) {
+		if (this.size == this.nodes.length) {
+			int capacity = this.nodes.length * 2;
+			this.nodes = grow(this.nodes, capacity);
+			this.heapPositions = grow(this.heapPositions, capacity);
+			double[] newWeights = new double[capacity];
+			System.arraycopy(this.weights, 0, newWeights, 0, this.size);
+			this.weights = newWeights;
+			if (this.heap != null) {
+				this.heap = grow(this.heap, capacity);
+			}
+		}
+		if (2 * (this.size + 1) > this.slotTable.length) {
+			this.slotTable = new int[this.slotTable.length * 2];
+			for (int i=0; i<this.size; i++) {
+				this.slotTable[findInTable(this.nodes[i])] = i + 1;
+			}
+		}
+
+		int slot = this.size++;
+		this.nodes[slot] = index;
+		this.slotTable[findInTable(index)] = slot + 1;
+		this.heapPositions[slot] = slot; // the last position of the heap
+		return slot;
+	}
+
+	/**
+	 * Returns the slot of a node's entry
+	 * @param index The node index
+	 * @return The slot or -1 if the node has no entry
+	 */
+	private int slotOf(int index) {
+		return this.slotTable[findInTable(index)] - 1;
+	}
+
+	/**
+	 * Returns the position of a node in the slot table; either the
+	 * position of the node's slot or the empty position where it should be
+	 * @param index The node index
+	 * @return The position in the table
+	 */
+	private int findInTable(int index) {
+		int mask = this.slotTable.length - 1;
+		int pos = hash(index) & mask;
+		while (this.slotTable[pos] != 0 &&
+				this.nodes[this.slotTable[pos] - 1] != index) {
+			pos = (pos + 1) & mask;
+		}
+		return pos;
+	}
+
+	/**
+	 * Removes a node from the slot table
+	 * @param index The node index
+	 */
+	private void removeFromTable(int index) {
+		int mask = this.slotTable.length - 1;
+		int free = findInTable(index);
+		this.slotTable[free] = 0;
+
+		/* move the following entries of the probe sequence to fill the gap */
+		int pos = free;
+		while (true) {
+			pos = (pos + 1) & mask;
+			if (this.slotTable[pos] == 0) {
+				return;
+			}
+			int home = hash(this.nodes[this.slotTable[pos] - 1]) & mask;
+			boolean canMove = (free <= pos ? (home <= free || home > pos) :
+				(home <= free && home > pos));
+			if (canMove) {
+				this.slotTable[free] = this.slotTable[pos];
+				this.slotTable[pos] = 0;
+				free = pos;
+			}
+		}
+	}
+
+	/**
+	 * Moves an entry up in the heap from the given position
+	 * @param slot The entry's slot
+	 * @param pos The position
+	 */
+	private void siftUp(int slot, int pos) {
+		while (pos > 0) {
+			int parent = (pos - 1) / 2;
+			if (!isSmaller(slot, this.heap[parent])) {
+				break;
+			}
+			placeInHeap(this.heap[parent], pos);
+			pos = parent;
+		}
+		placeInHeap(slot, pos);
+	}
+
+	/**
+	 * Moves an entry down in the heap from the given position
+	 * @param slot The entry's slot
+	 * @param pos The position
+	 * @param heapSize Number of entries in the heap
+	 */
+	private void siftDown(int slot, int pos, int heapSize) {
+		int half = heapSize / 2;
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			if (child + 1 < heapSize &&
+					isSmaller(this.heap[child + 1], this.heap[child])) {
+				child++;
+			}
+			if (!isSmaller(this.heap[child], slot)) {
+				break;
+			}
+			placeInHeap(this.heap[child], pos);
+			pos = child;
+		}
+		placeInHeap(slot, pos);
+	}
+
+	/**
+	 * Returns true if the first entry's probability is smaller than the
+	 * second's (or, if they are equal, its node index is smaller)
+	 */
+	private boolean isSmaller(int slot1, int slot2) {
+		double w1 = this.weights[slot1];
+		double w2 = this.weights[slot2];
+		if (w1 != w2) {
+			return w1 < w2;
+		}
+		return this.nodes[slot1] < this.nodes[slot2];
+	}
+
+	private void placeInHeap(int slot, int pos) {
+		this.heap[pos] = slot;
+		this.heapPositions[slot] = pos;
+	}
+
+	private static int hash(int index) {
+		int h = index * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static int tableSizeFor(int capacity) {
+		int size = 4;
+		while (size < 2 * capacity) {
+			size <<= 1;
+		}
+		return size;
+	}
+
+	private static int[] grow(int[] array, int capacity) {
+		int[] newArray = new int[capacity];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+
 	/**
 	 * Returns a String presentation of the probabilities
 	 * @return a String presentation of the probabilities
 	 */
     @Override
 	public String toString() {
-		return "probs: " +	this.probs.toString();
+		return "probs: " +	getAllProbs().toString();
 	}
-}
\ No newline at end of file
+}
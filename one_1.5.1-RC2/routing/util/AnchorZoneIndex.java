@@ -0,0 +1,281 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.Coord;
+import core.Message;
+
+/**
+ * Index of the anchored messages a (moving) node carries. For every message
+ * the index knows the anchor point and a zone radius around it, and it
+ * tells which messages the node may be outside of the zone of, without
+ * calculating the distances to all the anchor points on every check.
+ * <P>When the distance d from a location to a message's anchor point has
+ * been calculated, the node stays inside the zone (of radius R) at least
+ * until it has travelled R-d. The index keeps track of the distance the
+ * node has travelled (sum of the distances between the consecutive checked
+ * locations) and keeps the messages in a heap ordered by the travelled
+ * distance at which they need to be checked again. Only those messages,
+ * and the messages that were not certainly inside their zones on the
+ * previous check, are checked.</P>
+ * <P>The index also holds a precomputed sort key for every message (see
+ * {@link #sortByKey(List)}).</P>
+ */
+public class AnchorZoneIndex {
+	/** initial capacity of the heap */
+	private static final int INITIAL_CAPACITY = 16;
+	/** absolute safety margin (in meters) for the rounding errors of the
+	 * distance calculations */
+	private static final double MARGIN = 1e-6;
+	/** safety margin relative to the travelled distance */
+	private static final double RELATIVE_MARGIN = 1e-12;
+
+	/** Orders entries by their sort keys */
+	private static final Comparator<Entry> KEY_COMPARATOR =
+		new Comparator<Entry>() {
+		public int compare(Entry e1, Entry e2) {
+			if (e1.sortKey == e2.sortKey) {
+				return 0;
+			}
+			return e1.sortKey < e2.sortKey ? -1 : 1;
+		}
+	};
+
+	/** entries by message IDs */
+	private Map<String, Entry> entries;
+	/** binary min-heap of the entries that are inside their zones, ordered
+	 * by the travelled distance at which they need to be checked again */
+	private Entry[] heap;
+	/** number of entries in the heap */
+	private int heapSize;
+	/** entries that weren't certainly inside their zones on the last check
+	 * (or that haven't been checked yet) */
+	private List<Entry> unsure;
+
+	/** distance travelled since the index was created */
+	private double travelled;
+	/** compensation for the lost low-order bits of the travelled distance */
+	private double travelledError;
+	/** the location of the last check (or null if not checked yet) */
+	private Coord lastLocation;
+
+	/**
+	 * Creates a new, empty, index
+	 */
+	public AnchorZoneIndex() {
+		this.entries = new HashMap<String, Entry>();
+		this.heap = new Entry[INITIAL_CAPACITY];
+		this.heapSize = 0;
+		this.unsure = new ArrayList<Entry>();
+		this.travelled = 0;
+		this.travelledError = 0;
+		this.lastLocation = null;
+	}
+
+	/**
+	 * Adds a message to the index. If the index already contains a message
+	 * with the same ID, that message is replaced.
+	 * @param m The message
+	 * @param anchor The anchor point of the message
+	 * @param radius Radius of the message's zone
+	 * @param sortKey Sort key of the message
+	 */
+	public void add(Message m, Coord anchor, double radius, double sortKey) {
+		remove(m.getId());
+		Entry e = new Entry(m, anchor, radius, sortKey);
+		this.entries.put(m.getId(), e);
+		this.unsure.add(e);
+	}
+
+	/**
+	 * Removes a message from the index
+	 * @param id ID of the message to remove
+	 */
+	public void remove(String id) {
+		Entry e = this.entries.remove(id);
+		if (e == null) {
+			return;
+		}
+		if (e.heapPos >= 0) {
+			removeFromHeap(e);
+		}
+		else {
+			this.unsure.remove(e);
+		}
+	}
+
+	/**
+	 * Returns the messages whose zone the node may be outside of at the
+	 * given location. The node is certainly inside the zones of all the
+	 * other messages. The location must be the node's current location;
+	 * it is used as the starting point for the rest of the checks.
+	 * @param location The location of the node
+	 * @return The messages that may be outside of their zones (in no
+	 * particular order)
+	 */
+	public List<Message> getUnsureMessages(Coord location) {
+		if (this.lastLocation != null) {
+			/* compensated (Kahan) summation of the travelled distance */
+			double y = location.distance(this.lastLocation) -
+				this.travelledError;
+			double t = this.travelled + y;
+			this.travelledError = (t - this.travelled) - y;
+			this.travelled = t;
+		}
+		this.lastLocation = location.clone();
+
+		while (this.heapSize > 0 && this.heap[0].checkAt <= this.travelled) {
+			Entry e = this.heap[0];
+			removeFromHeap(e);
+			this.unsure.add(e);
+		}
+
+		List<Message> unsureMessages = new ArrayList<Message>();
+		double margin = MARGIN + RELATIVE_MARGIN * this.travelled;
+		int kept = 0;
+		for (int i=0, n=this.unsure.size(); i<n; i++) {
+			Entry e = this.unsure.get(i);
+			double slack = e.radius - location.distance(e.anchor) - margin;
+			if (slack > 0) {
+				/* certainly inside for at least "slack" meters */
+				e.checkAt = this.travelled + slack;
+				addToHeap(e);
+			}
+			else {
+				this.unsure.set(kept++, e);
+				unsureMessages.add(e.message);
+			}
+		}
+		this.unsure.subList(kept, this.unsure.size()).clear();
+
+		return unsureMessages;
+	}
+
+	/**
+	 * Sorts a list of messages by their sort keys. Messages with equal keys
+	 * keep their relative order. All the messages must be in the index.
+	 * @param messages The messages to sort
+	 */
+	public void sortByKey(List<Message> messages) {
+		Entry[] sorted = new Entry[messages.size()];
+		for (int i=0; i<sorted.length; i++) {
+			sorted[i] = this.entries.get(messages.get(i).getId());
+		}
+		Arrays.sort(sorted, KEY_COMPARATOR);
+		for (int i=0; i<sorted.length; i++) {
+			messages.set(i, sorted[i].message);
+		}
+	}
+
+	/**
+	 * Adds an entry to the heap
+	 * @param e The entry
+	 */
+	private void addToHeap(Entry e) {
+		if (this.heapSize == this.heap.length) {
+			Entry[] newHeap = new Entry[this.heap.length * 2];
+			System.arraycopy(this.heap, 0, newHeap, 0, this.heapSize);
+			this.heap = newHeap;
+		}
+		siftUp(e, this.heapSize++);
+	}
+
+	/**
+	 * Removes an entry from the heap
+	 * @param e The entry
+	 */
+	private void removeFromHeap(Entry e) {
+		int pos = e.heapPos;
+		Entry last = this.heap[--this.heapSize];
+		this.heap[this.heapSize] = null;
+		e.heapPos = -1;
+
+		if (last != e) {
+			siftUp(last, pos);
+			if (last.heapPos == pos) {
+				siftDown(last, pos);
+			}
+		}
+	}
+
+	/**
+	 * Moves an entry up in the heap from the given position to its place
+	 * @param e The entry
+	 * @param pos The starting position
+	 */
+	private void siftUp(Entry e, int pos) {
+		while (pos > 0) {
+			int parent = (pos - 1) / 2;
+			if (this.heap[parent].checkAt <= e.checkAt) {
+				break;
+			}
+			place(this.heap[parent], pos);
+			pos = parent;
+		}
+		place(e, pos);
+	}
+
+	/**
+	 * Moves an entry down in the heap from the given position to its place
+	 * @param e The entry
+	 * @param pos The starting position
+	 */
+	private void siftDown(Entry e, int pos) {
+		int half = this.heapSize / 2;
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			if (child + 1 < this.heapSize &&
+					this.heap[child + 1].checkAt < this.heap[child].checkAt) {
+				child++;
+			}
+			if (e.checkAt <= this.heap[child].checkAt) {
+				break;
+			}
+			place(this.heap[child], pos);
+			pos = child;
+		}
+		place(e, pos);
+	}
+
+	/**
+	 * Places an entry to a position in the heap
+	 * @param e The entry
+	 * @param pos The position
+	 */
+	private void place(Entry e, int pos) {
+		this.heap[pos] = e;
+		e.heapPos = pos;
+	}
+
+	/**
+	 * Index entry of one message
+	 */
+	private static class Entry {
+		private Message message;
+		private Coord anchor;
+		private double radius;
+		private double sortKey;
+		/** travelled distance at which the entry needs to be checked again */
+		private double checkAt;
+		/** position in the heap or -1 if the entry is not in the heap */
+		private int heapPos;
+
+		public Entry(Message message, Coord anchor, double radius,
+				double sortKey) {
+			this.message = message;
+			this.anchor = anchor;
+			this.radius = radius;
+			this.sortKey = sortKey;
+			this.heapPos = -1;
+		}
+	}
+}
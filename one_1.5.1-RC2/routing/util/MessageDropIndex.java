@@ -0,0 +1,144 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing.util;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+import core.Message;
+
+/**
+ * Index of the messages in a router's buffer in the order they should be 
+ * dropped when there's no room for new messages. The order is given by a
+ * comparator (by default the messages' receive times, oldest first). 
+ * Messages that are equal in the order are dropped in the order they were
+ * added. Adding and removing a message takes O(log n) time and the next
+ * message to drop is found in O(log n) time. 
+ * <P>The comparator's order of a message must not change while the
+ * message is in the index.</P>
+ */
+public class MessageDropIndex implements Iterable<Message> {
+	/** Comparator for ordering messages by their receive time (oldest 
+	 * first) */
+	public static final Comparator<Message> RECEIVE_TIME_ORDER = 
+		new Comparator<Message>() {
+		public int compare(Message m1, Message m2) {
+			return Double.compare(m1.getReceiveTime(), m2.getReceiveTime());
+		}
+	};
+	
+	/** the messages in the drop order */
+	private TreeSet<Entry> entries;
+	/** the entries by the message IDs */
+	private HashMap<String, Entry> entriesById;
+	/** sequence number for the next added entry */
+	private long nextSeqNo;
+	
+	/**
+	 * Creates an index that orders the messages by their receive time
+	 */
+	public MessageDropIndex() {
+		this(RECEIVE_TIME_ORDER);
+	}
+	
+	/**
+	 * Creates an index with the given message order
+	 * @param order Comparator that orders the messages to the drop order
+	 * (the message that should be dropped first is the smallest)
+	 */
+	public MessageDropIndex(final Comparator<Message> order) {
+		this.entries = new TreeSet<Entry>(new Comparator<Entry>() {
+			public int compare(Entry e1, Entry e2) {
+				int c = order.compare(e1.message, e2.message);
+				if (c != 0) {
+					return c;
+				}
+				return (e1.seqNo < e2.seqNo ? -1 : 
+					(e1.seqNo == e2.seqNo ? 0 : 1));
+			}
+		});
+		this.entriesById = new HashMap<String, Entry>();
+		this.nextSeqNo = 0;
+	}
+	
+	/**
+	 * Adds a message to the index. If the index already had a message with
+	 * the same ID, that message is replaced.
+	 * @param m The message to add
+	 */
+	public void add(Message m) {
+		remove(m.getId());
+		Entry e = new Entry(m, this.nextSeqNo++);
+		this.entries.add(e);
+		this.entriesById.put(m.getId(), e);
+	}
+	
+	/**
+	 * Removes a message from the index
+	 * @param id ID of the message to remove
+	 * @return The removed message or null if there was no message with the
+	 * given ID
+	 */
+	public Message remove(String id) {
+		Entry e = this.entriesById.remove(id);
+		if (e == null) {
+			return null;
+		}
+		this.entries.remove(e);
+		return e.message;
+	}
+	
+	/**
+	 * Returns the message that should be dropped first
+	 * @return The first message or null if the index is empty
+	 */
+	public Message getFirst() {
+		return (this.entries.isEmpty() ? null : this.entries.first().message);
+	}
+	
+	/**
+	 * Returns the number of messages in the index
+	 * @return The number of messages in the index
+	 */
+	public int size() {
+		return this.entries.size();
+	}
+	
+	/**
+	 * Returns an iterator over the messages in the drop order. The index 
+	 * must not be modified during the iteration.
+	 * @return An iterator over the messages
+	 */
+	public Iterator<Message> iterator() {
+		final Iterator<Entry> i = this.entries.iterator();
+		return new Iterator<Message>() {
+			public boolean hasNext() {
+				return i.hasNext();
+			}
+			public Message next() {
+				return i.next().message;
+			}
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+	
+	/**
+	 * A message in the index and its sequence number (for ordering the 
+	 * otherwise equal messages)
+	 */
+	private static class Entry {
+		private Message message;
+		private long seqNo;
+		
+		private Entry(Message message, long seqNo) {
+			this.message = message;
+			this.seqNo = seqNo;
+		}
+	}
+}
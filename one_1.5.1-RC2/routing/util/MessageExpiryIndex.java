@@ -0,0 +1,223 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import core.Message;
+
+/**
+ * Index of messages in the order of their expiry times (see
+ * {@link Message#getExpiryTime()}), the message that expires first being
+ * the first in the index. Messages with equal expiry times are in the order
+ * they were added. Messages with infinite TTL are never added to the index.
+ * Adding a message and removing the first message take O(log n) time and
+ * the first message is found in O(1) time.
+ * <P>Removing other than the first message is not supported; users of the
+ * index should instead check if a message returned by {@link #poll()} is
+ * still valid and {@link #clear()} and refill the index if it holds too
+ * many stale messages. If the TTL of a message changes, the message informs
+ * the index (see {@link #ttlChanged(Message)}), which adds it again with the
+ * new expiry time and discards the old entry when it comes first.</P>
+ */
+public class MessageExpiryIndex {
+	/** initial capacity of the index */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** binary min-heap of the messages */
+	private Message[] messages;
+	/** expiry times of the messages in the heap */
+	private double[] expiryTimes;
+	/** sequence numbers of the messages in the heap */
+	private long[] seqNos;
+	/** number of messages in the heap */
+	private int size;
+	/** sequence number for the next added message */
+	private long nextSeqNo;
+
+	/**
+	 * Creates a new, empty, index
+	 */
+	public MessageExpiryIndex() {
+		this.messages = new Message[INITIAL_CAPACITY];
+		this.expiryTimes = new double[INITIAL_CAPACITY];
+		this.seqNos = new long[INITIAL_CAPACITY];
+		this.size = 0;
+		this.nextSeqNo = 0;
+	}
+
+	/**
+	 * Adds a message to the index. Messages with infinite TTL are ignored.
+	 * @param m The message to add
+	 */
+	public void add(Message m) {
+		m.setExpiryIndex(this);
+		double expiry = m.getExpiryTime();
+		if (expiry == Double.MAX_VALUE) {
+			return; /* infinite TTL, never expires */
+		}
+
+		if (this.size == this.messages.length) {
+			grow();
+		}
+
+		int i = this.size++;
+		long seqNo = this.nextSeqNo++;
+
+		/* sift up */
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (!isBefore(expiry, seqNo, parent)) {
+				break;
+			}
+			set(i, parent);
+			i = parent;
+		}
+		this.messages[i] = m;
+		this.expiryTimes[i] = expiry;
+		this.seqNos[i] = seqNo;
+	}
+
+	/**
+	 * Returns the message that expires first
+	 * @return The first message or null if the index is empty
+	 */
+	public Message peek() {
+		discardStale();
+		return (this.size == 0 ? null : this.messages[0]);
+	}
+
+	/**
+	 * Removes and returns the message that expires first
+	 * @return The first message or null if the index is empty
+	 */
+	public Message poll() {
+		discardStale();
+		if (this.size == 0) {
+			return null;
+		}
+		return removeFirst();
+	}
+
+	/**
+	 * Informs the index that the TTL of a message in the index has changed.
+	 * The message is added with its new expiry time; the entry with the old
+	 * expiry time is discarded when it comes first in the index.
+	 * @param m The message whose TTL changed
+	 */
+	public void ttlChanged(Message m) {
+		add(m);
+	}
+
+	/**
+	 * Removes the first entries whose expiry times no longer match their
+	 * messages' expiry times (i.e., the TTL has changed after adding)
+	 */
+	private void discardStale() {
+		while (this.size > 0 &&
+				this.expiryTimes[0] != this.messages[0].getExpiryTime()) {
+			removeFirst();
+		}
+	}
+
+	/**
+	 * Removes and returns the first message. The index must not be empty.
+	 * @return The first message
+	 */
+	private Message removeFirst() {
+		Message first = this.messages[0];
+		int last = --this.size;
+		Message m = this.messages[last];
+		double expiry = this.expiryTimes[last];
+		long seqNo = this.seqNos[last];
+		this.messages[last] = null;
+
+		/* sift down the last message from the root */
+		int i = 0;
+		int half = this.size / 2;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < this.size &&
+					isBefore(this.expiryTimes[child + 1],
+							this.seqNos[child + 1], child)) {
+				child++;
+			}
+			if (!isBefore(this.expiryTimes[child], this.seqNos[child],
+					expiry, seqNo)) {
+				break;
+			}
+			set(i, child);
+			i = child;
+		}
+		if (i < this.size) {
+			this.messages[i] = m;
+			this.expiryTimes[i] = expiry;
+			this.seqNos[i] = seqNo;
+		}
+
+		return first;
+	}
+
+	/**
+	 * Returns the number of messages in the index
+	 * @return The number of messages in the index
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Removes all messages from the index
+	 */
+	public void clear() {
+		for (int i=0; i<this.size; i++) {
+			this.messages[i] = null;
+		}
+		this.size = 0;
+	}
+
+	/**
+	 * Returns true if an entry with the given expiry time and sequence
+	 * number should be before the entry at the given index
+	 */
+	private boolean isBefore(double expiry, long seqNo, int index) {
+		return isBefore(expiry, seqNo, this.expiryTimes[index],
+				this.seqNos[index]);
+	}
+
+	/**
+	 * Returns true if the first entry should be before the second entry
+	 */
+	private boolean isBefore(double expiry1, long seqNo1, double expiry2,
+			long seqNo2) {
+		if (expiry1 != expiry2) {
+			return expiry1 < expiry2;
+		}
+		return seqNo1 < seqNo2;
+	}
+
+	/**
+	 * Moves the entry at index "from" to index "to"
+	 */
+	private void set(int to, int from) {
+		this.messages[to] = this.messages[from];
+		this.expiryTimes[to] = this.expiryTimes[from];
+		this.seqNos[to] = this.seqNos[from];
+	}
+
+	/**
+	 * Doubles the capacity of the index
+	 */
+	private void grow() {
+		int capacity = this.messages.length * 2;
+		Message[] newMessages = new Message[capacity];
+		double[] newExpiryTimes = new double[capacity];
+		long[] newSeqNos = new long[capacity];
+		System.arraycopy(this.messages, 0, newMessages, 0, this.size);
+		System.arraycopy(this.expiryTimes, 0, newExpiryTimes, 0, this.size);
+		System.arraycopy(this.seqNos, 0, newSeqNos, 0, this.size);
+		this.messages = newMessages;
+		this.expiryTimes = newExpiryTimes;
+		this.seqNos = newSeqNos;
+	}
+}
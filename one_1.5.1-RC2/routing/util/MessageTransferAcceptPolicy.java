@@ -190,6 +190,15 @@ public class MessageTransferAcceptPolicy {
 		}
 	}
 	
+	/**
+	 * Returns true if the policy has any Module Communication Bus conditions
+	 * (i.e., its decisions may change when the values in the bus change)
+	 * @return true if the policy has any Module Communication Bus conditions
+	 */
+	public boolean hasMcbConditions() {
+		return this.recvConditions != null || this.sendConditions != null;
+	}
+	
 	/**
 	 * Checks all the Module Communication Bus conditions and returns false
 	 * if at least one of them failed.
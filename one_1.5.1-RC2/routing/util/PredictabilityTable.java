@@ -0,0 +1,191 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import core.DTNHost;
+
+/**
+ * Table of delivery predictabilities of the PRoPHET family routers.
+ * The entries are indexed by the hosts' addresses and the values are stored
+ * in primitive arrays. The entries are aged lazily:
+ * <CODE>P = P_old * (GAMMA ^ k)</CODE>, where k is the number of time units
+ * elapsed since the entry was last aged, is calculated only when the entry
+ * is read, so aging does not need to touch the entries that are not used.
+ * <P>The entries can be iterated with an index from 0 to
+ * {@link #size()}-1 (see {@link #getHost(int)} and {@link #getPred(int)})
+ * in the order they were added. Entries are never removed.</P>
+ */
+public class PredictabilityTable {
+	/** initial capacity (entries) of the table */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** aging constant */
+	private double gamma;
+	/** number of seconds in one aging time unit */
+	private double secondsInTimeUnit;
+
+	/** entry indices (+1) by host addresses (0 = no entry) */
+	private int[] indexByAddress;
+	/** hosts of the entries */
+	private DTNHost[] hosts;
+	/** predictability values of the entries */
+	private double[] preds;
+	/** sim times when the entries were last aged */
+	private double[] agedAt;
+	/** number of entries */
+	private int size;
+	/** sim time when the table was last read or updated */
+	private double lastUpdate;
+
+	/**
+	 * Creates a new, empty, table
+	 * @param gamma The aging constant
+	 * @param secondsInTimeUnit Number of seconds in one aging time unit
+	 */
+	public PredictabilityTable(double gamma, double secondsInTimeUnit) {
+		this.gamma = gamma;
+		this.secondsInTimeUnit = secondsInTimeUnit;
+		this.indexByAddress = new int[INITIAL_CAPACITY];
+		this.hosts = new DTNHost[INITIAL_CAPACITY];
+		this.preds = new double[INITIAL_CAPACITY];
+		this.agedAt = new double[INITIAL_CAPACITY];
+		this.size = 0;
+		this.lastUpdate = 0;
+	}
+
+	/**
+	 * Returns the current (aged) predictability for a host
+	 * @param host The host
+	 * @param time Current sim time
+	 * @return The predictability or 0 if there's no entry for the host
+	 */
+	public double getPred(DTNHost host, double time) {
+		int i = indexOf(host);
+		this.lastUpdate = time;
+		return (i < 0 ? 0 : age(i, time));
+	}
+
+	/**
+	 * Sets the predictability for a host
+	 * @param host The host
+	 * @param pred The new predictability
+	 * @param time Current sim time
+	 */
+	public void setPred(DTNHost host, double pred, double time) {
+		int i = indexOf(host);
+		if (i < 0) {
+			i = addEntry(host);
+		}
+		this.preds[i] = pred;
+		this.agedAt[i] = time;
+		this.lastUpdate = time;
+	}
+
+	/**
+	 * Returns the number of entries in the table
+	 * @return The number of entries
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the host of an entry
+	 * @param index Index of the entry
+	 * @return The host of the entry
+	 */
+	public DTNHost getHost(int index) {
+		return this.hosts[index];
+	}
+
+	/**
+	 * Returns the current (aged) predictability of an entry
+	 * @param index Index of the entry
+	 * @param time Current sim time
+	 * @return The predictability of the entry
+	 */
+	public double getPred(int index, double time) {
+		this.lastUpdate = time;
+		return age(index, time);
+	}
+
+	/**
+	 * Changes the aging constant. The entries are first aged with the old
+	 * constant up to the time the table was last read or updated, i.e., the
+	 * new constant is used for aging the predictabilities from then on.
+	 * @param gamma The new aging constant
+	 */
+	public void setGamma(double gamma) {
+		if (gamma == this.gamma) {
+			return;
+		}
+		for (int i=0; i<this.size; i++) {
+			age(i, this.lastUpdate);
+		}
+		this.gamma = gamma;
+	}
+
+	/**
+	 * Ages an entry to the given time
+	 * @param index Index of the entry
+	 * @param time The time
+	 * @return The aged predictability of the entry
+	 */
+	private double age(int index, double time) {
+		double timeDiff = (time - this.agedAt[index]) / secondsInTimeUnit;
+		if (timeDiff != 0) {
+			this.preds[index] *= Math.pow(this.gamma, timeDiff);
+			this.agedAt[index] = time;
+		}
+		return this.preds[index];
+	}
+
+	/**
+	 * Returns the index of the entry for a host
+	 * @param host The host
+	 * @return The index or -1 if the table has no entry for the host
+	 */
+	private int indexOf(DTNHost host) {
+		int address = host.getAddress();
+		if (address >= this.indexByAddress.length) {
+			return -1;
+		}
+		return this.indexByAddress[address] - 1;
+	}
+
+	/**
+	 * Adds a new entry for a host
+	 * @param host The host
+	 * @return Index of the new entry
+	 */
+	private int addEntry(DTNHost host) {
+		int address = host.getAddress();
+		if (address >= this.indexByAddress.length) {
+			int[] newIndices = new int[Math.max(address + 1,
+					this.indexByAddress.length * 2)];
+			System.arraycopy(this.indexByAddress, 0, newIndices, 0,
+					this.indexByAddress.length);
+			this.indexByAddress = newIndices;
+		}
+
+		if (this.size == this.hosts.length) {
+			int capacity = this.hosts.length * 2;
+			DTNHost[] newHosts = new DTNHost[capacity];
+			double[] newPreds = new double[capacity];
+			double[] newAgedAt = new double[capacity];
+			System.arraycopy(this.hosts, 0, newHosts, 0, this.size);
+			System.arraycopy(this.preds, 0, newPreds, 0, this.size);
+			System.arraycopy(this.agedAt, 0, newAgedAt, 0, this.size);
+			this.hosts = newHosts;
+			this.preds = newPreds;
+			this.agedAt = newAgedAt;
+		}
+
+		int index = this.size++;
+		this.hosts[index] = host;
+		this.indexByAddress[address] = index + 1;
+		return index;
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import routing.MessageRouter;
+import util.Tuple;
+import core.Message;
+import core.SimClock;
+import core.SimError;
+
+/**
+ * Ordering of the messages in a router's sending queue (see
+ * {@link MessageRouter#SEND_QUEUE_MODE_S}). Each router has its own
+ * ordering instance that is reused for all the orderings so no comparators
+ * or random number generators are created per ordering. New queue modes
+ * can be added by extending this class and adding the mode to
+ * {@link #createOrdering(int)}.
+ */
+public abstract class SendQueueOrdering implements Comparator<Message> {
+
+	/** Comparator for lists containing either messages or message-connection
+	 * tuples (ordered by the tuples' messages) */
+	private final Comparator<Object> elementComparator =
+		new Comparator<Object>() {
+		public int compare(Object o1, Object o2) {
+			return SendQueueOrdering.this.compare(getMessage(o1), 
+					getMessage(o2));
+		}
+	};
+
+	/**
+	 * Creates a new ordering for a send queue mode
+	 * @param mode The queue mode (one of the <CODE>Q_MODE_*</CODE> values
+	 * of {@link MessageRouter})
+	 * @return The ordering
+	 * @throws SimError if the mode is unknown
+	 */
+	public static SendQueueOrdering createOrdering(int mode) {
+		switch (mode) {
+		case MessageRouter.Q_MODE_RANDOM:
+			return new RandomOrdering();
+		case MessageRouter.Q_MODE_FIFO:
+			return new FifoOrdering();
+		case MessageRouter.Q_MODE_SIZE:
+			return new SizeOrdering();
+		case MessageRouter.Q_MODE_TTL:
+			return new TtlOrdering();
+		/* add more queue modes here */
+		default:
+			throw new SimError("Unknown queue mode " + mode);
+		}
+	}
+
+	/**
+	 * Sorts/shuffles the given list according to this ordering. The list
+	 * can contain either Message or Tuple<Message, Connection> objects.
+	 * Other objects cause error. This implementation sorts the list
+	 * using {@link #compare(Message, Message)}; messages that are equal in
+	 * the order keep their relative order.
+	 * @param list The list to sort
+	 * @return The sorted list
+	 */
+	public <T> List<T> order(List<T> list) {
+		Collections.sort(list, this.elementComparator);
+		return list;
+	}
+
+	/**
+	 * Returns the message of a send queue list element
+	 * @param element A Message or a Tuple<Message, Connection>
+	 * @return The message itself or the message of the tuple
+	 * @throws SimError if the element is neither a message nor a tuple with
+	 * a message
+	 */
+	private static Message getMessage(Object element) {
+		if (element instanceof Message) {
+			return (Message)element;
+		}
+		else if (element instanceof Tuple) {
+			Object key = ((Tuple<?, ?>)element).getKey();
+			if (key instanceof Message) {
+				return (Message)key;
+			}
+		}
+		throw new SimError("Invalid type of objects in the list");
+	}
+
+	/**
+	 * Gives the order of the two given messages
+	 * @param m1 The first message
+	 * @param m2 The second message
+	 * @return -1 if the first message should come first, 1 if the second
+	 *          message should come first, or 0 if the ordering isn't defined
+	 */
+	public abstract int compare(Message m1, Message m2);
+
+	/**
+	 * Random order. The lists are shuffled using a random number generator
+	 * that is seeded with the current (integer) simulation time, so the
+	 * order is deterministic for the same input and time.
+	 */
+	private static class RandomOrdering extends SendQueueOrdering {
+		private final Random rng = new Random();
+
+		@Override
+		public <T> List<T> order(List<T> list) {
+			this.rng.setSeed(SimClock.getIntTime());
+			Collections.shuffle(list, this.rng);
+			return list;
+		}
+
+		@Override
+		public int compare(Message m1, Message m2) {
+			/* return randomly (enough) but consistently -1, 0 or 1 */
+			return (m1.hashCode()/2 + m2.hashCode()/2) % 3 - 1;
+		}
+	}
+
+	/**
+	 * FIFO order: the messages that were received first are sent first.
+	 */
+	private static class FifoOrdering extends SendQueueOrdering {
+		@Override
+		public int compare(Message m1, Message m2) {
+			double diff = m1.getReceiveTime() - m2.getReceiveTime();
+			if (diff == 0) {
+				return 0;
+			}
+			return (diff < 0 ? -1 : 1);
+		}
+	}
+
+	/**
+	 * Size order: the smallest messages are sent first.
+	 */
+	private static class SizeOrdering extends SendQueueOrdering {
+		@Override
+		public int compare(Message m1, Message m2) {
+			int diff = m1.getSize() - m2.getSize();
+			if (diff == 0) {
+				return 0;
+			}
+			return (diff < 0 ? -1 : 1);
+		}
+	}
+
+	/**
+	 * TTL order: the messages that expire first are sent first (messages
+	 * with infinite TTL are sent last).
+	 */
+	private static class TtlOrdering extends SendQueueOrdering {
+		@Override
+		public int compare(Message m1, Message m2) {
+			double diff = m1.getExpiryTime() - m2.getExpiryTime();
+			if (diff == 0) {
+				return 0;
+			}
+			return (diff < 0 ? -1 : 1);
+		}
+	}
+}
@@ -70,5 +70,25 @@ public class ActivenessHandlerTest extends TestCase {
 
 	}
 	
+	public void testNextChangeTime() {
+		assertEquals(in, ah.getNextChangeTime(0));
+		clock.setTime(5);
+		assertTrue(ah.isActive());
+		assertEquals(out, ah.getNextChangeTime(0));
+		
+		clock.setTime(50);
+		assertEquals(50.0, ah.getNextChangeTime(0)); // range not updated yet
+		assertFalse(ah.isActive());
+		assertEquals(100.0, ah.getNextChangeTime(0));
+		assertEquals(90.0, ah.getNextChangeTime(10));
+		
+		clock.setTime(500);
+		assertFalse(ah.isActive()); // moves only to the next range
+		assertEquals(500.0, ah.getNextChangeTime(0));
+		assertFalse(ah.isActive());
+		assertFalse(ah.isActive());
+		assertEquals(Double.MAX_VALUE, ah.getNextChangeTime(0));
+	}
+	
 }
 
@@ -47,8 +47,17 @@ public class AllTests {
 		suite.addTestSuite(MaxPropDijkstraTest.class);
 		suite.addTestSuite(MaxPropRouterTest.class);
 		suite.addTestSuite(ScheduledUpdatesQueueTest.class);
+		suite.addTestSuite(MergedEventQueueTest.class);
+		suite.addTestSuite(LongHashMapTest.class);
 		suite.addTestSuite(MessageTest.class);
 		suite.addTestSuite(ModuleCommunicationBusTest.class);
+		suite.addTestSuite(SweptContactDetectorTest.class);
+		suite.addTestSuite(AnchorZoneIndexTest.class);
+		suite.addTestSuite(MessageExpiryIndexTest.class);
+		suite.addTestSuite(ConnectivityGridTest.class);
+		suite.addTestSuite(ConnectivityOptimizerTest.class);
+		suite.addTestSuite(SendQueueOrderingTest.class);
+		suite.addTestSuite(BufferOccupancyTest.class);
 		//$JUnit-END$
 		return suite;
 	}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.util.AnchorZoneIndex;
+import core.Coord;
+import core.Message;
+
+/**
+ * Tests for the anchor zone index
+ */
+public class AnchorZoneIndexTest extends TestCase {
+
+	private AnchorZoneIndex index;
+	private Message m1;
+	private Message m2;
+	private Message m3;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		index = new AnchorZoneIndex();
+		m1 = new Message(null, null, "M1", 100);
+		m2 = new Message(null, null, "M2", 100);
+		m3 = new Message(null, null, "M3", 100);
+	}
+
+	public void testUnsureMessages() {
+		index.add(m1, new Coord(0, 0), 100, 0);
+		index.add(m2, new Coord(200, 0), 100, 0);
+
+		/* inside m1's zone, outside m2's */
+		assertUnsure(index.getUnsureMessages(new Coord(10, 0)), m2);
+		/* moving inside m1's zone */
+		assertUnsure(index.getUnsureMessages(new Coord(50, 0)), m2);
+		assertUnsure(index.getUnsureMessages(new Coord(10, 50)), m2);
+		/* to the edge of both zones */
+		assertUnsure(index.getUnsureMessages(new Coord(100, 0)), m1, m2);
+		/* inside m2's zone only */
+		assertUnsure(index.getUnsureMessages(new Coord(150, 0)), m1);
+		/* back to the middle of m1's zone */
+		assertUnsure(index.getUnsureMessages(new Coord(0, 0)), m2);
+		/* long way around back to the same place */
+		index.getUnsureMessages(new Coord(0, 1000));
+		assertUnsure(index.getUnsureMessages(new Coord(0, 0)), m2);
+	}
+
+	public void testRemoveAndReplace() {
+		index.add(m1, new Coord(0, 0), 100, 0);
+		index.add(m2, new Coord(200, 0), 100, 0);
+		index.add(m3, new Coord(0, 0), 100, 0);
+		assertUnsure(index.getUnsureMessages(new Coord(0, 0)), m2);
+
+		index.remove(m2.getId());
+		index.remove(m3.getId());
+		assertUnsure(index.getUnsureMessages(new Coord(0, 0)));
+
+		/* replacing m1 with a message with the same ID */
+		Message m1b = new Message(null, null, m1.getId(), 100);
+		index.add(m1b, new Coord(500, 0), 100, 0);
+		assertUnsure(index.getUnsureMessages(new Coord(0, 0)), m1b);
+		index.remove(m1.getId());
+		assertUnsure(index.getUnsureMessages(new Coord(0, 0)));
+	}
+
+	public void testSortByKey() {
+		index.add(m1, new Coord(0, 0), 100, 3.0);
+		index.add(m2, new Coord(0, 0), 100, 1.0);
+		index.add(m3, new Coord(0, 0), 100, 3.0);
+
+		List<Message> list = new ArrayList<Message>();
+		list.add(m3);
+		list.add(m1);
+		list.add(m2);
+		index.sortByKey(list);
+
+		assertEquals(m2, list.get(0));
+		assertEquals(m3, list.get(1)); /* equal keys keep their order */
+		assertEquals(m1, list.get(2));
+	}
+
+	private void assertUnsure(List<Message> unsure, Message... expected) {
+		assertEquals("Unsure messages " + unsure, expected.length,
+				unsure.size());
+		for (Message m : expected) {
+			assertTrue(m + " not in " + unsure, unsure.contains(m));
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.Settings;
+import core.SimClock;
+
+/**
+ * Tests for the occupied buffer size counter of the message routers. The
+ * counter is checked against the sum of the buffered messages' sizes after
+ * every buffer change.
+ */
+public class BufferOccupancyTest extends TestCase {
+	private static final int BUFFER_SIZE = 100;
+
+	private TestRouter router;
+	private DTNHost host;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		TestSettings ts = new TestSettings();
+		ts.putSetting(MessageRouter.B_SIZE_S, "" + BUFFER_SIZE);
+
+		TestUtils utils = new TestUtils(null,
+				new ArrayList<MessageListener>(), ts);
+		utils.setMessageRouterProto(new TestRouter(ts));
+		this.host = utils.createHost();
+		this.router = (TestRouter)host.getRouter();
+	}
+
+	public void testAddAndRemove() {
+		assertOccupied(0);
+
+		router.add(newMessage("M1", 10, 0));
+		router.add(newMessage("M2", 20, 1));
+		router.add(newMessage("M3", 30, 2));
+		assertOccupied(60);
+
+		router.remove("M2");
+		assertOccupied(40);
+
+		assertNull(router.remove("M2")); /* not in the buffer anymore */
+		assertOccupied(40);
+
+		router.remove("M1");
+		router.remove("M3");
+		assertOccupied(0);
+	}
+
+	public void testReplace() {
+		router.add(newMessage("M1", 10, 0));
+		router.add(newMessage("M2", 20, 1));
+
+		/* replacing a message with the same ID */
+		router.add(newMessage("M1", 50, 2));
+		assertOccupied(70);
+
+		router.remove("M1");
+		assertOccupied(20);
+	}
+
+	public void testCreateAndDelete() {
+		assertTrue(router.createNewMessage(newMessage("M1", 40, 0)));
+		assertTrue(router.createNewMessage(newMessage("M2", 40, 1)));
+		assertOccupied(80);
+
+		/* room is made by dropping the oldest message */
+		assertTrue(router.createNewMessage(newMessage("M3", 40, 2)));
+		assertFalse(router.hasMessage("M1"));
+		assertOccupied(80);
+
+		host.deleteMessage("M2", false);
+		assertOccupied(40);
+	}
+
+	public void testOverCommit() {
+		router.add(newMessage("M1", 40, 0));
+		router.add(newMessage("M2", 30, 1));
+		router.add(newMessage("M3", 50, 2));
+
+		/* over-committed buffer (e.g., messages kept while being sent) */
+		assertOccupied(120);
+		assertEquals(-20, router.getFreeBufferSize());
+
+		/* freeing the excess drops the oldest message */
+		assertTrue(router.makeRoom(0));
+		assertFalse(router.hasMessage("M1"));
+		assertOccupied(80);
+		assertEquals(20, router.getFreeBufferSize());
+
+		/* over-commit with a message bigger than the buffer */
+		router.add(newMessage("M4", 2 * BUFFER_SIZE, 3));
+		assertOccupied(280);
+		assertTrue(router.makeRoom(0));
+		assertOccupied(0);
+	}
+
+	/**
+	 * Creates a new message that was received at the given time
+	 */
+	private Message newMessage(String id, int size, double time) {
+		Message m = new Message(host, host, id, size);
+		m.setReceiveTime(time);
+		return m;
+	}
+
+	/**
+	 * Asserts that the occupied buffer size counter equals both the
+	 * expected value and the sum of the buffered messages' sizes
+	 */
+	private void assertOccupied(long expected) {
+		long sum = 0;
+		for (Message m : router.getMessageCollection()) {
+			sum += m.getSize();
+		}
+		assertEquals(expected, sum);
+		assertEquals(sum, router.getOccupiedBufferSize());
+		assertEquals(BUFFER_SIZE - sum, router.getFreeBufferSize());
+	}
+
+	/**
+	 * Router that gives the tests access to the buffer modifications
+	 */
+	private static class TestRouter extends EpidemicRouter {
+		public TestRouter(Settings s) {
+			super(s);
+		}
+
+		protected TestRouter(TestRouter r) {
+			super(r);
+		}
+
+		public void add(Message m) {
+			addToMessages(m, false);
+		}
+
+		public Message remove(String id) {
+			return removeFromMessages(id);
+		}
+
+		public boolean makeRoom(int size) {
+			return makeRoomForMessage(size);
+		}
+
+		@Override
+		public TestRouter replicate() {
+			return new TestRouter(this);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.SimClock;
+
+/**
+ * Tests for the look ups in advance of the connectivity grid
+ */
+public class ConnectivityGridTest extends TestCase {
+	private static final int WORLD_SIZE = 1000;
+	private static final double RANGE = 10;
+	private static final double MAX_STEP = 120;
+	private static final int NROF_HOSTS = 200;
+	private static final int NROF_ROUNDS = 5;
+
+	private ConnectivityGrid grid;
+	private List<DTNHost> hosts;
+	private List<NetworkInterface> interfaces;
+	private Random rng;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		TestSettings ts = new TestSettings();
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.WORLD_SIZE, WORLD_SIZE + "," + WORLD_SIZE);
+		ConnectivityGrid.reset();
+
+		TestUtils utils = new TestUtils(null, null, ts);
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		ts.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "" + RANGE);
+		ts.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "1");
+
+		this.rng = new Random(1);
+		this.hosts = new ArrayList<DTNHost>();
+		this.interfaces = new ArrayList<NetworkInterface>();
+		for (int i=0; i<NROF_HOSTS; i++) {
+			DTNHost h = utils.createHost(new Coord(
+					rng.nextDouble() * WORLD_SIZE,
+					rng.nextDouble() * WORLD_SIZE));
+			hosts.add(h);
+			interfaces.add(h.getInterfaces().get(0));
+		}
+		ts.setNameSpace(null);
+
+		this.grid = ConnectivityGrid.ConnectivityGridFactory(
+				getClass().getName().hashCode(), RANGE);
+		grid.addInterfaces(interfaces);
+	}
+
+	public void testLookAhead() {
+		for (int i=0; i<NROF_ROUNDS; i++) {
+			moveHosts();
+			checkRound(-1);
+		}
+	}
+
+	public void testLookAheadWithSkippedUpdate() {
+		for (int i=0; i<NROF_ROUNDS; i++) {
+			moveHosts();
+			checkRound(NROF_HOSTS / 2);
+		}
+	}
+
+	/**
+	 * Moves all hosts randomly and shuffles the update order
+	 */
+	private void moveHosts() {
+		for (DTNHost h : hosts) {
+			Coord c = h.getLocation();
+			h.setLocation(new Coord(
+					clamp(c.getX() + (rng.nextDouble() - 0.5) * MAX_STEP),
+					clamp(c.getY() + (rng.nextDouble() - 0.5) * MAX_STEP)));
+		}
+		Collections.shuffle(interfaces, rng);
+	}
+
+	private double clamp(double value) {
+		return Math.min(Math.max(value, 0), WORLD_SIZE - 1);
+	}
+
+	/**
+	 * Announces the updates of all interfaces, looks up their near
+	 * interfaces in advance and checks the results against the near
+	 * interfaces after the (sequential) location updates
+	 * @param skip Index of the interface whose update is skipped (or -1)
+	 */
+	private void checkRound(int skip) {
+		List<List<NetworkInterface>> ahead =
+			new ArrayList<List<NetworkInterface>>();
+		for (NetworkInterface ni : interfaces) {
+			assertTrue(grid.announceUpdate(ni));
+		}
+		for (NetworkInterface ni : interfaces) {
+			List<NetworkInterface> near = new ArrayList<NetworkInterface>();
+			grid.getNearInterfacesAhead(ni, near);
+			ahead.add(near);
+		}
+
+		List<NetworkInterface> near = new ArrayList<NetworkInterface>();
+		for (int i=0; i<interfaces.size(); i++) {
+			if (i == skip) {
+				continue;
+			}
+			NetworkInterface ni = interfaces.get(i);
+			grid.updateLocation(ni);
+			if (skip < 0 || i < skip) {
+				assertTrue(grid.isLookAheadValid(ni));
+				grid.getNearInterfaces(ni, near);
+				assertEquals(near, ahead.get(i));
+			}
+			else {
+				assertFalse(grid.isLookAheadValid(ni));
+			}
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+import interfaces.ConnectivityOptimizer;
+import interfaces.KDTreeOptimizer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.SimClock;
+
+/**
+ * Tests that the connectivity optimizers find the same interfaces within
+ * range with interfaces of mixed ranges (most of the interfaces have a
+ * short range and some have a long range). The hosts do a random walk and
+ * on every round each interface updates its location to the optimizers.
+ */
+public class ConnectivityOptimizerTest extends TestCase {
+	private static final int WORLD_SIZE = 1000;
+	private static final double SHORT_RANGE = 10;
+	private static final double LONG_RANGE = 100;
+	/** every LONG_RANGE_EVERY:th interface has the long range */
+	private static final int LONG_RANGE_EVERY = 20;
+	private static final double STEP = 20;
+	private static final int NROF_HOSTS = 400;
+	private static final int NROF_ROUNDS = 10;
+
+	private List<DTNHost> hosts;
+	private List<NetworkInterface> interfaces;
+	private ConnectivityOptimizer grid;
+	private ConnectivityOptimizer kdtree;
+	private Random rng;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		TestSettings ts = new TestSettings();
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.WORLD_SIZE, WORLD_SIZE + "," + WORLD_SIZE);
+		ConnectivityGrid.reset();
+		KDTreeOptimizer.reset();
+
+		TestUtils utils = new TestUtils(null, null, ts);
+		this.rng = new Random(1);
+		this.hosts = new ArrayList<DTNHost>();
+		this.interfaces = new ArrayList<NetworkInterface>();
+
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		ts.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "1");
+		for (int i=0; i<NROF_HOSTS; i++) {
+			double range = (i % LONG_RANGE_EVERY == 0) ?
+					LONG_RANGE : SHORT_RANGE;
+			ts.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "" + range);
+			DTNHost h = utils.createHost(new Coord(
+					rng.nextDouble() * WORLD_SIZE,
+					rng.nextDouble() * WORLD_SIZE));
+			hosts.add(h);
+			interfaces.add(h.getInterfaces().get(0));
+		}
+		ts.setNameSpace(null);
+
+		int key = getClass().getName().hashCode();
+		this.grid = ConnectivityGrid.ConnectivityGridFactory(key, LONG_RANGE);
+		this.kdtree = KDTreeOptimizer.KDTreeOptimizerFactory(key);
+		grid.addInterfaces(interfaces);
+		kdtree.addInterfaces(interfaces);
+	}
+
+	public void testSameInterfacesInRange() {
+		int nrofInRange = 0;
+		for (int r=0; r<NROF_ROUNDS; r++) {
+			if (r > 0) {
+				moveHosts();
+			}
+			for (NetworkInterface ni : interfaces) {
+				grid.updateLocation(ni);
+				kdtree.updateLocation(ni);
+			}
+
+			List<NetworkInterface> near = new ArrayList<NetworkInterface>();
+			for (NetworkInterface ni : interfaces) {
+				Set<NetworkInterface> expected = getInRange(ni, interfaces);
+				nrofInRange += expected.size();
+
+				grid.getNearInterfaces(ni, near);
+				assertEquals(expected, getInRange(ni, near));
+				kdtree.getNearInterfaces(ni, near);
+				assertEquals(expected, getInRange(ni, near));
+			}
+		}
+		assertTrue(nrofInRange > 0);
+	}
+
+	/**
+	 * Moves all hosts a random step (inside the world)
+	 */
+	private void moveHosts() {
+		for (DTNHost h : hosts) {
+			Coord c = h.getLocation();
+			h.setLocation(new Coord(
+					clamp(c.getX() + (rng.nextDouble() * 2 - 1) * STEP),
+					clamp(c.getY() + (rng.nextDouble() * 2 - 1) * STEP)));
+		}
+	}
+
+	private double clamp(double value) {
+		return Math.min(Math.max(value, 0), WORLD_SIZE);
+	}
+
+	/**
+	 * Returns the interfaces (other than the interface itself) that are
+	 * within the range of the interface
+	 * @param ni The interface
+	 * @param candidates The interfaces to check
+	 * @return The interfaces within range
+	 */
+	private Set<NetworkInterface> getInRange(NetworkInterface ni,
+			List<NetworkInterface> candidates) {
+		Set<NetworkInterface> inRange = new HashSet<NetworkInterface>();
+		for (NetworkInterface other : candidates) {
+			double range = Math.min(ni.getTransmitRange(),
+					other.getTransmitRange());
+			if (other != ni &&
+					ni.getLocation().distance(other.getLocation()) <= range) {
+				inRange.add(other);
+			}
+		}
+		return inRange;
+	}
+}
@@ -413,6 +413,7 @@ public class EpidemicRouterTest extends AbstractRouterTest {
 		assertEquals(mc.TYPE_CREATE, mc.getLastType());
 		assertEquals(msgId3, mc.getLastMsg().getId());
 		assertTrue(h1.getBufferOccupancy() > 100); // buffer occupancy > 100%
+		assertEquals(m1Size + m3Size, h1.getRouter().getOccupiedBufferSize());
 		
 		assertFalse(mc.next());
 		
@@ -430,6 +431,7 @@ public class EpidemicRouterTest extends AbstractRouterTest {
 		
 		 // buffer occupancy should drop back under 100 %
 		assertTrue(h1.getBufferOccupancy() < 100);
+		assertEquals(m3Size, h1.getRouter().getOccupiedBufferSize());
 		
 		// should start transferring msgId3 
 		assertTrue(mc.next());
@@ -0,0 +1,51 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import junit.framework.TestCase;
+import util.LongHashMap;
+
+/**
+ * Tests for the LongHashMap
+ */
+public class LongHashMapTest extends TestCase {
+	private static final int NROF_KEYS = 1000;
+	private LongHashMap<String> map;
+	
+	protected void setUp() throws Exception {
+		super.setUp();
+		map = new LongHashMap<String>();
+	}
+	
+	public void testPutAndGet() {
+		assertTrue(map.isEmpty());
+		assertNull(map.put(1, "a"));
+		assertNull(map.put((1L << 32) | 1, "b"));
+		assertEquals("a", map.put(1, "c"));
+		assertEquals(2, map.size());
+		assertEquals("c", map.get(1));
+		assertEquals("b", map.get((1L << 32) | 1));
+		assertNull(map.get(2));
+		assertFalse(map.containsKey(-1));
+	}
+	
+	public void testGrowAndRemove() {
+		for (int i = 0; i < NROF_KEYS; i++) {
+			map.put(i * 16L, "" + i);
+		}
+		assertEquals(NROF_KEYS, map.size());
+		
+		/* remove every other key; the rest must still be found */
+		for (int i = 0; i < NROF_KEYS; i += 2) {
+			assertEquals("" + i, map.remove(i * 16L));
+		}
+		assertNull(map.remove(0));
+		assertEquals(NROF_KEYS / 2, map.size());
+		for (int i = 0; i < NROF_KEYS; i++) {
+			assertEquals(i % 2 == 0 ? null : "" + i, map.get(i * 16L));
+		}
+		assertEquals(NROF_KEYS / 2, map.values().size());
+	}
+}
@@ -74,6 +74,30 @@ public class MaxPropDijkstraTest extends TestCase {
 		assertEquals(0.125, mps.getProbFor(2));	
 	}
 
+	public void testReplicateAndSetSize() {
+		MeetingProbabilitySet mps = new MeetingProbabilitySet(3, 1.0);
+		mps.updateMeetingProbFor(1);
+		mps.updateMeetingProbFor(2);
+		MeetingProbabilitySet replica = mps.replicate();
+		
+		assertEquals(0.5, mps.getProbFor(1));
+		mps.updateMeetingProbFor(1);
+		assertEquals(0.75, mps.getProbFor(1));
+		assertEquals(0.25, mps.getProbFor(2));
+		
+		/* replica is not affected by the changes of the original */
+		assertEquals(0.5, replica.getProbFor(1));
+		assertEquals(0.5, replica.getProbFor(2));
+		
+		/* set is full -> the smallest probability is dropped */
+		mps.updateMeetingProbFor(3);
+		assertEquals(2, mps.size());
+		assertEquals(0.375, mps.getProbFor(1));
+		assertEquals(0.0, mps.getProbFor(2));
+		assertEquals(0.5, mps.getProbFor(3));
+		assertEquals(2, replica.size());
+	}
+
 	public void testPath() {
 		targets.add(1);
 		targets.add(2);
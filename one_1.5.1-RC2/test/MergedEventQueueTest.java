@@ -0,0 +1,94 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import input.EventQueue;
+import input.ExternalEvent;
+import input.MergedEventQueue;
+import input.ScheduledUpdatesQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the MergedEventQueue
+ */
+public class MergedEventQueueTest extends TestCase {
+	private static double MAX = Double.MAX_VALUE;
+	private List<EventQueue> queues;
+	private ScheduledUpdatesQueue q1, q2, q3;
+	
+	protected void setUp() throws Exception {
+		super.setUp();
+		q1 = new ScheduledUpdatesQueue();
+		q2 = new ScheduledUpdatesQueue();
+		q3 = new ScheduledUpdatesQueue();
+		queues = new ArrayList<EventQueue>();
+		queues.add(q1);
+		queues.add(q2);
+		queues.add(q3);
+	}
+	
+	public void testEmpty() {
+		MergedEventQueue meq = new MergedEventQueue(queues);
+		assertEquals(MAX, meq.nextEventsTime());
+		assertEquals(MAX, meq.nextEvent().getTime());
+		
+		meq = new MergedEventQueue(new ArrayList<EventQueue>());
+		assertEquals(MAX, meq.nextEventsTime());
+		assertEquals(MAX, meq.nextEvent().getTime());
+	}
+	
+	public void testOrder() {
+		q1.addUpdate(5);
+		q1.addUpdate(1);
+		q2.addUpdate(3);
+		q2.addUpdate(4);
+		q3.addUpdate(2);
+		q3.addUpdate(6);
+		MergedEventQueue meq = new MergedEventQueue(queues);
+		
+		for (int i=1; i<=6; i++) {
+			assertEquals((double)i, meq.nextEventsTime());
+			assertEquals((double)i, meq.nextEvent().getTime());
+		}
+		assertEquals(MAX, meq.nextEventsTime());
+	}
+	
+	public void testSameTimes() {
+		q3.addUpdate(1);
+		q2.addUpdate(1);
+		MergedEventQueue meq = new MergedEventQueue(queues);
+		
+		/* the earlier queue in the list first */
+		assertEquals(1.0, meq.nextEventsTime());
+		meq.nextEvent();
+		assertEquals(MAX, q2.nextEventsTime());
+		assertEquals(1.0, q3.nextEventsTime());
+		meq.nextEvent();
+		assertEquals(MAX, meq.nextEventsTime());
+	}
+	
+	public void testQueueChanged() {
+		q1.addUpdate(5);
+		q2.addUpdate(3);
+		MergedEventQueue meq = new MergedEventQueue(queues);
+		
+		q3.addUpdate(1);
+		meq.queueChanged(2);
+		ExternalEvent ee = meq.nextEvent();
+		assertEquals(1.0, ee.getTime());
+		assertEquals(MAX, q3.nextEventsTime());
+		
+		q1.addUpdate(2);
+		meq.queueChanged(0);
+		assertEquals(2.0, meq.nextEvent().getTime());
+		assertEquals(3.0, meq.nextEvent().getTime());
+		assertEquals(5.0, meq.nextEvent().getTime());
+		assertEquals(MAX, meq.nextEventsTime());
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import routing.util.MessageExpiryIndex;
+import core.Message;
+import core.SimClock;
+
+/**
+ * Tests for the message expiry time index
+ */
+public class MessageExpiryIndexTest extends TestCase {
+
+	private MessageExpiryIndex index;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		index = new MessageExpiryIndex();
+	}
+
+	private Message newMessage(String id, int ttl) {
+		Message m = new Message(null, null, id, 100);
+		m.setTtl(ttl);
+		return m;
+	}
+
+	public void testExpiryOrder() {
+		Message m1 = newMessage("M1", 30);
+		Message m2 = newMessage("M2", 10);
+		Message m3 = newMessage("M3", 20);
+		Message m4 = newMessage("M4", 10);
+		Message mInf = new Message(null, null, "MInf", 100);
+
+		index.add(m1);
+		index.add(m2);
+		index.add(mInf);
+		index.add(m3);
+		index.add(m4);
+
+		assertEquals(4, index.size()); /* infinite TTL is not indexed */
+		assertEquals(m2, index.poll());
+		assertEquals(m4, index.poll()); /* equal times in adding order */
+		assertEquals(m3, index.poll());
+		assertEquals(m1, index.poll());
+		assertNull(index.poll());
+	}
+
+	public void testTtlChangeAfterAdding() {
+		Message m1 = newMessage("M1", 10);
+		Message m2 = newMessage("M2", 20);
+		Message m3 = newMessage("M3", 30);
+		index.add(m1);
+		index.add(m2);
+		index.add(m3);
+
+		m1.setTtl(40); /* later than all the others */
+		m3.setTtl(5);  /* earlier than all the others */
+
+		assertEquals(m3, index.peek());
+		assertEquals(m3, index.poll());
+		assertEquals(m2, index.poll());
+		assertEquals(m1, index.poll());
+		assertNull(index.poll());
+	}
+
+	public void testTtlChangeToAndFromInfinite() {
+		Message m1 = new Message(null, null, "M1", 100);
+		Message m2 = newMessage("M2", 20);
+		index.add(m1);
+		index.add(m2);
+		assertEquals(1, index.size());
+
+		m1.setTtl(10);
+		m2.setTtl(Message.INFINITE_TTL);
+
+		assertEquals(m1, index.poll());
+		assertNull(index.poll());
+	}
+}
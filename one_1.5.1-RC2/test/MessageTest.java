@@ -11,7 +11,9 @@ import org.junit.Test;
 
 import core.DTNHost;
 import core.Message;
+import core.MessagePropertyKey;
 import core.SimClock;
+import core.SimError;
 
 public class MessageTest extends TestCase {
 
@@ -60,5 +62,73 @@ public class MessageTest extends TestCase {
 		assertEquals(value2, msg.getProperty("bar"));
 	}
 
+	@Test
+	public void testReplicateCopyOnWrite() {
+		msg.addProperty("foo", "value1");
+		Message rep = msg.replicate();
+		assertEquals("value1", rep.getProperty("foo"));
+		assertEquals(msg.getInternedId(), rep.getInternedId());
+		
+		rep.addNodeOnPath(to);
+		rep.updateProperty("foo", "value2");
+		rep.addProperty("bar", "value3");
+		assertEquals(1, msg.getHops().size());
+		assertEquals(2, rep.getHops().size());
+		assertEquals("value1", msg.getProperty("foo"));
+		assertNull(msg.getProperty("bar"));
+		assertEquals("value2", rep.getProperty("foo"));
+		
+		msg.addNodeOnPath(from);
+		msg.removeProperty("foo");
+		assertEquals(2, msg.getHops().size());
+		assertEquals(2, rep.getHops().size());
+		assertEquals("value2", rep.getProperty("foo"));
+	}
+
+	@Test
+	public void testTypedProperties() {
+		MessagePropertyKey dKey = MessagePropertyKey.register("test.double",
+				MessagePropertyKey.Type.DOUBLE);
+		MessagePropertyKey iKey = MessagePropertyKey.register("test.int",
+				MessagePropertyKey.Type.INT);
+		assertSame(dKey, MessagePropertyKey.register("test.double",
+				MessagePropertyKey.Type.DOUBLE));
+		
+		assertFalse(msg.hasProperty(dKey));
+		assertNull(msg.getProperty("test.double"));
+		msg.setDouble(dKey, 1.5);
+		msg.addProperty("test.int", 3);
+		assertEquals(1.5, msg.getDouble(dKey));
+		assertEquals(3, msg.getInt(iKey));
+		assertEquals(1.5, msg.getProperty("test.double"));
+		
+		Message rep = msg.replicate();
+		rep.setDouble(dKey, 2.5);
+		rep.removeProperty("test.int");
+		assertEquals(1.5, msg.getDouble(dKey));
+		assertEquals(3, msg.getInt(iKey));
+		assertEquals(2.5, rep.getDouble(dKey));
+		assertFalse(rep.hasProperty(iKey));
+		
+		try {
+			msg.addProperty("test.int", 4);
+			fail("Adding an existing property should fail");
+		} catch (SimError e) {
+			// expected
+		}
+		try {
+			msg.updateProperty("test.double", "not a double");
+			fail("Wrong type of value should fail");
+		} catch (SimError e) {
+			// expected
+		}
+		try {
+			rep.getInt(iKey);
+			fail("Reading a missing typed value should fail");
+		} catch (SimError e) {
+			// expected
+		}
+	}
+
 
 }
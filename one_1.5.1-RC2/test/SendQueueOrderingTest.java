@@ -0,0 +1,135 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.MessageRouter;
+import routing.util.SendQueueOrdering;
+import util.Tuple;
+import core.Connection;
+import core.Message;
+import core.SimClock;
+import core.SimError;
+
+/**
+ * Tests for the send queue orderings
+ */
+public class SendQueueOrderingTest extends TestCase {
+	private static final double ORDER_TIME = 200;
+
+	private SimClock clock;
+	private Message m1;
+	private Message m2;
+	private Message m3;
+	private Message m4;
+	private Message mInf;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		this.clock = SimClock.getInstance();
+
+		m1 = newMessage("M1", 0, 10, 300);      /* expires at 600 */
+		m2 = newMessage("M2", 100, 5, 100);     /* expires at 400 */
+		m3 = newMessage("M3", 50, 10, 200);     /* expires at 650 */
+		m4 = newMessage("M4", 0, 10, 100);      /* expires at 600 */
+		mInf = newMessage("MInf", 0, Message.INFINITE_TTL, 50);
+
+		clock.setTime(ORDER_TIME);
+	}
+
+	/**
+	 * Creates a new message
+	 * @param id ID of the message
+	 * @param time Creation (and receive) time of the message
+	 * @param ttl TTL of the message (minutes)
+	 * @param size Size of the message
+	 * @return The message
+	 */
+	private Message newMessage(String id, double time, int ttl, int size) {
+		clock.setTime(time);
+		Message m = new Message(null, null, id, size);
+		m.setTtl(ttl);
+		m.setReceiveTime(time);
+		return m;
+	}
+
+	private List<Message> order(int mode, Message... messages) {
+		SendQueueOrdering ordering = SendQueueOrdering.createOrdering(mode);
+		return ordering.order(new ArrayList<Message>(Arrays.asList(messages)));
+	}
+
+	public void testTtlOrder() {
+		assertEquals(Arrays.asList(m2, m1, m4, m3, mInf),
+				order(MessageRouter.Q_MODE_TTL, mInf, m1, m3, m4, m2));
+		/* equal expiry times keep their order */
+		assertEquals(Arrays.asList(m4, m1),
+				order(MessageRouter.Q_MODE_TTL, m4, m1));
+	}
+
+	public void testFifoOrder() {
+		assertEquals(Arrays.asList(m1, m4, mInf, m3, m2),
+				order(MessageRouter.Q_MODE_FIFO, m1, m2, m3, m4, mInf));
+	}
+
+	public void testSizeOrder() {
+		assertEquals(Arrays.asList(mInf, m2, m4, m3, m1),
+				order(MessageRouter.Q_MODE_SIZE, m1, m2, m3, m4, mInf));
+	}
+
+	public void testTupleOrder() {
+		SendQueueOrdering ordering =
+			SendQueueOrdering.createOrdering(MessageRouter.Q_MODE_TTL);
+		List<Tuple<Message, Connection>> tuples =
+			new ArrayList<Tuple<Message, Connection>>();
+		for (Message m : new Message[] {mInf, m3, m2, m1}) {
+			tuples.add(new Tuple<Message, Connection>(m, null));
+		}
+
+		List<Tuple<Message, Connection>> ordered = ordering.order(tuples);
+		assertSame(tuples, ordered);
+		assertEquals(m2, ordered.get(0).getKey());
+		assertEquals(m1, ordered.get(1).getKey());
+		assertEquals(m3, ordered.get(2).getKey());
+		assertEquals(mInf, ordered.get(3).getKey());
+	}
+
+	public void testRandomOrder() {
+		List<Message> order1 = order(MessageRouter.Q_MODE_RANDOM,
+				m1, m2, m3, m4, mInf);
+		List<Message> order2 = order(MessageRouter.Q_MODE_RANDOM,
+				m1, m2, m3, m4, mInf);
+
+		/* same input at the same time gives the same order */
+		assertEquals(order1, order2);
+		assertEquals(5, order1.size());
+		assertTrue(order1.containsAll(Arrays.asList(m1, m2, m3, m4, mInf)));
+	}
+
+	public void testInvalidElements() {
+		SendQueueOrdering ordering =
+			SendQueueOrdering.createOrdering(MessageRouter.Q_MODE_FIFO);
+		List<String> list = new ArrayList<String>(Arrays.asList("a", "b"));
+		try {
+			ordering.order(list);
+			fail("Ordering strings should fail");
+		} catch (SimError e) {
+			/* expected */
+		}
+	}
+
+	public void testUnknownMode() {
+		try {
+			SendQueueOrdering.createOrdering(-1);
+			fail("Unknown mode should fail");
+		} catch (SimError e) {
+			/* expected */
+		}
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.SweptContactDetector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.Path;
+import core.ConnectionListener;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.SimClock;
+
+/**
+ * Tests for the SweptContactDetector (exact link up and down times
+ * during long update intervals)
+ */
+public class SweptContactDetectorTest extends TestCase
+	implements ConnectionListener {
+	private static final double UP_INT = 10;
+	private static final double RANGE = 10;
+	private static final double DELTA = 0.00001;
+
+	private TestSettings ts;
+	private TestUtils utils;
+	private List<Double> upTimes;
+	private List<Double> downTimes;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		ts = new TestSettings();
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		ts.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "" + RANGE);
+		ts.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "1");
+		ts.setNameSpace(null);
+
+		List<ConnectionListener> cl = new ArrayList<ConnectionListener>();
+		cl.add(this);
+		utils = new TestUtils(cl, null, ts);
+		upTimes = new ArrayList<Double>();
+		downTimes = new ArrayList<Double>();
+	}
+
+	/**
+	 * Moves the hosts for one update interval and runs the detector
+	 */
+	private void move(SweptContactDetector detector, DTNHost... hosts) {
+		double moveTime = SimClock.getTime();
+		for (DTNHost h : hosts) {
+			h.move(UP_INT);
+		}
+		detector.update(moveTime, moveTime + UP_INT, UP_INT);
+		SimClock.getInstance().setTime(moveTime + UP_INT);
+	}
+
+	private SweptContactDetector createDetector(DTNHost... hosts) {
+		List<DTNHost> hostList = new ArrayList<DTNHost>();
+		for (DTNHost h : hosts) {
+			hostList.add(h);
+		}
+		return new SweptContactDetector(hostList);
+	}
+
+	public void testPassingHosts() {
+		DTNHost h1 = utils.createHost(new LineMovement(new Coord(0, 0),
+				new Coord(100, 0), 10), null);
+		DTNHost h2 = utils.createHost(new Coord(50, 5));
+		SweptContactDetector detector = createDetector(h1, h2);
+
+		/* within range when |x - 50| <= sqrt(10^2 - 5^2) */
+		double halfChord = Math.sqrt(RANGE*RANGE - 25);
+		move(detector, h1, h2);
+		assertEquals(1, upTimes.size());
+		assertEquals(1, downTimes.size());
+		assertEquals((50 - halfChord) / 10, upTimes.get(0), DELTA);
+		assertEquals((50 + halfChord) / 10, downTimes.get(0), DELTA);
+		assertEquals(UP_INT, SimClock.getTime(), DELTA);
+		assertEquals(0, h1.getConnections().size());
+		assertNotNull(h1.getSweptPath());
+	}
+
+	public void testHeadOnHosts() {
+		DTNHost h1 = utils.createHost(new LineMovement(new Coord(0, 0),
+				new Coord(300, 0), 10), null);
+		DTNHost h2 = utils.createHost(new LineMovement(new Coord(300, 0),
+				new Coord(0, 0), 10), null);
+		SweptContactDetector detector = createDetector(h1, h2);
+
+		/* first interval: 100 m apart in the end -> no contacts */
+		move(detector, h1, h2);
+		assertEquals(0, upTimes.size());
+
+		/* approach at 20 m/s, meet at 15 s, range reached 0.5 s earlier */
+		move(detector, h1, h2);
+		assertEquals(1, upTimes.size());
+		assertEquals(14.5, upTimes.get(0), DELTA);
+		assertEquals(1, downTimes.size());
+		assertEquals(15.5, downTimes.get(0), DELTA);
+	}
+
+	public void testContactEndingDuringInterval() {
+		DTNHost h1 = utils.createHost(new Coord(5, 0));
+		DTNHost h2 = utils.createHost(new LineMovement(new Coord(0, 0),
+				new Coord(100, 0), 5), null);
+		SweptContactDetector detector = createDetector(h1, h2);
+		h1.getInterfaces().get(0).connect(h2.getInterfaces().get(0));
+		upTimes.clear();
+
+		move(detector, h1, h2);
+		assertEquals(0, upTimes.size());
+		assertEquals(1, downTimes.size());
+		assertEquals(3, downTimes.get(0), DELTA);
+	}
+
+	public void hostsConnected(DTNHost host1, DTNHost host2) {
+		upTimes.add(SimClock.getTime());
+	}
+
+	public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+		downTimes.add(SimClock.getTime());
+	}
+
+	/**
+	 * Movement model that moves once along a line
+	 */
+	private static class LineMovement extends MovementModel {
+		private Coord start;
+		private Coord end;
+		private double speed;
+		private boolean moved;
+
+		public LineMovement(Coord start, Coord end, double speed) {
+			this.start = start;
+			this.end = end;
+			this.speed = speed;
+			this.moved = false;
+		}
+
+		@Override
+		public Coord getInitialLocation() {
+			return start.clone();
+		}
+
+		@Override
+		public boolean isActive() {
+			return true;
+		}
+
+		@Override
+		public Path getPath() {
+			if (moved) {
+				return null;
+			}
+			moved = true;
+			Path p = new Path(speed);
+			p.addWaypoint(start.clone());
+			p.addWaypoint(end.clone());
+			return p;
+		}
+
+		@Override
+		public double nextPathAvailable() {
+			return moved ? Double.MAX_VALUE : 0;
+		}
+
+		@Override
+		public LineMovement replicate() {
+			return new LineMovement(start, end, speed);
+		}
+	}
+}
@@ -5,15 +5,25 @@
 package test;
 
 import input.EventQueue;
+import input.EventQueueHandler;
+import input.MessageEventGenerator;
 
 import java.util.ArrayList;
 import java.util.List;
 
 import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.RandomWaypoint;
+import routing.MessageRouter;
+import interfaces.ConnectivityGrid;
+import interfaces.SimpleBroadcastInterface;
 import core.DTNHost;
+import core.Message;
+import core.MessageListener;
 import core.ModuleCommunicationBus;
 import core.NetworkInterface;
 import core.SimClock;
+import core.SimScenario;
 import core.UpdateListener;
 import core.World;
 
@@ -80,6 +90,30 @@ public class WorldTest extends TestCase {
 		}		
 	}
 	
+	public void testParallelUpdate() {
+		TestSettings s = new TestSettings(World.OPTIMIZATION_SETTINGS_NS);
+		s.putSetting(World.PARALLEL_UPDATES_S, "true");
+		s.putSetting(World.NROF_THREADS_S, "2");
+		TestScenario ts = new TestScenario();
+		this.world = new World(ts.getHosts(),ts.getWorldSizeX(), 
+				ts.getWorldSizeY(),ts.getUpdateInterval(), 
+				ts.getUpdateListeners(), ts.simulateConnections(), 
+				ts.getExternalEvents() );
+		
+		world.scheduleUpdate(0.25);
+		for (int i=0; i<10; i++) {
+			world.update();
+		}
+		
+		assertEquals(1.0, SimClock.getTime(), TIME_DELTA);
+		assertNrofUpdates(11);
+		
+		/* update threads are shut down, updates continue sequentially */
+		world.simulationDone();
+		world.update();
+		assertNrofUpdates(12);
+	}
+	
 	public void testUpdateScheduling() {
 		world.scheduleUpdate(0.25);
 
@@ -102,6 +136,109 @@ public class WorldTest extends TestCase {
 	}
 	
 
+	public void testEventDrivenUpdates() {
+		List<String> fixedStep = runScenario(false);
+		List<String> eventDriven = runScenario(true);
+		
+		assertTrue(fixedStep.size() > 0);
+		assertEquals(fixedStep, eventDriven);
+	}
+	
+	/**
+	 * Runs a sparse random waypoint scenario with epidemic routing and 
+	 * returns the message events of the run
+	 * @param eventDriven Value for the {@link World#EVENT_DRIVEN_S} setting
+	 * @return Descriptions of the message events in the order they happened
+	 */
+	private List<String> runScenario(boolean eventDriven) {
+		TestSettings ts = new TestSettings();
+		String sns = SimScenario.SCENARIO_NS + ".";
+		String gns = SimScenario.GROUP_NS + ".";
+		String ens = EventQueueHandler.SETTINGS_NAMESPACE + ".";
+		String e1ns = EventQueueHandler.SETTINGS_NAMESPACE + "1.";
+		ts.putSetting(sns + SimScenario.END_TIME_S, "5000");
+		ts.putSetting(sns + SimScenario.UP_INT_S, "1");
+		ts.putSetting(gns + SimScenario.GROUP_ID_S, "n");
+		ts.putSetting(gns + SimScenario.NROF_HOSTS_S, "30");
+		ts.putSetting(gns + SimScenario.MOVEMENT_MODEL_S, 
+				RandomWaypoint.class.getSimpleName());
+		ts.putSetting(gns + SimScenario.ROUTER_S, "EpidemicRouter");
+		ts.putSetting(gns + SimScenario.NROF_INTERF_S, "1");
+		ts.putSetting(gns + SimScenario.INTERFACENAME_S + "1", "iface");
+		ts.putSetting(gns + MessageRouter.B_SIZE_S, "1M");
+		ts.putSetting(gns + MessageRouter.MSG_TTL_S, "300");
+		ts.putSetting(gns + MovementModel.SPEED, "0.5, 1.5");
+		ts.putSetting(gns + MovementModel.WAIT_TIME, "0, 600");
+		ts.putSetting("iface." + SimScenario.INTTYPE_S, 
+				SimpleBroadcastInterface.class.getSimpleName());
+		ts.putSetting("iface." + NetworkInterface.TRANSMIT_RANGE_S, "30");
+		ts.putSetting("iface." + NetworkInterface.TRANSMIT_SPEED_S, "250k");
+		ts.putSetting(ens + EventQueueHandler.NROF_SETTING, "1");
+		ts.putSetting(e1ns + EventQueueHandler.CLASS_SETTING, 
+				MessageEventGenerator.class.getSimpleName());
+		ts.putSetting(e1ns + MessageEventGenerator.MESSAGE_INTERVAL_S,
+				"25, 35");
+		ts.putSetting(e1ns + MessageEventGenerator.MESSAGE_SIZE_S,
+				"50k, 500k");
+		ts.putSetting(e1ns + MessageEventGenerator.HOST_RANGE_S, 
+				"0, 29");
+		ts.putSetting(e1ns + MessageEventGenerator.MESSAGE_ID_PREFIX_S,
+				"M");
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." + 
+				MovementModel.RNG_SEED, "1");
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." + 
+				MovementModel.WORLD_SIZE, "3000, 3000");
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." + 
+				World.EVENT_DRIVEN_S, "" + eventDriven);
+		
+		/* reset the static state after the settings, like between runs */
+		SimClock.reset();
+		SimScenario.reset();
+		DTNHost.reset();
+		Message.reset();
+		NetworkInterface.reset();
+		ConnectivityGrid.reset();
+		MovementModel.reset();
+		
+		final List<String> events = new ArrayList<String>();
+		SimScenario scen = SimScenario.getInstance();
+		scen.addMessageListener(new MessageListener() {
+			public void newMessage(Message m) {
+				events.add("new " + m);
+			}
+			public void messageTransferStarted(Message m, DTNHost from,
+					DTNHost to) {
+				events.add("start " + m + " " + from + "->" + to);
+			}
+			public void messageDeleted(Message m, DTNHost where,
+					boolean dropped) {
+				events.add("delete " + m + " " + where + " " + dropped);
+			}
+			public void messageTransferAborted(Message m, DTNHost from,
+					DTNHost to) {
+				events.add("abort " + m + " " + from + "->" + to);
+			}
+			public void messageTransferred(Message m, DTNHost from,
+					DTNHost to, boolean firstDelivery) {
+				events.add("relay " + m + " " + from + "->" + to + " " + 
+						m.getHopCount() + " " + firstDelivery);
+			}
+		});
+		
+		World world = scen.getWorld();
+		while (SimClock.getTime() < scen.getEndTime()) {
+			world.update();
+		}
+		world.simulationDone();
+		
+		/* don't leave the scenario's settings or state to other tests */
+		new TestSettings();
+		SimScenario.reset();
+		MovementModel.reset();
+		
+		return events;
+	}
+
 	/** Dummy scenario for providing test values for the World */ 
 	private class TestScenario extends core.SimScenario {
 		public TestScenario() {	}
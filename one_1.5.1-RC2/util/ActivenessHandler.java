@@ -100,6 +100,15 @@ public class ActivenessHandler {
 		
 		return timesList;
 	}
+	
+	/**
+	 * Returns true if node is active all the time (i.e., there are no active
+	 * times nor active periods defined)
+	 * @return true if node is always active
+	 */
+	public boolean isAlwaysActive() {
+		return this.activeTimes == null && this.activePeriods == null;
+	}
 	
 	/**
 	 * Returns true if node should be active at the moment
@@ -148,6 +157,46 @@ public class ActivenessHandler {
 		return curRange.isInRange(time);
 	}
 
+	/**
+	 * Returns the sim time when the activeness (see {@link #isActive(int)})
+	 * may change next time. The activeness doesn't change before the 
+	 * returned time (but may not change at it either).
+	 * @param offset The offset (as in {@link #isActive(int)})
+	 * @return The next time the activeness may change or Double.MAX_VALUE if
+	 * it never changes
+	 */
+	public double getNextChangeTime(int offset) {
+		if (this.activeTimes == null) {
+			if (this.activePeriods == null) {
+				return Double.MAX_VALUE; // always active		
+			}
+			int intTime = SimClock.getIntTime();
+			int timeIndex = (intTime + this.activePeriodsOffset + offset) % 
+				(this.activePeriods[0] + this.activePeriods[1]);
+			if (timeIndex <= this.activePeriods[0]) {
+				/* inactive when the index grows over the active period */
+				return intTime + this.activePeriods[0] + 1 - timeIndex;
+			} else {
+				/* active again when the index wraps around */
+				return intTime + this.activePeriods[0] + 
+					this.activePeriods[1] - timeIndex;
+			}
+		}
+		
+		if (curRange == null) {
+			return Double.MAX_VALUE; // out of active times for good
+		}
+		
+		double time = SimClock.getTime() + offset;
+		if (this.curRange.isOut(time)) {
+			return SimClock.getTime(); // the range changes in the next check
+		}
+		if (time < this.curRange.start) {
+			return this.curRange.start - offset;
+		}
+		return this.curRange.end - offset;
+	}
+
 	/**
 	 * Class for handling time ranges
 	 */
@@ -0,0 +1,195 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Hash map with primitive long keys. Uses open addressing (linear 
+ * probing), so looking up a key doesn't create any objects. Null values 
+ * are not supported.
+ */
+public class LongHashMap<V> {
+	/** initial capacity of the tables (must be a power of two) */
+	private static final int INITIAL_CAPACITY = 16;
+	
+	private long[] keys;
+	private Object[] values;
+	private int size;
+	/** the tables are grown when size exceeds this */
+	private int threshold;
+	
+	/**
+	 * Creates a new, empty, map
+	 */
+	public LongHashMap() {
+		this.keys = new long[INITIAL_CAPACITY];
+		this.values = new Object[INITIAL_CAPACITY];
+		this.size = 0;
+		this.threshold = INITIAL_CAPACITY / 2;
+	}
+	
+	/**
+	 * Returns the value of a key
+	 * @param key The key
+	 * @return The value or null if the map doesn't contain the key
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		int i = indexOf(key);
+		return (i < 0 ? null : (V)this.values[i]);
+	}
+	
+	/**
+	 * Returns true if the map contains the key
+	 * @param key The key
+	 * @return True if the map contains the key, false if not
+	 */
+	public boolean containsKey(long key) {
+		return indexOf(key) >= 0;
+	}
+	
+	/**
+	 * Puts a value for a key
+	 * @param key The key
+	 * @param value The value (not null)
+	 * @return The old value of the key or null if there was no value
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		assert value != null : "Null values are not supported";
+		int mask = this.keys.length - 1;
+		int i = hash(key) & mask;
+		while (this.values[i] != null) {
+			if (this.keys[i] == key) {
+				V old = (V)this.values[i];
+				this.values[i] = value;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+		
+		this.keys[i] = key;
+		this.values[i] = value;
+		if (++this.size > this.threshold) {
+			resize(2 * this.keys.length);
+		}
+		return null;
+	}
+	
+	/**
+	 * Removes a key from the map
+	 * @param key The key
+	 * @return The value of the removed key or null if the map didn't 
+	 * contain the key
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		int i = indexOf(key);
+		if (i < 0) {
+			return null;
+		}
+		V old = (V)this.values[i];
+		this.size--;
+		
+		/* shift the following entries of the probe sequence backwards */
+		int mask = this.keys.length - 1;
+		int hole = i;
+		for (int j = (i + 1) & mask; this.values[j] != null; 
+				j = (j + 1) & mask) {
+			int home = hash(this.keys[j]) & mask;
+			/* the entry can fill the hole if its home is not between the 
+			   hole and its current position (cyclically) */
+			if (((j - home) & mask) >= ((j - hole) & mask)) {
+				this.keys[hole] = this.keys[j];
+				this.values[hole] = this.values[j];
+				hole = j;
+			}
+		}
+		this.values[hole] = null;
+		return old;
+	}
+	
+	/**
+	 * Returns the number of keys in the map
+	 * @return The number of keys in the map
+	 */
+	public int size() {
+		return this.size;
+	}
+	
+	/**
+	 * Returns true if the map is empty
+	 * @return True if the map is empty
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+	
+	/**
+	 * Returns a new collection of the values in the map
+	 * @return The values
+	 */
+	@SuppressWarnings("unchecked")
+	public Collection<V> values() {
+		Collection<V> list = new ArrayList<V>(this.size);
+		for (Object value : this.values) {
+			if (value != null) {
+				list.add((V)value);
+			}
+		}
+		return list;
+	}
+	
+	/**
+	 * Returns the table index of a key
+	 * @param key The key
+	 * @return The index or -1 if the map doesn't contain the key
+	 */
+	private int indexOf(long key) {
+		int mask = this.keys.length - 1;
+		int i = hash(key) & mask;
+		while (this.values[i] != null) {
+			if (this.keys[i] == key) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Rehashes all the entries to new tables
+	 * @param capacity Capacity of the new tables (a power of two)
+	 */
+	@SuppressWarnings("unchecked")
+	private void resize(int capacity) {
+		long[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+		this.size = 0;
+		this.threshold = capacity / 2;
+		
+		for (int i=0; i<oldKeys.length; i++) {
+			if (oldValues[i] != null) {
+				put(oldKeys[i], (V)oldValues[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Spreads the bits of a key (a 64-bit mix function)
+	 * @param key The key
+	 * @return The hash of the key
+	 */
+	private static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int)key;
+	}
+}